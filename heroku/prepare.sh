@@ -3,8 +3,10 @@
 cp -R ../lang-detect/war/ .
 mv war/languagemodels .
 
-# remove model sources and test sets
+# remove model sources, raw ngram counts and test sets
 rm -rf languagemodels/modelSource
+rm -rf languagemodels/modelUpdates
+rm -rf languagemodels/ngramCounts
 rm -rf languagemodels/multiLangTestSet
 rm -rf languagemodels/trainingAndTestSet
 
@@ -12,3 +14,4 @@ rm -rf languagemodels/trainingAndTestSet
 cp -R ../lang-detect/src/language/classifier ./src/main/java/language
 cp -R ../lang-detect/src/language/model ./src/main/java/language
 cp -R ../lang-detect/src/language/util ./src/main/java/language
+cp -R ../lang-detect/src/language/web ./src/main/java/language
@@ -0,0 +1,89 @@
+package language.model;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test counting ngrams of corpus with bounded counts
+ *
+ * @author Andrey Gusev
+ */
+public class CorpusNgramCounterTest extends TestCase {
+
+	private static final int[] NGRAM_SIZES = new int[] { 1, 2, 3 };
+
+	public CorpusNgramCounterTest(String name) {
+		super(name);
+	}
+
+	// spilled counts should give the same models as counts in memory, also
+	// with words longer than 64 KB
+	public void testSpilledCounts() throws Exception {
+		StringBuilder longWord = new StringBuilder();
+		while (longWord.length() < 70000) {
+			longWord.append("жaß");
+		}
+		String[] words = new String[] { "chat", longWord.toString(), "chien", "jardin", longWord.toString(), "chat",
+				"table", "chien" };
+
+		File spillDir = Files.createTempDirectory("runs").toFile();
+		try (CorpusNgramCounter counter = new CorpusNgramCounter(NGRAM_SIZES);
+				CorpusNgramCounter boundedCounter = new CorpusNgramCounter(NGRAM_SIZES, 2, spillDir)) {
+			for (String word : words) {
+				counter.addWord(word, 1);
+				boundedCounter.addWord(word, 1);
+			}
+			assertTrue("Counts should be spilled", boundedCounter.getNumRuns() > 0);
+
+			for (int ind = 0; ind < NGRAM_SIZES.length; ind++) {
+				File countsFile = new File(spillDir, "counts_" + NGRAM_SIZES[ind]);
+				assertEquals("Wrong model of " + NGRAM_SIZES[ind] + "-grams", counter.buildModel(ind)
+						.getTopNgrams(), boundedCounter.buildModel(ind, null, countsFile).getTopNgrams());
+				assertTrue("Missing counts file", countsFile.delete());
+			}
+		} finally {
+			for (File file : spillDir.listFiles()) {
+				file.delete();
+			}
+			spillDir.delete();
+		}
+	}
+
+	// counts of new text should be added to counts file without changing it
+	public void testUpdateCounts() throws Exception {
+		String[] words = new String[] { "chat", "chien", "chat" };
+		String[] newWords = new String[] { "jardin", "chat", "table" };
+
+		File countsDir = Files.createTempDirectory("counts").toFile();
+		File countsFile = new File(countsDir, "counts");
+		File newCountsFile = new File(countsDir, "newCounts");
+		try (CorpusNgramCounter counter = new CorpusNgramCounter(NGRAM_SIZES);
+				CorpusNgramCounter newCounter = new CorpusNgramCounter(NGRAM_SIZES);
+				CorpusNgramCounter allCounter = new CorpusNgramCounter(NGRAM_SIZES)) {
+			for (String word : words) {
+				counter.addWord(word, 1);
+				allCounter.addWord(word, 1);
+			}
+			for (String word : newWords) {
+				newCounter.addWord(word, 1);
+				allCounter.addWord(word, 1);
+			}
+
+			for (int ind = 0; ind < NGRAM_SIZES.length; ind++) {
+				counter.buildModel(ind, null, countsFile);
+				byte[] counts = Files.readAllBytes(countsFile.toPath());
+				assertEquals("Wrong updated model of " + NGRAM_SIZES[ind] + "-grams", allCounter.buildModel(ind)
+						.getTopNgrams(), newCounter.buildModel(ind, countsFile, newCountsFile).getTopNgrams());
+				assertTrue("Counts file should not change",
+						Arrays.equals(counts, Files.readAllBytes(countsFile.toPath())));
+			}
+		} finally {
+			countsFile.delete();
+			newCountsFile.delete();
+			countsDir.delete();
+		}
+	}
+}
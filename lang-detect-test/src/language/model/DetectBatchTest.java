@@ -0,0 +1,59 @@
+package language.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import language.model.NgramLanguageDetector.ClassificationAlgorithm;
+
+/**
+ * Test detection of batches of texts
+ * 
+ * @author Andrey Gusev
+ * 
+ */
+public class DetectBatchTest extends TestCase {
+
+	private final NgramLanguageDetector detector;
+
+	public DetectBatchTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// batch should give the same languages as single texts in the same order
+	public void testSameAsSingleTexts() throws Exception {
+		List<String> phrases = Arrays.asList(BaseSingleLangTest.getEnglishString(),
+				BaseSingleLangTest.getFrenchString(), BaseSingleLangTest.getItalianString(),
+				BaseSingleLangTest.getGermanString(), BaseSingleLangTest.getSpanishString(),
+				BaseSingleLangTest.getPortugueseString(), "  ", "");
+
+		// enough texts to be spread across threads
+		List<StringBuilder> texts = new ArrayList<>();
+		for (int ind = 0; ind < 500; ind++) {
+			String phrase = phrases.get(ind % phrases.size());
+			// cut phrases to get different lengths
+			int length = phrase.length() - ind % 7 * phrase.length() / 8;
+			texts.add(new StringBuilder(" ").append(phrase, 0, length));
+		}
+
+		List<Locale> languages = detector.detectBatch(texts, ClassificationAlgorithm.LINEAR_WEIGHTS);
+		assertEquals("Wrong number of languages", texts.size(), languages.size());
+		for (int ind = 0; ind < texts.size(); ind++) {
+			assertEquals("Wrong language for: " + texts.get(ind),
+					detector.getMostLikelyLanguage(texts.get(ind).toString(), ClassificationAlgorithm.LINEAR_WEIGHTS),
+					languages.get(ind));
+		}
+	}
+
+	public void testSmallBatch() throws Exception {
+		List<Locale> languages = detector.detectBatch(
+				Arrays.asList(BaseSingleLangTest.getGermanString(), BaseSingleLangTest.getFrenchString()),
+				ClassificationAlgorithm.LINEAR_WEIGHTS);
+		assertEquals("Wrong languages", Arrays.asList(Locale.GERMAN, Locale.FRENCH), languages);
+		assertTrue("Empty batch", detector.detectBatch(new ArrayList<String>(), ClassificationAlgorithm.LINEAR_WEIGHTS)
+				.isEmpty());
+	}
+}
@@ -0,0 +1,65 @@
+package language.model;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Test detection of text that arrives in chunks
+ * 
+ * @author Andrey Gusev
+ * 
+ */
+public class DetectionSessionTest extends TestCase {
+
+	private final NgramLanguageDetector detector;
+
+	public DetectionSessionTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// chunks cutting words should give the same ranking as whole text
+	public void testSameAsWholeText() throws Exception {
+		String text = BaseSingleLangTest.getFrenchString() + " " + BaseSingleLangTest.getItalianString();
+		for (int chunkSize = 1; chunkSize < 10; chunkSize++) {
+			DetectionSession session = detector.newSession();
+			for (int start = 0; start < text.length(); start += chunkSize) {
+				session.append(text.subSequence(start, Math.min(text.length(), start + chunkSize)));
+			}
+
+			SortedSet<Entry<Locale, Double>> expected = detector.detectLanguageWithLinearWeights(text, true);
+			SortedSet<Entry<Locale, Double>> actual = session.getRanking(true);
+			assertEquals("Wrong ranking size", expected.size(), actual.size());
+			Iterator<Entry<Locale, Double>> iterator = actual.iterator();
+			for (Entry<Locale, Double> entry : expected) {
+				Entry<Locale, Double> actualEntry = iterator.next();
+				assertEquals("Wrong ranking", entry.getKey(), actualEntry.getKey());
+				assertEquals("Wrong score", entry.getValue(), actualEntry.getValue(), 1e-9);
+			}
+			assertFalse("Short text should be exact", session.isApproximate());
+		}
+	}
+
+	// long stream should stay within bounds and still detect language
+	public void testLongStream() throws Exception {
+		DetectionSession session = detector.newSession(1024);
+		for (int ind = 0; ind < 2000; ind++) {
+			// distinct words to fill up accumulators
+			StringBuilder word = new StringBuilder(" z");
+			for (int value = ind; value > 0; value /= 26) {
+				word.append((char) ('a' + value % 26));
+			}
+			session.append(BaseSingleLangTest.getGermanString()).append(word.append(' '));
+		}
+		assertEquals("Didn't match language", Locale.GERMAN, session.getMostLikelyLanguage());
+		assertTrue("Should have dropped ngrams", session.isApproximate());
+
+		session.reset();
+		assertEquals("Session should be empty", 0, session.getLength());
+		assertNull("Empty session has no language", session.getMostLikelyLanguage());
+	}
+}
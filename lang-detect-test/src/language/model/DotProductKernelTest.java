@@ -0,0 +1,57 @@
+package language.model;
+
+import junit.framework.TestCase;
+import language.util.LongDoubleHashMap;
+
+/**
+ * Test dot product kernels against row by row dot products of the index
+ *
+ * @author Andrey Gusev
+ *
+ */
+public class DotProductKernelTest extends TestCase {
+
+	private final NgramLanguageDetector detector;
+
+	public DotProductKernelTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// scalar kernel should give exactly the same dot products
+	public void testScalarKernel() throws Exception {
+		assertKernel(DotProductKernel.getScalar(), 0.0);
+	}
+
+	// kernel in use, vectorized when available, should be within tolerance
+	public void testKernel() throws Exception {
+		assertKernel(DotProductKernel.get(), DotProductKernel.TOLERANCE);
+	}
+
+	private void assertKernel(DotProductKernel kernel, double tolerance) {
+		String[] texts = new String[] { BaseSingleLangTest.getEnglishString(), BaseSingleLangTest.getFrenchString(),
+				BaseSingleLangTest.getItalianString(), BaseSingleLangTest.getGermanString(),
+				BaseSingleLangTest.getSpanishString(), BaseSingleLangTest.getPortugueseString() };
+		for (Integer nGramSize : detector.getNgramSet()) {
+			NgramIndex index = detector.getNgramIndex(nGramSize);
+			double[][] columns = index.getColumns();
+			for (String text : texts) {
+				LongDoubleHashMap[] textVector = detector.extractTextVectors(text, new int[] { nGramSize });
+
+				double[] expected = new double[index.getNumLocales()];
+				for (int slot = 0; slot < textVector[0].slots(); slot++) {
+					if (textVector[0].isSlotUsed(slot)) {
+						index.addDotProducts(textVector[0].keyAt(slot), textVector[0].valueAt(slot), expected);
+					}
+				}
+				double[] actual = new double[index.getNumLocales()];
+				index.addDotProducts(textVector[0], kernel, columns, actual);
+
+				for (int col = 0; col < expected.length; col++) {
+					assertEquals("Wrong dot product for " + index.getLocale(col) + ", size " + nGramSize,
+							expected[col], actual[col], tolerance * Math.max(1, Math.abs(expected[col])));
+				}
+			}
+		}
+	}
+}
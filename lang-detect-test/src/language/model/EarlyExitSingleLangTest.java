@@ -0,0 +1,45 @@
+package language.model;
+
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+/**
+ * Single language test with early exit linear weights scoring
+ * 
+ * @author Andrey Gusev
+ * 
+ */
+public class EarlyExitSingleLangTest extends TestCase {
+
+	private final NgramLanguageDetector detector;
+
+	public EarlyExitSingleLangTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// early exit should detect the same language as full scoring
+	public void testSameAsLinear() throws Exception {
+		String[] phrases = new String[] { BaseSingleLangTest.getEnglishString(),
+				BaseSingleLangTest.getFrenchString(), BaseSingleLangTest.getItalianString(),
+				BaseSingleLangTest.getGermanString(), BaseSingleLangTest.getSpanishString(),
+				BaseSingleLangTest.getPortugueseString(), "a", "" };
+		for (String phrase : phrases) {
+			assertEquals("Didn't match linear weights", detector.getLanguageWithLinerWeights(phrase), detector
+					.detectLanguageWithEarlyExit(phrase).getLanguage());
+		}
+	}
+
+	// long text in one language should not need all ngrams
+	public void testLargeEnglishStringExitsEarly() throws Exception {
+		StringBuilder sb = new StringBuilder(65536);
+		for (int ind = 0; ind < 1000; ind++) {
+			sb.append(BaseSingleLangTest.getEnglishString()).append(" ");
+		}
+
+		DetectionResult result = detector.detectLanguageWithEarlyExit(sb.toString());
+		assertEquals("Didn't match language", Locale.ENGLISH, result.getLanguage());
+		assertTrue("Should exit early", result.isExitedEarly());
+	}
+}
@@ -0,0 +1,111 @@
+package language.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import language.model.NgramLanguageDetector.BoundaryDetectionAlgorithm;
+import language.model.NgramLanguageDetector.ClassificationAlgorithm;
+import language.model.multiling.BigramBoundaryDetector;
+import language.model.multiling.LanguageBoundaryDetector;
+
+/**
+ * Test shared detector registry
+ *
+ * @author Andrey Gusev
+ */
+public class LanguageDetectorRegistryTest extends TestCase {
+
+	private static final File BASE_PATH = new File("../lang-detect/war/");
+
+	public LanguageDetectorRegistryTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		LanguageDetectorRegistry.clear();
+	}
+
+	// the same model directory should always give the same detectors
+	public void testShared() throws Exception {
+		NgramLanguageDetector detector = LanguageDetectorRegistry.getDetector(BASE_PATH);
+		assertSame("Detector should be shared", detector,
+				LanguageDetectorRegistry.getDetector(new File("../lang-detect/war/languagemodels/..")));
+
+		LanguageBoundaryDetector boundaryDetector = LanguageDetectorRegistry.getBoundaryDetector(BASE_PATH,
+				BoundaryDetectionAlgorithm.FOUR_WORD_BIGRAM, ClassificationAlgorithm.LINEAR_WEIGHTS);
+		assertSame("Boundary detector should be shared", boundaryDetector,
+				LanguageDetectorRegistry.getBoundaryDetector(BASE_PATH, BoundaryDetectionAlgorithm.FOUR_WORD_BIGRAM,
+						ClassificationAlgorithm.LINEAR_WEIGHTS));
+		assertNotSame("Boundary detectors of different type should differ", boundaryDetector,
+				LanguageDetectorRegistry.getBoundaryDetector(BASE_PATH, BoundaryDetectionAlgorithm.ONE_WORD,
+						ClassificationAlgorithm.LINEAR_WEIGHTS));
+	}
+
+	// released detector should be loaded again
+	public void testRelease() throws Exception {
+		NgramLanguageDetector detector = LanguageDetectorRegistry.getDetector(BASE_PATH);
+		LanguageDetectorRegistry.release(BASE_PATH);
+		assertNotSame("Detector should be reloaded", detector, LanguageDetectorRegistry.getDetector(BASE_PATH));
+	}
+
+	// every model directory should have bigram counts of its own training
+	// sets, released directory should count them again
+	public void testBigramCountsPerDirectory() throws Exception {
+		File base = Files.createTempDirectory("models").toFile();
+		try {
+			File modelDir = new File(base, NgramLanguageDetector.BASE_MODEL_DIR);
+			File textModelDir = new File(modelDir, NgramLanguageDetector.NGRAM_MODEL_DIR);
+			File trainingDir = new File(modelDir, NgramLanguageDetector.TRAINING_TEST_DIR);
+			assertTrue("Failed to create " + textModelDir, textModelDir.mkdirs());
+			assertTrue("Failed to create " + trainingDir, trainingDir.mkdirs());
+			for (NgramLanguageModelFeature feature : NgramLanguageModelFeature.values()) {
+				if (!feature.isNonStandard()) {
+					String name = "en_" + feature.getNGramSize();
+					Files.copy(new File(BASE_PATH, NgramLanguageDetector.BASE_MODEL_DIR + File.separator
+							+ NgramLanguageDetector.NGRAM_MODEL_DIR + File.separator + name).toPath(), new File(
+							textModelDir, name).toPath());
+				}
+			}
+			File trainingFile = new File(trainingDir, "en_training");
+			Files.write(trainingFile.toPath(), "zyzzyva quokka\n".getBytes(NgramLanguageDetector.UTF8));
+
+			assertEquals("Wrong count in war", 0, new CountingDetector(BASE_PATH).count("zyzzyva quokka"));
+			assertEquals("Wrong count", 1, new CountingDetector(base).count("zyzzyva quokka"));
+			assertEquals("Wrong count in war", 0, new CountingDetector(BASE_PATH).count("zyzzyva quokka"));
+
+			Files.write(trainingFile.toPath(), "zyzzyva quokka zyzzyva quokka\n"
+					.getBytes(NgramLanguageDetector.UTF8));
+			assertEquals("Counts should be shared", 1, new CountingDetector(base).count("zyzzyva quokka"));
+			LanguageDetectorRegistry.release(base);
+			assertEquals("Released counts should be counted again", 2,
+					new CountingDetector(base).count("zyzzyva quokka"));
+		} finally {
+			LanguageDetectorRegistry.release(base);
+			delete(base);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static class CountingDetector extends BigramBoundaryDetector {
+
+		CountingDetector(File basePath) throws IOException {
+			super(ClassificationAlgorithm.LINEAR_WEIGHTS, LanguageDetectorRegistry.getDetector(basePath));
+		}
+
+		int count(String bigram) {
+			return getBigramCount(bigram);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package language.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+/**
+ * Test locales found in model directory
+ *
+ * @author Andrey Gusev
+ */
+public class LocaleDiscoveryTest extends TestCase {
+
+	private static final String MODEL_PATH = "../lang-detect/war/" + NgramLanguageDetector.BASE_MODEL_DIR
+			+ File.separator + NgramLanguageDetector.NGRAM_MODEL_DIR;
+
+	public LocaleDiscoveryTest(String name) {
+		super(name);
+	}
+
+	public void testToLocale() {
+		assertSame("Bundled locale should be reused", Locale.FRENCH, NgramLanguageDetector.toLocale("fr"));
+		assertEquals("Wrong locale", new Locale("pt", "BR"), NgramLanguageDetector.toLocale("pt_BR"));
+		assertEquals("Wrong locale", new Locale("sr", "RS", "Latn"), NgramLanguageDetector.toLocale("sr_RS_Latn"));
+	}
+
+	// bundled locales should come first in their order, others sorted
+	public void testFindLocales() throws Exception {
+		File dir = Files.createTempDirectory("locales").toFile();
+		try {
+			for (String name : new String[] { "pt_BR_1", "fr_1", "fr_2", "zz_3", "en_1", "README", "af_1" }) {
+				new File(dir, name).createNewFile();
+			}
+			Locale[] locales = NgramLanguageDetector.findLocales(dir, NgramLanguageDetector.MODEL_FILE_PATTERN);
+			assertEquals("Wrong locales", Arrays.asList(Locale.ENGLISH, Locale.FRENCH, new Locale("af"), new Locale(
+					"pt", "BR"), new Locale("zz")), Arrays.asList(locales));
+			assertEquals("Missing directory should have no locales", 0, NgramLanguageDetector.findLocales(
+					new File(dir, "missing"), NgramLanguageDetector.MODEL_FILE_PATTERN).length);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	// detector should detect language that only has text models
+	public void testNewLanguage() throws Exception {
+		File base = Files.createTempDirectory("models").toFile();
+		try {
+			File modelDir = new File(base, NgramLanguageDetector.BASE_MODEL_DIR + File.separator
+					+ NgramLanguageDetector.NGRAM_MODEL_DIR);
+			assertTrue("Failed to create " + modelDir, modelDir.mkdirs());
+			for (NgramLanguageModelFeature feature : NgramLanguageModelFeature.values()) {
+				if (feature.isNonStandard()) {
+					continue;
+				}
+				String suffix = "_" + feature.getNGramSize();
+				copy(new File(MODEL_PATH, "en" + suffix), new File(modelDir, "en" + suffix), false);
+				copy(new File(MODEL_PATH, "fr" + suffix), new File(modelDir, "fr" + suffix), false);
+				// english with its own letters
+				copy(new File(MODEL_PATH, "en" + suffix), new File(modelDir, "zz" + suffix), true);
+			}
+
+			NgramLanguageDetector detector = new NgramLanguageDetector(base);
+			assertEquals("Wrong locales", Arrays.asList(Locale.ENGLISH, Locale.FRENCH, new Locale("zz")),
+					Arrays.asList(detector.getLocaleRegistry().getLocales()));
+			String text = BaseSingleLangTest.getEnglishString();
+			assertEquals("Wrong language", Locale.ENGLISH, detector.getLanguageWithLinerWeights(text));
+			assertEquals("Wrong language", new Locale("zz"), detector.getLanguageWithLinerWeights(zz(text)));
+		} finally {
+			delete(base);
+		}
+	}
+
+	// bundle written before new language was added should not drop it
+	public void testStaleBundle() throws Exception {
+		File base = Files.createTempDirectory("models").toFile();
+		try {
+			File modelDir = new File(base, NgramLanguageDetector.BASE_MODEL_DIR + File.separator
+					+ NgramLanguageDetector.NGRAM_MODEL_DIR);
+			assertTrue("Failed to create " + modelDir, modelDir.mkdirs());
+			Files.copy(new File(MODEL_PATH).toPath().resolveSibling(NgramModelBundle.BUNDLE_FILE), modelDir.toPath()
+					.resolveSibling(NgramModelBundle.BUNDLE_FILE));
+			for (NgramLanguageModelFeature feature : NgramLanguageModelFeature.values()) {
+				if (feature.isNonStandard()) {
+					continue;
+				}
+				String suffix = "_" + feature.getNGramSize();
+				for (Locale locale : NgramLanguageDetector.getLocales()) {
+					copy(new File(MODEL_PATH, locale + suffix), new File(modelDir, locale + suffix), false);
+				}
+				copy(new File(MODEL_PATH, "en" + suffix), new File(modelDir, "zz" + suffix), true);
+			}
+
+			NgramLanguageDetector detector = new NgramLanguageDetector(base);
+			List<Locale> expected = new ArrayList<>(Arrays.asList(NgramLanguageDetector.getLocales()));
+			expected.add(new Locale("zz"));
+			assertEquals("Wrong locales", expected, Arrays.asList(detector.getLocaleRegistry().getLocales()));
+			String text = BaseSingleLangTest.getEnglishString();
+			assertEquals("Wrong language", Locale.ENGLISH, detector.getLanguageWithLinerWeights(text));
+			assertEquals("Wrong language", new Locale("zz"), detector.getLanguageWithLinerWeights(zz(text)));
+		} finally {
+			delete(base);
+		}
+	}
+
+	private static String zz(String text) {
+		return text.replace('e', 'ė').replace('a', 'ą');
+	}
+
+	private static void copy(File from, File to, boolean zz) throws Exception {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(from),
+				NgramLanguageDetector.UTF8));
+				BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(to),
+						NgramLanguageDetector.UTF8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				out.write(zz ? zz(line) : line);
+				out.write('\n');
+			}
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
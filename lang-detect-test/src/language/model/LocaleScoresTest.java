@@ -0,0 +1,61 @@
+package language.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+/**
+ * Test primitive scores of languages
+ * 
+ * @author Andrey Gusev
+ * 
+ */
+public class LocaleScoresTest extends TestCase {
+
+	private static final LocaleRegistry REGISTRY = new LocaleRegistry(new Locale[] { Locale.ENGLISH,
+			Locale.FRENCH, Locale.ITALIAN, Locale.GERMAN });
+
+	public LocaleScoresTest(String name) {
+		super(name);
+	}
+
+	// ranking should be the same as sorted entries, ties broken by language
+	public void testRanking() throws Exception {
+		LocaleScores scores = new LocaleScores(REGISTRY);
+		scores.set(REGISTRY.getId(Locale.FRENCH), 0.5);
+		scores.set(REGISTRY.getId(Locale.ITALIAN), 0.7);
+		scores.add(REGISTRY.getId(Locale.ENGLISH), 0.5);
+
+		assertEquals("Wrong size", 3, scores.size());
+		assertFalse("German has no score", scores.hasScore(REGISTRY.getId(Locale.GERMAN)));
+		assertEquals("Wrong top language", Locale.ITALIAN, scores.getTopLocale());
+
+		int[] ranked = scores.getRankedIds();
+		Iterator<Entry<Locale, Double>> iterator = scores.toSortedSet().iterator();
+		for (int id : ranked) {
+			Entry<Locale, Double> entry = iterator.next();
+			assertEquals("Wrong ranking", entry.getKey(), REGISTRY.getLocale(id));
+			assertEquals("Wrong score", entry.getValue(), scores.get(id), 0.0);
+		}
+		assertFalse("Wrong number of entries", iterator.hasNext());
+		assertEquals("Tie should go to english", Locale.ENGLISH, REGISTRY.getLocale(ranked[1]));
+
+		scores.clear();
+		assertNull("Cleared scores have no top language", scores.getTopLocale());
+	}
+
+	// conversion from map should ignore unknown locales
+	public void testFromMap() throws Exception {
+		Map<Locale, Double> map = new HashMap<>();
+		map.put(Locale.GERMAN, 0.3);
+		map.put(Locale.JAPANESE, 0.9);
+		LocaleScores scores = LocaleScores.fromMap(REGISTRY, map);
+		assertEquals("Wrong size", 1, scores.size());
+		assertEquals("Wrong score", 0.3, scores.get(Locale.GERMAN), 0.0);
+		assertEquals("Unknown locale", -1, REGISTRY.getId(Locale.JAPANESE));
+	}
+}
@@ -0,0 +1,113 @@
+package language.model;
+
+import java.lang.ref.WeakReference;
+
+import junit.framework.TestCase;
+import language.util.LongDoubleHashMap;
+
+/**
+ * Test scoring with automaton of model ngrams
+ *
+ * @author Andrey Gusev
+ */
+public class NgramAutomatonTest extends TestCase {
+
+	private static final String[] TEXTS = new String[] { BaseSingleLangTest.getEnglishString(),
+			BaseSingleLangTest.getFrenchString(), BaseSingleLangTest.getGermanString(),
+			"L'été, c'est \"la\" saison-là: 42 jours... don't #stop", "a", "xyzzy qwv", "" };
+
+	private final NgramLanguageDetector detector;
+
+	public NgramAutomatonTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// automaton should give the same similarities as text vectors
+	public void testSameSimilarities() throws Exception {
+		NgramAutomaton automaton = detector.getAutomaton();
+		int[] nGramSizes = automaton.getNgramSizes();
+		NgramAutomaton.Scan scan = automaton.newScan();
+
+		for (String text : TEXTS) {
+			// scan is reused for all texts
+			scan.scan(automaton, text, 0, text.length());
+			LongDoubleHashMap[] textVectors = new LongDoubleHashMap[nGramSizes.length];
+			for (int ind = 0; ind < nGramSizes.length; ind++) {
+				textVectors[ind] = new LongDoubleHashMap();
+			}
+			new NgramExtractor(nGramSizes, true).extract(text, textVectors);
+
+			for (int ind = 0; ind < nGramSizes.length; ind++) {
+				NgramIndex index = detector.getNgramIndex(nGramSizes[ind]);
+				double[] expected = index.calculateCosineSimilarities(textVectors[ind]);
+				double[] actual = scan.calculateCosineSimilarities(automaton, ind, new double[index.getNumLocales()],
+						null, null);
+				for (int col = 0; col < index.getNumLocales(); col++) {
+					assertEquals("Wrong similarity of " + nGramSizes[ind] + "-grams of " + text, expected[col],
+							actual[col], DotProductKernel.TOLERANCE);
+				}
+			}
+		}
+	}
+
+	// every thread should reuse its own scan
+	public void testScanPerThread() throws Exception {
+		final NgramAutomaton automaton = detector.getAutomaton();
+		assertSame("Scan should be reused", automaton.getScan(), automaton.getScan());
+		final NgramAutomaton.Scan[] otherScan = new NgramAutomaton.Scan[1];
+		Thread thread = new Thread() {
+
+			@Override
+			public void run() {
+				otherScan[0] = automaton.getScan();
+			}
+
+		};
+		thread.start();
+		thread.join();
+		assertNotNull("Missing scan of other thread", otherScan[0]);
+		assertNotSame("Threads should not share scan", automaton.getScan(), otherScan[0]);
+	}
+
+	// scans of a thread should not keep released automaton
+	public void testReleasedAutomaton() throws Exception {
+		WeakReference<NgramAutomaton> automaton = scanWithNewAutomaton();
+		for (int ind = 0; ind < 50 && automaton.get() != null; ind++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("Released automaton should be collected", automaton.get());
+	}
+
+	private static WeakReference<NgramAutomaton> scanWithNewAutomaton() {
+		NgramAutomaton automaton = NgramLanguageDetectorForTests.get().getAutomaton();
+		String text = BaseSingleLangTest.getEnglishString();
+		automaton.getScan().scan(automaton, text, 0, text.length());
+		return new WeakReference<>(automaton);
+	}
+
+	// detector should use automaton when it is configured
+	public void testEngineProperty() throws Exception {
+		String engine = System.getProperty(NgramAutomaton.ENGINE_PROPERTY);
+		try {
+			for (String text : TEXTS) {
+				System.clearProperty(NgramAutomaton.ENGINE_PROPERTY);
+				LocaleScores expected = detector.getLinearWeightScores(text, false);
+				System.setProperty(NgramAutomaton.ENGINE_PROPERTY, "automaton");
+				LocaleScores actual = detector.getLinearWeightScores(text, false);
+				assertEquals("Wrong language of " + text, expected.getTopLocale(), actual.getTopLocale());
+				for (int id = 0; id < detector.getLocaleRegistry().size(); id++) {
+					assertEquals("Wrong score of " + text, expected.get(id), actual.get(id),
+							DotProductKernel.TOLERANCE);
+				}
+			}
+		} finally {
+			if (engine == null) {
+				System.clearProperty(NgramAutomaton.ENGINE_PROPERTY);
+			} else {
+				System.setProperty(NgramAutomaton.ENGINE_PROPERTY, engine);
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package language.model;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+import language.util.LongDoubleHashMap;
+
+/**
+ * Test locale filters of ngram index
+ *
+ * @author Andrey Gusev
+ */
+public class NgramIndexTest extends TestCase {
+
+	public NgramIndexTest(String name) {
+		super(name);
+	}
+
+	// filters should only skip work, similarities should be the same
+	public void testLocaleFilters() throws Exception {
+		String filters = System.getProperty(NgramIndex.LOCALE_FILTERS_PROPERTY);
+		Map<Integer, NgramIndex> indexes;
+		Map<Integer, NgramIndex> filteredIndexes;
+		try {
+			System.setProperty(NgramIndex.LOCALE_FILTERS_PROPERTY, "off");
+			indexes = NgramLanguageDetectorForTests.get().readTextModels();
+			System.setProperty(NgramIndex.LOCALE_FILTERS_PROPERTY, "on");
+			filteredIndexes = NgramLanguageDetectorForTests.get().readTextModels();
+		} finally {
+			if (filters == null) {
+				System.clearProperty(NgramIndex.LOCALE_FILTERS_PROPERTY);
+			} else {
+				System.setProperty(NgramIndex.LOCALE_FILTERS_PROPERTY, filters);
+			}
+		}
+
+		String[] texts = new String[] { BaseSingleLangTest.getEnglishString(), BaseSingleLangTest.getGermanString(),
+				"xyzzy qwv" };
+		for (Map.Entry<Integer, NgramIndex> entry : indexes.entrySet()) {
+			int nGramSize = entry.getKey();
+			NgramIndex index = entry.getValue();
+			NgramIndex filteredIndex = filteredIndexes.get(nGramSize);
+			assertFalse("Should not have filters", index.hasLocaleFilters());
+			assertTrue("Should have filters", filteredIndex.hasLocaleFilters());
+
+			for (String text : texts) {
+				LongDoubleHashMap[] textVector = new LongDoubleHashMap[] { new LongDoubleHashMap() };
+				new NgramExtractor(new int[] { nGramSize }, true).extract(text, textVector);
+
+				double[] expected = index.calculateCosineSimilarities(textVector[0]);
+				double[] actual = filteredIndex.calculateCosineSimilarities(textVector[0]);
+				for (int col = 0; col < index.getNumLocales(); col++) {
+					assertEquals("Wrong similarity", expected[col], actual[col], 0.0);
+				}
+
+				double[] expectedProducts = new double[index.getNumLocales()];
+				double[] actualProducts = new double[index.getNumLocales()];
+				for (int slot = 0; slot < textVector[0].slots(); slot++) {
+					if (textVector[0].isSlotUsed(slot)) {
+						long key = textVector[0].keyAt(slot);
+						assertEquals("Wrong lookup", index.addDotProducts(key, 1, expectedProducts),
+								filteredIndex.addDotProducts(key, 1, actualProducts));
+					}
+				}
+				for (int col = 0; col < index.getNumLocales(); col++) {
+					assertEquals("Wrong dot product", expectedProducts[col], actualProducts[col], 0.0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package language.model;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import language.util.LongDoubleHashMap;
+
+/**
+ * Test binary model bundle
+ *
+ * @author Andrey Gusev
+ */
+public class NgramModelBundleTest extends TestCase {
+
+	private static final String TEXT = "Le chat est sur la table, mais le chien dort dans le jardin";
+
+	public NgramModelBundleTest(String name) {
+		super(name);
+	}
+
+	// mapped bundle should give the same similarities as text models
+	public void testRoundTrip() throws Exception {
+		Map<Integer, NgramIndex> textIndexes = NgramLanguageDetectorForTests.get().readTextModels();
+
+		File bundleFile = File.createTempFile("ngramModel", ".bin");
+		try {
+			NgramModelBundle.write(textIndexes, bundleFile);
+
+			assertSameSimilarities(textIndexes, NgramModelBundle.map(bundleFile));
+			assertSameSimilarities(textIndexes, NgramModelBundle.load(bundleFile.toURI().toURL()));
+			assertSameSimilarities(textIndexes,
+					NgramModelBundle.read(ByteBuffer.wrap(Files.readAllBytes(bundleFile.toPath()))));
+		} finally {
+			bundleFile.delete();
+		}
+	}
+
+	// mapped weights should not be copied to heap when model data is kept
+	// off heap
+	public void testOffHeap() throws Exception {
+		Map<Integer, NgramIndex> textIndexes = NgramLanguageDetectorForTests.get().readTextModels();
+
+		File bundleFile = File.createTempFile("ngramModel", ".bin");
+		String offHeap = System.getProperty(NgramLanguageDetector.OFF_HEAP_PROPERTY);
+		try {
+			NgramModelBundle.write(textIndexes, bundleFile);
+			System.setProperty(NgramLanguageDetector.OFF_HEAP_PROPERTY, "on");
+			Map<Integer, NgramIndex> mapped = NgramModelBundle.map(bundleFile);
+			for (NgramIndex index : mapped.values()) {
+				assertFalse("Mapped weights should stay off heap", index.hasHeapColumns());
+			}
+			// scalar kernel of mapped weights against kernel in use
+			assertSimilarities(textIndexes, mapped, DotProductKernel.TOLERANCE);
+		} finally {
+			if (offHeap == null) {
+				System.clearProperty(NgramLanguageDetector.OFF_HEAP_PROPERTY);
+			} else {
+				System.setProperty(NgramLanguageDetector.OFF_HEAP_PROPERTY, offHeap);
+			}
+			bundleFile.delete();
+		}
+	}
+
+	// quantized weights should be stored as they are and stay close to
+	// double weights
+	public void testQuantizedRoundTrip() throws Exception {
+		Map<Integer, NgramIndex> textIndexes = NgramLanguageDetectorForTests.get().readTextModels();
+
+		for (WeightPrecision precision : new WeightPrecision[] { WeightPrecision.SHORT, WeightPrecision.BYTE }) {
+			Map<Integer, NgramIndex> quantized = new HashMap<>();
+			for (Map.Entry<Integer, NgramIndex> entry : textIndexes.entrySet()) {
+				NgramIndex index = entry.getValue().quantize(precision);
+				assertEquals("Wrong precision", precision, index.getPrecision());
+				assertEquals("Wrong weights size", entry.getValue().getWeightsSize() * precision.getBits() / 64,
+						index.getWeightsSize());
+				quantized.put(entry.getKey(), index);
+			}
+			assertSimilarities(textIndexes, quantized, precision == WeightPrecision.SHORT ? 1e-4 : 1e-2);
+
+			File bundleFile = File.createTempFile("ngramModel", ".bin");
+			try {
+				NgramModelBundle.write(quantized, bundleFile);
+				Map<Integer, NgramIndex> mapped = NgramModelBundle.map(bundleFile);
+				for (NgramIndex index : mapped.values()) {
+					assertEquals("Wrong precision", precision, index.getPrecision());
+				}
+				assertSameSimilarities(quantized, mapped);
+			} finally {
+				bundleFile.delete();
+			}
+		}
+	}
+
+	// vocabulary should be stored with the bundle and give back ngrams and
+	// models of indexes
+	public void testVocabularyRoundTrip() throws Exception {
+		NgramLanguageDetector detector = NgramLanguageDetectorForTests.get();
+		Map<Integer, Map<Locale, NgramModel>> models = detector.readTextModelFiles();
+		Map<Integer, NgramIndex> textIndexes = detector.readTextModels();
+
+		File bundleFile = File.createTempFile("ngramModel", ".bin");
+		try {
+			NgramModelBundle.write(textIndexes, NgramVocabulary.build(textIndexes, models), bundleFile);
+			Map<Integer, NgramIndex> mapped = NgramModelBundle.map(bundleFile);
+			assertSameSimilarities(textIndexes, mapped);
+			NgramVocabulary vocabulary = NgramModelBundle.mapVocabulary(bundleFile);
+			assertNotNull("Vocabulary was not written", vocabulary);
+
+			for (Map.Entry<Integer, Map<Locale, NgramModel>> entry : models.entrySet()) {
+				NgramIndex index = mapped.get(entry.getKey());
+				String[] ngrams = vocabulary.getNgrams(index);
+				Map<Locale, NgramModel> rebuilt = index.toModels(ngrams);
+				for (Map.Entry<Locale, NgramModel> model : entry.getValue().entrySet()) {
+					Map<String, Double> topNgrams = model.getValue().getTopNgrams();
+					for (String nGram : topNgrams.keySet()) {
+						int row = vocabulary.getRow(nGram);
+						assertTrue("Missing ngram " + nGram, row >= 0);
+						assertEquals("Wrong ngram of row", nGram, ngrams[row]);
+					}
+					// ngrams of zero weight don't take part in similarities and
+					// are not restored
+					topNgrams.values().removeAll(Collections.singleton(0.0));
+					assertEquals("Wrong rebuilt model of " + model.getKey(), topNgrams, rebuilt.get(model.getKey())
+							.getTopNgrams());
+				}
+			}
+			assertEquals("Should not find ngram", -1, vocabulary.getRow("\u0000\u0000"));
+		} finally {
+			bundleFile.delete();
+		}
+
+		// bundle without vocabulary
+		bundleFile = File.createTempFile("ngramModel", ".bin");
+		try {
+			NgramModelBundle.write(textIndexes, bundleFile);
+			assertNull("Should have no vocabulary", NgramModelBundle.mapVocabulary(bundleFile));
+		} finally {
+			bundleFile.delete();
+		}
+	}
+
+	// garbage should not be read as bundle
+	public void testNotBundle() throws Exception {
+		try {
+			NgramModelBundle.read(ByteBuffer.wrap(new byte[64]));
+			fail("Should not read empty buffer as bundle");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	private void assertSameSimilarities(Map<Integer, NgramIndex> expected, Map<Integer, NgramIndex> actual) {
+		assertSimilarities(expected, actual, 0.0);
+	}
+
+	private void assertSimilarities(Map<Integer, NgramIndex> expected, Map<Integer, NgramIndex> actual,
+			double delta) {
+		assertEquals("Wrong ngram sizes", expected.keySet(), actual.keySet());
+		for (Map.Entry<Integer, NgramIndex> entry : expected.entrySet()) {
+			int nGramSize = entry.getKey();
+			NgramIndex expectedIndex = entry.getValue();
+			NgramIndex actualIndex = actual.get(nGramSize);
+			assertEquals("Wrong number of ngrams", expectedIndex.size(), actualIndex.size());
+
+			LongDoubleHashMap[] textVector = new LongDoubleHashMap[] { new LongDoubleHashMap() };
+			new NgramExtractor(new int[] { nGramSize }, true).extract(TEXT, textVector);
+
+			double[] expectedSimilarities = expectedIndex.calculateCosineSimilarities(textVector[0]);
+			double[] actualSimilarities = actualIndex.calculateCosineSimilarities(textVector[0]);
+			for (int col = 0; col < expectedIndex.getNumLocales(); col++) {
+				assertEquals("Wrong locale", expectedIndex.getLocale(col), actualIndex.getLocale(col));
+				assertEquals("Wrong similarity", expectedSimilarities[col], actualSimilarities[col], delta);
+			}
+		}
+	}
+}
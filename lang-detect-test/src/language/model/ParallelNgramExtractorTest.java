@@ -0,0 +1,78 @@
+package language.model;
+
+import junit.framework.TestCase;
+import language.util.LongDoubleHashMap;
+import language.util.ScriptHistogram;
+
+/**
+ * Test fork/join extraction of long texts
+ *
+ * @author Andrey Gusev
+ */
+public class ParallelNgramExtractorTest extends TestCase {
+
+	private static final int[] NGRAM_SIZES = new int[] { 1, 2, 3, 4, 5, 6 };
+
+	public ParallelNgramExtractorTest(String name) {
+		super(name);
+	}
+
+	// parallel extraction should give the same vectors and scores as one pass
+	public void testSameAsSinglePass() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		String[] texts = new String[] { BaseSingleLangTest.getEnglishString(), BaseSingleLangTest.getFrenchString(),
+				BaseSingleLangTest.getGermanString(), "Другой текст, 42 дня... don't #stop" };
+		for (int ind = 0; builder.length() < 100000; ind++) {
+			builder.append(texts[ind % texts.length]).append(ind % 7 == 0 ? "\n" : " ");
+		}
+		String text = builder.toString();
+
+		NgramLanguageDetector detector = NgramLanguageDetectorForTests.get();
+		LongDoubleHashMap[] expected = detector.extractTextVectors(text, NGRAM_SIZES);
+		ParallelNgramExtractor extractor = ParallelNgramExtractor.extract(text, 0, text.length(), NGRAM_SIZES);
+		LongDoubleHashMap[] actual = extractor.getTextVectors();
+		for (int ind = 0; ind < NGRAM_SIZES.length; ind++) {
+			assertEquals("Wrong number of " + NGRAM_SIZES[ind] + "-grams", expected[ind].size(), actual[ind].size());
+			for (int slot = 0; slot < expected[ind].slots(); slot++) {
+				if (expected[ind].isSlotUsed(slot)) {
+					assertEquals("Wrong value of " + NGRAM_SIZES[ind] + "-gram", expected[ind].valueAt(slot),
+							actual[ind].get(expected[ind].keyAt(slot)), 1e-9);
+				}
+			}
+		}
+
+		ScriptHistogram histogram = new ScriptHistogram();
+		histogram.add(text);
+		assertEquals("Wrong number of letters", histogram.getTotal(), extractor.getHistogram().getTotal());
+
+		LocaleScores[] expectedScores = detector.getRawCosineSimilarities(expected, text.length(), NGRAM_SIZES,
+				true);
+		LocaleScores[] actualScores = detector.getRawCosineSimilarities(actual, text.length(), NGRAM_SIZES, true);
+		for (int ind = 0; ind < NGRAM_SIZES.length; ind++) {
+			for (int id = 0; id < detector.getLocaleRegistry().size(); id++) {
+				assertEquals("Wrong score", expectedScores[ind].get(id), actualScores[ind].get(id),
+						DotProductKernel.TOLERANCE);
+			}
+		}
+	}
+
+	// texts below threshold are extracted in one pass
+	public void testThreshold() throws Exception {
+		String threshold = System.getProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY);
+		try {
+			System.setProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY, "0");
+			assertFalse("Parallel extraction should be disabled", ParallelNgramExtractor.isParallel(1000000));
+			System.setProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY, "1000");
+			assertFalse("Short text should not be extracted in parallel", ParallelNgramExtractor.isParallel(999));
+			System.clearProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY);
+			assertEquals("Wrong default threshold", ParallelNgramExtractor.DEFAULT_THRESHOLD,
+					ParallelNgramExtractor.getThreshold());
+		} finally {
+			if (threshold == null) {
+				System.clearProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY);
+			} else {
+				System.setProperty(ParallelNgramExtractor.THRESHOLD_PROPERTY, threshold);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package language.model;
+
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+/**
+ * Test detection of long texts from sample of the text
+ * 
+ * @author Andrey Gusev
+ * 
+ */
+public class SamplingTest extends TestCase {
+
+	private final NgramLanguageDetector detector;
+
+	public SamplingTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	// long text should be detected from small part of it
+	public void testLongText() throws Exception {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 50000) {
+			text.append(BaseSingleLangTest.getGermanString()).append(' ')
+					.append(BaseSingleLangTest.getFrenchString().substring(0, text.length() % 20)).append(' ');
+		}
+		DetectionResult result = detector.detectLanguageWithSampling(text);
+		assertEquals("Didn't match language", Locale.GERMAN, result.getLanguage());
+		assertTrue("Should examine part of the text", result.getFractionExamined() < 0.5);
+		assertEquals("Should be the same as whole text", detector.getMostLikelyLanguage(text.toString()),
+				result.getLanguage());
+	}
+
+	// short text should be examined whole
+	public void testShortText() throws Exception {
+		String text = BaseSingleLangTest.getItalianString();
+		DetectionResult result = detector.detectLanguageWithSampling(text);
+		assertEquals("Wrong fraction examined", 1.0, result.getFractionExamined(), 0.0);
+		assertEquals("Should be the same as whole text", detector.getMostLikelyLanguage(text), result.getLanguage());
+	}
+}
@@ -0,0 +1,69 @@
+package language.model;
+
+import java.lang.Character.UnicodeScript;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import language.util.ScriptHistogram;
+
+/**
+ * Test pruning of languages by scripts of the text
+ *
+ * @author Andrey Gusev
+ *
+ */
+public class ScriptProfilesTest extends TestCase {
+
+	private static final String RUSSIAN_STRING = "Москва является столицей Российской Федерации и крупнейшим городом страны";
+
+	private final NgramLanguageDetector detector;
+
+	public ScriptProfilesTest(String name) {
+		super(name);
+		this.detector = NgramLanguageDetectorForTests.get();
+	}
+
+	public void testHistogram() {
+		ScriptHistogram histogram = new ScriptHistogram();
+		// gothic letter is outside of basic multilingual plane
+		histogram.add("abc, где 12 \uD800\uDF30");
+		assertEquals("Wrong number of letters", 7, histogram.getTotal());
+		assertEquals("Wrong number of latin letters", 3, histogram.getCount(UnicodeScript.LATIN));
+		assertEquals("Wrong number of cyrillic letters", 3, histogram.getCount(UnicodeScript.CYRILLIC));
+		assertEquals("Wrong number of gothic letters", 1, histogram.getCount(UnicodeScript.GOTHIC));
+		assertEquals("Wrong scripts", EnumSet.of(UnicodeScript.LATIN, UnicodeScript.CYRILLIC),
+				histogram.getScripts(0.4));
+	}
+
+	// all bundled languages are written in latin script
+	public void testProfiles() {
+		for (Locale locale : NgramLanguageDetector.getLocales()) {
+			assertEquals("Wrong profile of " + locale, Collections.singleton(UnicodeScript.LATIN), detector
+					.getScriptProfiles().getProfile(locale));
+		}
+	}
+
+	// text in other script should have no candidate languages
+	public void testOtherScript() throws Exception {
+		assertTrue("Should not score any language", detector.getLinearWeightScores(RUSSIAN_STRING, false)
+				.isEmpty());
+		assertNull("Should not detect language", detector.detectLanguageWithEarlyExit(RUSSIAN_STRING)
+				.getLanguage());
+		assertNull("Should not detect language", detector.newSession().append(RUSSIAN_STRING)
+				.getMostLikelyLanguage());
+		assertEquals("Should not detect language", Collections.singletonList((Locale) null),
+				detector.detectBatch(Arrays.asList(RUSSIAN_STRING),
+						NgramLanguageDetector.ClassificationAlgorithm.LINEAR_WEIGHTS));
+	}
+
+	// few letters of other script should not prune languages of the text
+	public void testForeignWord() throws Exception {
+		String text = BaseSingleLangTest.getEnglishString() + " Москва";
+		assertEquals("Didn't match language", Locale.ENGLISH, detector.getLanguageWithLinerWeights(text));
+		assertEquals("Should score all languages", NgramLanguageDetector.getLocales().length, detector
+				.getLinearWeightScores(text, false).size());
+	}
+}
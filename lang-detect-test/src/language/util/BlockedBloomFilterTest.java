@@ -0,0 +1,39 @@
+package language.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test bloom filter of ngram hashes
+ *
+ * @author Andrey Gusev
+ */
+public class BlockedBloomFilterTest extends TestCase {
+
+	private static final int NUM_KEYS = 10000;
+
+	public BlockedBloomFilterTest(String name) {
+		super(name);
+	}
+
+	// added keys should always be found and few others
+	public void testFalsePositives() throws Exception {
+		BlockedBloomFilter filter = new BlockedBloomFilter(NUM_KEYS);
+		Random rnd = new Random(1);
+		for (int ind = 0; ind < NUM_KEYS; ind++) {
+			filter.add(NgramHash.hash("ngram" + ind));
+		}
+		for (int ind = 0; ind < NUM_KEYS; ind++) {
+			assertTrue("Added key should be found", filter.mightContain(NgramHash.hash("ngram" + ind)));
+		}
+
+		int falsePositives = 0;
+		for (int ind = 0; ind < NUM_KEYS; ind++) {
+			if (filter.mightContain(rnd.nextLong())) {
+				falsePositives++;
+			}
+		}
+		assertTrue("Too many false positives: " + falsePositives, falsePositives < NUM_KEYS / 20);
+	}
+}
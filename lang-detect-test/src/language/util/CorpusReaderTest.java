@@ -0,0 +1,76 @@
+package language.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test parallel reading of UTF-8 files in segments
+ *
+ * @author Andrey Gusev
+ */
+public class CorpusReaderTest extends TestCase {
+
+	public CorpusReaderTest(String name) {
+		super(name);
+	}
+
+	// lines of segments should be the same as lines of BufferedReader
+	public void testSameLines() throws Exception {
+		StringBuilder text = new StringBuilder();
+		String[] lines = new String[] { "first line", "", "другая строка", "windows\r", "mac\rline", "日本語のテキスト",
+				"\r", "last" };
+		for (int ind = 0; ind < 500; ind++) {
+			text.append(lines[ind % lines.length]).append(ind % 3 == 0 ? "\r\n" : "\n");
+		}
+		// no line feed at the end
+		text.append("end");
+
+		File file = File.createTempFile("corpus", ".txt");
+		CorpusReader reader = new CorpusReader(3, 7);
+		try {
+			Files.write(file.toPath(), text.toString().getBytes("UTF-8"));
+			List<String> expected = new ArrayList<>();
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+				String s;
+				while ((s = br.readLine()) != null) {
+					expected.add(s);
+				}
+			}
+			assertEquals("Wrong lines", expected, readLines(reader, file));
+
+			Files.write(file.toPath(), new byte[0]);
+			assertTrue("Empty file should have no lines", readLines(reader, file).isEmpty());
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	private static List<String> readLines(CorpusReader reader, File file) throws Exception {
+		final List<String> retVal = new ArrayList<>();
+		reader.read(file, new CorpusReader.Handler<List<String>>() {
+
+			public List<String> process(CorpusReader.Segment segment) {
+				List<String> lines = new ArrayList<>();
+				String s;
+				while ((s = segment.readLine()) != null) {
+					lines.add(s);
+				}
+				return lines;
+			}
+
+			public void collect(List<String> lines) {
+				retVal.addAll(lines);
+			}
+
+		});
+		return retVal;
+	}
+}
@@ -0,0 +1,73 @@
+package language.util;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test bounded ngram cache
+ *
+ * @author Andrey Gusev
+ */
+public class NgramCacheTest extends TestCase {
+
+	public NgramCacheTest(String name) {
+		super(name);
+	}
+
+	// cache should return what was put and count hits and misses
+	public void testHitsAndMisses() throws Exception {
+		NgramCache cache = new NgramCache(100);
+
+		assertNull("Should be a miss", cache.get("$test$", 3));
+		Set<String> ngrams = cache.putIfAbsent("$test$", 3, LanguageUtil.getNgrams("test", 3));
+		assertEquals("Didn't return cached set", ngrams, cache.get("$test$", 3));
+		assertNull("Ngram size is part of the key", cache.get("$test$", 2));
+
+		assertEquals("Wrong number of hits", 1, cache.getHits());
+		assertEquals("Wrong number of misses", 2, cache.getMisses());
+	}
+
+	// weight of the cache should never stay over the bound
+	public void testBound() throws Exception {
+		final int maxWeight = 50;
+		NgramCache cache = new NgramCache(maxWeight);
+
+		for (int ind = 0; ind < 1000; ind++) {
+			Set<String> ngrams = new HashSet<>();
+			ngrams.add("a" + ind);
+			ngrams.add("b" + ind);
+			cache.putIfAbsent("word" + ind, 2, ngrams);
+			assertTrue("Cache is over the bound", cache.getWeight() <= maxWeight);
+		}
+		assertTrue("Should have evicted entries", cache.getEvictions() > 0);
+	}
+
+	// frequently used entry should survive eviction of one-off words
+	public void testFrequentEntrySurvives() throws Exception {
+		NgramCache cache = new NgramCache(20);
+
+		Set<String> hot = new HashSet<>();
+		hot.add("hot");
+		cache.putIfAbsent("hot", 3, hot);
+
+		for (int ind = 0; ind < 1000; ind++) {
+			// keep using hot word
+			assertNotNull("Hot word was evicted", cache.get("hot", 3));
+
+			Set<String> ngrams = new HashSet<>();
+			ngrams.add("c" + ind);
+			cache.putIfAbsent("cold" + ind, 3, ngrams);
+		}
+	}
+
+	// getNgrams should return the same values with cache
+	public void testGetNgramsCached() throws Exception {
+		Set<String> first = LanguageUtil.getNgrams("detection", 3);
+		Set<String> second = LanguageUtil.getNgrams("detection", 3);
+		assertEquals("Cached ngrams differ", first, second);
+		assertTrue("Missing ngram", first.contains("$de"));
+		assertTrue("Missing ngram", first.contains("on$"));
+	}
+}
@@ -0,0 +1,48 @@
+package language.util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test packed table of string counts
+ *
+ * @author Andrey Gusev
+ */
+public class StringCountTableTest extends TestCase {
+
+	private static final int NUM_KEYS = 5000;
+
+	public StringCountTableTest(String name) {
+		super(name);
+	}
+
+	// heap and mapped tables should have the same counts as the map
+	public void testCounts() throws Exception {
+		Map<String, Integer> counts = new HashMap<>();
+		for (int ind = 0; ind < NUM_KEYS; ind++) {
+			counts.put("word" + ind + " другое", ind + 1);
+		}
+		counts.put("", 7);
+		counts.put("zero", 0);
+
+		File file = File.createTempFile("counts", ".bin");
+		try {
+			for (StringCountTable table : new StringCountTable[] { StringCountTable.build(counts),
+					StringCountTable.write(counts, file) }) {
+				assertEquals("Wrong size", NUM_KEYS + 1, table.size());
+				for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+					assertEquals("Wrong count of " + entry.getKey(), entry.getValue().intValue(),
+							table.get(entry.getKey()));
+				}
+				assertEquals("Should not find key", 0, table.get("word" + NUM_KEYS + " другое"));
+				assertEquals("Should not find key", 0, table.get(new StringBuilder("word1 другоe")));
+			}
+			assertEquals("Wrong file size", StringCountTable.map(file).sizeInBytes(), file.length());
+		} finally {
+			file.delete();
+		}
+	}
+}
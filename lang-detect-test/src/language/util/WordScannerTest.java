@@ -0,0 +1,49 @@
+package language.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test word scanner and tokenizing that uses it
+ *
+ * @author Andrey Gusev
+ */
+public class WordScannerTest extends TestCase {
+
+	public WordScannerTest(String name) {
+		super(name);
+	}
+
+	// words are split on delimeters, lower cased and short words are skipped
+	public void testTokenize() throws Exception {
+		List<String> words = LanguageUtil.tokenize("Hello, World! (a) Z\u00fcrich\u3000Stra\u00dfe--ok", 2);
+		assertEquals("Wrong tokens", Arrays.asList("hello", "world", "z\u00fcrich", "stra\u00dfe", "ok"), words);
+	}
+
+	// scanner should work on regions of any char sequence and reuse buffer
+	public void testScanRegion() throws Exception {
+		StringBuilder text = new StringBuilder("skip these words");
+		WordScanner scanner = new WordScanner(1);
+		scanner.reset(text, 5, text.length());
+
+		assertTrue("Missing word", scanner.next());
+		assertEquals("these", scanner.getWordAsString());
+		assertEquals("Wrong word start", 5, scanner.getWordStart());
+		assertTrue("Missing word", scanner.next());
+		assertEquals("words", new String(scanner.getWord(), 0, scanner.getLength()));
+		assertFalse("Unexpected word", scanner.next());
+	}
+
+	// ngrams with punctuation or digits are skipped
+	public void testGetNgrams() throws Exception {
+		assertEquals("Wrong ngrams", new HashSet<>(Arrays.asList("$a", "ab", "b$")),
+				LanguageUtil.getNgrams("Ab", 2));
+		assertEquals("Wrong ngrams", new HashSet<>(Arrays.asList("$a", "b$")),
+				LanguageUtil.getNgrams("a1b", 2));
+		assertTrue("Unigram should be a letter", LanguageUtil.getNgrams("x'", 1).contains("x"));
+		assertEquals("Wrong unigrams", 1, LanguageUtil.getNgrams("x'", 1).size());
+	}
+}
@@ -6,4 +6,6 @@ java -server -Xmx2G -cp bin:../lang-detect/war/WEB-INF/classes \
   language.tools.LanguageDetectorTester \
   -dataPath $DATA_PATH \
   -genModels \
+  -threads ${1:-$(nproc)} \
+  -maxCounts ${2:-0} \
   -verbose
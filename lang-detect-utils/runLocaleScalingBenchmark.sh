@@ -0,0 +1,8 @@
+#!/bin/bash
+
+DATA_PATH=../lang-detect/war/
+
+java -server -Xmx2G -cp bin:../lang-detect/war/WEB-INF/classes \
+  language.tools.LocaleScalingBenchmark \
+  -dataPath $DATA_PATH \
+  -locales ${1:-6,25,50,100}
@@ -0,0 +1,11 @@
+#!/bin/bash
+
+DATA_PATH=../lang-detect/war/
+
+java -server -Xmx2G -cp bin:../lang-detect/war/WEB-INF/classes \
+  language.tools.LanguageDetectorTester \
+  -dataPath $DATA_PATH \
+  -runTestSet \
+  -useClassifier 0 \
+  -weightBits ${1:-8} \
+  -verbose
@@ -0,0 +1,446 @@
+package language.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import language.util.LanguageUtil;
+
+/**
+ * Counts ngrams of all sizes of a corpus in a single pass over its text.
+ * Words of the text are counted first and ngrams of every distinct word are
+ * only generated once per ngram size when models are built, each with count
+ * of the word. Counts of ngrams are the same as when every line is added to
+ * models of all sizes with NgramLanguageDetector.getNgramModelForText without
+ * adjusting values: word contributes each of its distinct ngrams once.
+ *
+ * Only top ngrams of each size are kept in built models (see
+ * NgramModel.getTopNgramsCount), which are all that text model files have,
+ * so models are written the same as from counts of all ngrams.
+ *
+ * Counts can be bounded by maxCounts: once that many distinct words or
+ * ngrams are counted in memory, they are written to a run file sorted by
+ * key in the spill directory and counting starts over. Runs are merged when
+ * models are built, counts of the same key are added up as runs are read in
+ * key order, so memory stays bounded no matter how large the corpus is. Run
+ * has int length and UTF-8 bytes of every key followed by its long count, so
+ * words of any length can be spilled.
+ *
+ * Raw counts of all ngrams of a size can be kept in a counts file of the
+ * same format as runs. Counts of the text are then added to counts of the
+ * file when model is built, in the same pass over sorted counts, and the sum
+ * is written into new counts file, so models can be updated with new text
+ * without counting the text they were built from again.
+ *
+ * Not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+public class CorpusNgramCounter implements Closeable {
+
+	private static final int RUN_BUFFER_SIZE = 8192;
+	private static final Charset UTF8 = Charset.forName(NgramLanguageDetector.UTF8);
+
+	private final int[] ngramSizes;
+	// maximum number of distinct keys counted in memory, 0 if unbounded
+	private final int maxCounts;
+	private final File spillDir;
+
+	// number of occurrences of each word of the corpus since last spill
+	private final Map<String, long[]> wordCounts = new HashMap<>();
+	private final List<File> wordRuns = new ArrayList<>();
+	private int numRuns;
+
+	/**
+	 * @param ngramSizes
+	 *            - ngram sizes of built models
+	 */
+	public CorpusNgramCounter(int[] ngramSizes) {
+		this(ngramSizes, 0, null);
+	}
+
+	/**
+	 * @param ngramSizes
+	 *            - ngram sizes of built models
+	 * @param maxCounts
+	 *            - maximum number of distinct words or ngrams counted in
+	 *            memory, 0 to keep all counts in memory
+	 * @param spillDir
+	 *            - directory for run files, can be null if counts are not
+	 *            bounded
+	 */
+	public CorpusNgramCounter(int[] ngramSizes, int maxCounts, File spillDir) {
+		if (maxCounts > 0 && spillDir == null) {
+			throw new IllegalArgumentException("Bounded counter needs spill directory");
+		}
+		this.ngramSizes = ngramSizes.clone();
+		this.maxCounts = Math.max(0, maxCounts);
+		this.spillDir = spillDir;
+	}
+
+	/**
+	 * counts words of the line of the corpus
+	 */
+	public void addText(String text) throws IOException {
+		if (text == null || text.length() == 0) {
+			return;
+		}
+		for (String word : LanguageUtil.tokenize(text, 1)) {
+			addWord(word, 1);
+		}
+	}
+
+	/**
+	 * adds occurrences of a word, words of parts of the corpus can be
+	 * counted separately and added up here
+	 */
+	public void addWord(String word, long count) throws IOException {
+		add(wordCounts, word, count);
+		if (maxCounts > 0 && wordCounts.size() >= maxCounts) {
+			wordRuns.add(spill(wordCounts, spillDir));
+		}
+	}
+
+	public int[] getNgramSizes() {
+		return ngramSizes.clone();
+	}
+
+	/**
+	 * @return number of run files written so far because counts were
+	 *         bounded
+	 */
+	public int getNumRuns() {
+		return numRuns;
+	}
+
+	/**
+	 * builds model of ngram size at given position from counted words, models
+	 * are built one at a time so only counts of one size are held at once
+	 */
+	public NgramModel buildModel(int ind) throws IOException {
+		return buildModel(ind, null, null);
+	}
+
+	/**
+	 * same as buildModel but with raw counts of ngrams kept in files, model
+	 * is built from counts of the text added to counts of the counts file
+	 * and the sum is written into new counts file. Counts file is not
+	 * changed, so caller replaces it once all its models are written.
+	 *
+	 * @param countsFile
+	 *            - raw counts of all ngrams of the size sorted by ngram, null
+	 *            or missing file if there are none yet
+	 * @param newCountsFile
+	 *            - file for raw counts of the text and counts file, null to
+	 *            only build model from counts of the text
+	 */
+	public NgramModel buildModel(int ind, File countsFile, File newCountsFile) throws IOException {
+		int nGramSize = ngramSizes[ind];
+		if (!wordRuns.isEmpty() && !wordCounts.isEmpty()) {
+			wordRuns.add(spill(wordCounts, spillDir));
+		}
+		if (wordRuns.size() > 1) {
+			// words are merged once for all ngram sizes
+			File merged = merge(wordRuns);
+			deleteRuns(wordRuns);
+			wordRuns.add(merged);
+		}
+
+		TopNgrams topNgrams = new TopNgrams(NgramModel.getTopNgramsCount(nGramSize) + 1);
+		Map<String, long[]> ngramCounts = new HashMap<>();
+		List<File> ngramRuns = new ArrayList<>();
+		if (wordRuns.isEmpty()) {
+			for (Map.Entry<String, long[]> entry : wordCounts.entrySet()) {
+				addNgrams(entry.getKey(), entry.getValue()[0], nGramSize, ngramCounts, ngramRuns);
+			}
+		} else {
+			try (RunReader words = new RunReader(wordRuns.get(0))) {
+				while (words.next()) {
+					addNgrams(words.key, words.count, nGramSize, ngramCounts, ngramRuns);
+				}
+			}
+		}
+
+		try {
+			if (newCountsFile != null) {
+				if (!ngramCounts.isEmpty()) {
+					// counts in memory are sorted next to new counts file if
+					// they are not bounded
+					ngramRuns.add(spill(ngramCounts, spillDir != null ? spillDir : newCountsFile.getParentFile()));
+				}
+				updateCounts(ngramRuns, countsFile, newCountsFile, topNgrams);
+			} else if (ngramRuns.isEmpty()) {
+				for (Map.Entry<String, long[]> entry : ngramCounts.entrySet()) {
+					topNgrams.add(entry.getKey(), entry.getValue()[0]);
+				}
+			} else {
+				if (!ngramCounts.isEmpty()) {
+					ngramRuns.add(spill(ngramCounts, spillDir));
+				}
+				mergeInto(ngramRuns, topNgrams);
+			}
+		} finally {
+			deleteRuns(ngramRuns);
+		}
+		return topNgrams.toModel(nGramSize);
+	}
+
+	/**
+	 * deletes run files
+	 */
+	@Override
+	public void close() {
+		deleteRuns(wordRuns);
+	}
+
+	private void addNgrams(String word, long count, int nGramSize, Map<String, long[]> ngramCounts,
+			List<File> ngramRuns) throws IOException {
+		String wrappedWord = LanguageUtil.WORD_BOUNDARY_MARKER + word + LanguageUtil.WORD_BOUNDARY_MARKER;
+		for (String nGram : LanguageUtil.computeNgrams(wrappedWord, nGramSize)) {
+			add(ngramCounts, nGram, count);
+			if (maxCounts > 0 && ngramCounts.size() >= maxCounts) {
+				ngramRuns.add(spill(ngramCounts, spillDir));
+			}
+		}
+	}
+
+	private static void add(Map<String, long[]> counts, String key, long count) {
+		long[] current = counts.get(key);
+		if (current == null) {
+			counts.put(key, new long[] { count });
+		} else {
+			current[0] += count;
+		}
+	}
+
+	/**
+	 * merges runs with counts of the counts file into new counts file and
+	 * passes every ngram with its total count to top ngrams
+	 */
+	private static void updateCounts(List<File> runs, File countsFile, File newCountsFile,
+			final TopNgrams topNgrams) throws IOException {
+		List<File> sources = new ArrayList<>(runs);
+		if (countsFile != null && countsFile.exists()) {
+			sources.add(countsFile);
+		}
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				newCountsFile), RUN_BUFFER_SIZE));
+		try {
+			mergeInto(sources, new CountConsumer() {
+
+				public void accept(String key, long count) throws IOException {
+					writeCount(out, key, count);
+					topNgrams.add(key, count);
+				}
+
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * writes counts sorted by key into new run file in the directory and
+	 * clears them
+	 */
+	private File spill(Map<String, long[]> counts, File dir) throws IOException {
+		String[] keys = counts.keySet().toArray(new String[counts.size()]);
+		Arrays.sort(keys);
+		File run = newRun(dir);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+				RUN_BUFFER_SIZE))) {
+			for (String key : keys) {
+				writeCount(out, key, counts.get(key)[0]);
+			}
+		}
+		counts.clear();
+		return run;
+	}
+
+	/**
+	 * merges runs into a new run where every key is once
+	 */
+	private File merge(List<File> runs) throws IOException {
+		File merged = newRun(spillDir);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged),
+				RUN_BUFFER_SIZE));
+		try {
+			mergeInto(runs, new CountConsumer() {
+
+				public void accept(String key, long count) throws IOException {
+					writeCount(out, key, count);
+				}
+
+			});
+		} finally {
+			out.close();
+		}
+		return merged;
+	}
+
+	private static void writeCount(DataOutputStream out, String key, long count) throws IOException {
+		byte[] bytes = key.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		out.writeLong(count);
+	}
+
+	/**
+	 * reads runs in key order and passes every key with its total count to
+	 * the consumer
+	 */
+	private static void mergeInto(List<File> runs, CountConsumer consumer) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), new Comparator<RunReader>() {
+
+			public int compare(RunReader reader, RunReader another) {
+				return reader.key.compareTo(another.key);
+			}
+
+		});
+		List<RunReader> readers = new ArrayList<>(runs.size());
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				String key = reader.key;
+				long count = reader.count;
+				if (reader.next()) {
+					queue.add(reader);
+				}
+				while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+					reader = queue.poll();
+					count += reader.count;
+					if (reader.next()) {
+						queue.add(reader);
+					}
+				}
+				consumer.accept(key, count);
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	private File newRun(File dir) throws IOException {
+		if (maxCounts > 0) {
+			numRuns++;
+		}
+		// counters of other locales can write runs into the same directory
+		return File.createTempFile("counts", ".run", dir);
+	}
+
+	private static void deleteRuns(List<File> runs) {
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+	}
+
+	private interface CountConsumer {
+
+		void accept(String key, long count) throws IOException;
+	}
+
+	/**
+	 * Reads keys and counts of a run file in order
+	 */
+	private static class RunReader implements Closeable {
+
+		private final DataInputStream in;
+		private String key;
+		private long count;
+
+		RunReader(File run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+		}
+
+		/**
+		 * @return false when there are no more keys
+		 */
+		boolean next() throws IOException {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			key = new String(bytes, UTF8);
+			count = in.readLong();
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Keeps ngrams that come first in the order of NgramModel: by count
+	 * descending and then by ngram descending
+	 */
+	private static class TopNgrams implements CountConsumer {
+
+		private final int maxNgrams;
+		// head is the ngram that comes last
+		private final PriorityQueue<Map.Entry<String, Long>> queue;
+
+		TopNgrams(int maxNgrams) {
+			this.maxNgrams = maxNgrams;
+			this.queue = new PriorityQueue<>(maxNgrams + 1, new Comparator<Map.Entry<String, Long>>() {
+
+				public int compare(Map.Entry<String, Long> entry, Map.Entry<String, Long> another) {
+					int retVal = entry.getValue().compareTo(another.getValue());
+					return retVal != 0 ? retVal : entry.getKey().compareTo(another.getKey());
+				}
+
+			});
+		}
+
+		public void accept(String key, long count) {
+			add(key, count);
+		}
+
+		void add(String nGram, long count) {
+			queue.add(new AbstractMap.SimpleImmutableEntry<>(nGram, count));
+			if (queue.size() > maxNgrams) {
+				queue.poll();
+			}
+		}
+
+		NgramModel toModel(int nGramSize) {
+			NgramModel retVal = new NgramModel(nGramSize);
+			for (Map.Entry<String, Long> entry : queue) {
+				retVal.addNgram(entry.getKey(), (double) entry.getValue());
+			}
+			return retVal;
+		}
+	}
+}
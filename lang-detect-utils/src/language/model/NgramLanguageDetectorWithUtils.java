@@ -11,23 +11,30 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-import language.model.multiling.BigramBoundaryDetector;
 import language.model.multiling.LanguageBoundaryDetector;
-import language.model.multiling.NestedSlidingWindowBigramBoundaryDetector;
-import language.model.multiling.OneWordBoundaryDetector;
-import language.model.multiling.SlidingWindowBigramBoundaryDetector;
-import language.model.multiling.ThreeWordBoundaryDetector;
-import language.model.multiling.TwoWordBoundaryDetector;
+import language.util.CorpusReader;
 import language.util.LanguageUtil;
 import language.util.Pair;
 
@@ -46,7 +53,13 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 	private static final Random rnd = new Random(1);
 
 	private static final String SOURCE_DIR = "modelSource";
+	// new text of locales that models are updated with
+	private static final String UPDATE_DIR = "modelUpdates";
+	// raw counts of all ngrams of generated models
+	private static final String COUNTS_DIR = "ngramCounts";
 	private static final String MULTI_LANG_TEST_DIR = "multiLangTestSet";
+	// source text files are named by their locale
+	private static final Pattern SOURCE_FILE_PATTERN = Pattern.compile("([a-zA-Z]+(_[a-zA-Z0-9]+)*)");
 
 	private static final int MAX_MULTI_LING_PHRASES = 30000;
 	private static final String MULTI_LING_SEPARATOR = ":::";
@@ -64,128 +77,397 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 	}
 
 	public String generateLanguageModels() throws IOException {
+		return generateLanguageModels(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Generates text model of each ngram size of each locale that has source
+	 * text. Source text of a locale is read once for all ngram sizes, see
+	 * CorpusNgramCounter. Every locale is an independent task that writes its
+	 * own files, tasks run on a pool of given number of threads and progress
+	 * is printed as they complete. Files are the same as when models are
+	 * generated one by one and output lists models in the same order. Raw
+	 * counts of all ngrams are written next to models, so that models can be
+	 * updated with new text later, see updateLanguageModels.
+	 *
+	 * @param numThreads
+	 *            - number of locales generated at once, every task holds
+	 *            counts of words of its source text and of ngrams of one
+	 *            size
+	 */
+	public String generateLanguageModels(int numThreads) throws IOException {
+		return generateLanguageModels(numThreads, 0);
+	}
+
+	/**
+	 * same as generateLanguageModels but counts of each task are bounded,
+	 * counts over the bound are spilled to temporary files and merged, see
+	 * CorpusNgramCounter
+	 *
+	 * @param maxCounts
+	 *            - maximum number of distinct words or ngrams each task keeps
+	 *            in memory, 0 to keep all of them
+	 */
+	public String generateLanguageModels(int numThreads, int maxCounts) throws IOException {
+		return generateLanguageModels(getSourceLocales(), numThreads, maxCounts, false);
+	}
+
+	/**
+	 * Updates text models of locales that have new text in modelUpdates
+	 * directory. Counts of ngrams of the new text are added to raw counts
+	 * written when models were generated or last updated and models are
+	 * written from the sum, so they are the same as models generated from
+	 * source text with the new text appended, which it then is. Source text
+	 * is not read again: update counts the new text and merges its counts
+	 * with raw counts of the locale in one pass. New text is removed once it
+	 * is added to source text, locales with models but without raw counts
+	 * are skipped.
+	 */
+	public String updateLanguageModels(int numThreads, int maxCounts) throws IOException {
+		return generateLanguageModels(findLocales(locationBase.resolve(UPDATE_DIR).toFile(), SOURCE_FILE_PATTERN),
+				numThreads, maxCounts, true);
+	}
+
+	private String generateLanguageModels(Locale[] locales, int numThreads, int maxCounts, boolean update)
+			throws IOException {
 		StringBuilder output = new StringBuilder(256);
 
-		for (int nGramSize : ngramSet) {
+		// source files are decoded on threads of their own, generators only
+		// wait for them
+		CorpusReader reader = new CorpusReader(numThreads);
+		List<ModelGenerator> generators = new ArrayList<>();
+		// go through all languages and generate ngram models
+		for (Locale locale : locales) {
+			generators.add(new ModelGenerator(locale, reader, maxCounts, update));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			CompletionService<ModelGenerator> completionService = new ExecutorCompletionService<>(executor);
+			for (ModelGenerator generator : generators) {
+				completionService.submit(generator);
+			}
+			for (int ind = 0; ind < generators.size(); ind++) {
+				ModelGenerator generator = completionService.take().get();
+				System.out.println((update ? "Updated" : "Generated") + " ngram models for " + generator.locale
+						+ " (" + (ind + 1) + "/" + generators.size() + ") in " + generator.millis + " ms"
+						+ (generator.numRuns > 0 ? ", spilled " + generator.numRuns + " count runs" : ""));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			reader.close();
+		}
+
+		for (int ind = 0; ind < ngramSet.length; ind++) {
+			for (ModelGenerator generator : generators) {
+				output.append(generator.outputs[ind]);
+			}
+		}
+
+		// keep binary bundle in sync with new text models
+		output.append(convertLanguageModels());
+
+		return output.toString();
+	}
 
-			// go through all languages and generate ngram models
-			for (Locale locale : LOCALES) {
+	/**
+	 * Generates text models of all ngram sizes of one locale from its source
+	 * text or updates them with its new text
+	 */
+	private class ModelGenerator implements Callable<ModelGenerator> {
+
+		private final Locale locale;
+		private final CorpusReader reader;
+		private final int maxCounts;
+		private final boolean update;
+		// output of each ngram size
+		private final String[] outputs = new String[ngramSet.length];
+		private long millis;
+		private int numRuns;
+
+		ModelGenerator(Locale locale, CorpusReader reader, int maxCounts, boolean update) {
+			this.locale = locale;
+			this.reader = reader;
+			this.maxCounts = maxCounts;
+			this.update = update;
+		}
 
-				String outLog = "\n\n******** Creating " + nGramSize + "-gram model for " + locale.toString()
-						+ " ********\n";
-				System.out.println(outLog);
-				output.append(outLog);
+		public ModelGenerator call() throws IOException {
+			long start = System.currentTimeMillis();
 
-				Path fileWithText = locationBase.resolve(SOURCE_DIR).resolve(locale.toString());
+			Path fileWithText = locationBase.resolve(update ? UPDATE_DIR : SOURCE_DIR).resolve(locale.toString());
+			Path modelLocationDirFile = checkAndCreateDir(locationBase.resolve(NGRAM_MODEL_DIR));
+			Path countsDir = checkAndCreateDir(locationBase.resolve(COUNTS_DIR));
 
-				if (!Files.exists(fileWithText)) {
-					output.append("+++++ Skipping generating ngram model for ").append(locale.toString());
-					output.append(" since source file does not exist\n");
-					continue;
+			String skipped = null;
+			if (!Files.exists(fileWithText)) {
+				skipped = " since source file does not exist\n";
+			}
+			for (int ind = 0; ind < ngramSet.length && update && skipped == null; ind++) {
+				String fileName = locale.toString() + "_" + ngramSet[ind];
+				// counts of text of existing model are needed to update it
+				if (Files.exists(modelLocationDirFile.resolve(fileName))
+						&& !Files.exists(countsDir.resolve(fileName))) {
+					skipped = " since raw counts of its model do not exist, generate models first\n";
 				}
+			}
+			for (int ind = 0; ind < ngramSet.length; ind++) {
+				outputs[ind] = "\n\n******** " + (update ? "Updating " : "Creating ") + ngramSet[ind]
+						+ "-gram model for " + locale.toString() + " ********\n";
+				if (skipped != null) {
+					outputs[ind] += "+++++ Skipping " + (update ? "updating" : "generating") + " ngram model for "
+							+ locale.toString() + skipped;
+				}
+			}
+			if (skipped != null) {
+				return this;
+			}
 
-				NgramModel languageModel = new NgramModel(nGramSize);
-				try (BufferedReader br = new BufferedReader(new FileReader(fileWithText.toFile()))) {
-					String s;
-					while ((s = br.readLine()) != null) {
-						languageModel = this.getNgramModelForText(s, languageModel, false);
+			// source text is read once for all ngram sizes
+			int[] nGramSizes = new int[ngramSet.length];
+			for (int ind = 0; ind < ngramSet.length; ind++) {
+				nGramSizes[ind] = ngramSet[ind];
+			}
+			// counts over the bound are spilled into temporary directory
+			Path spillDir = maxCounts > 0 ? Files.createTempDirectory("ngramCounts") : null;
+			// new raw counts of each ngram size, they replace counts of the
+			// locale only when models of all sizes are written
+			Path[] newCounts = new Path[ngramSet.length];
+			try (final CorpusNgramCounter counter = new CorpusNgramCounter(nGramSizes, maxCounts,
+					spillDir != null ? spillDir.toFile() : null)) {
+				// words of each segment are counted on a thread of the reader
+				reader.read(fileWithText.toFile(), new CorpusReader.Handler<Map<String, long[]>>() {
+
+					public Map<String, long[]> process(CorpusReader.Segment segment) {
+						Map<String, long[]> wordCounts = new HashMap<>();
+						String s;
+						while ((s = segment.readLine()) != null) {
+							for (String word : LanguageUtil.tokenize(s, 1)) {
+								long[] count = wordCounts.get(word);
+								if (count == null) {
+									wordCounts.put(word, new long[] { 1 });
+								} else {
+									count[0]++;
+								}
+							}
+						}
+						return wordCounts;
+					}
+
+					public void collect(Map<String, long[]> wordCounts) throws IOException {
+						for (Map.Entry<String, long[]> entry : wordCounts.entrySet()) {
+							counter.addWord(entry.getKey(), entry.getValue()[0]);
+						}
 					}
-				}
 
-				// get the model
-				String ngramModel = languageModel.toString();
+				});
 
-				Path modelLocationDirFile = checkAndCreateDir(locationBase.resolve(NGRAM_MODEL_DIR));
+				for (int ind = 0; ind < ngramSet.length; ind++) {
+					String fileName = locale.toString() + "_" + ngramSet[ind];
+					newCounts[ind] = countsDir.resolve(fileName + ".tmp");
+					// get the model, raw counts of the text are added to counts
+					// of the model when it is updated
+					File countsFile = update ? countsDir.resolve(fileName).toFile() : null;
+					String ngramModel = counter.buildModel(ind, countsFile, newCounts[ind].toFile()).toString();
 
-				Path modelLocation = modelLocationDirFile.resolve(locale.toString() + "_" + nGramSize);
+					Path modelLocation = modelLocationDirFile.resolve(fileName);
 
-				try (BufferedWriter out = new BufferedWriter(new FileWriter(modelLocation.toFile()))) {
-					out.write(ngramModel);
+					try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+							modelLocation.toFile()), UTF8))) {
+						out.write(ngramModel);
+					}
+				}
+				numRuns = counter.getNumRuns();
+
+				// all sizes succeeded, so counts and source text are replaced
+				// together and failed update can be run again
+				for (int ind = 0; ind < ngramSet.length; ind++) {
+					Files.move(newCounts[ind], countsDir.resolve(locale.toString() + "_" + ngramSet[ind]),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+				if (update) {
+					// new text is now part of source text of the model
+					appendText(fileWithText, locationBase.resolve(SOURCE_DIR).resolve(locale.toString()));
+					Files.delete(fileWithText);
+				}
+			} finally {
+				for (Path newCountsFile : newCounts) {
+					if (newCountsFile != null) {
+						Files.deleteIfExists(newCountsFile);
+					}
+				}
+				if (spillDir != null) {
+					Files.deleteIfExists(spillDir);
 				}
 			}
+			millis = System.currentTimeMillis() - start;
+			return this;
+		}
+	}
+
+	/**
+	 * Compiles text models and vocabulary of their ngrams into binary model
+	 * bundle, see NgramModelBundle, and writes script profiles of languages from their unigram models, see
+	 * ScriptProfiles
+	 */
+	public String convertLanguageModels() throws IOException {
+		Locale[] locales = getModelLocales();
+		Map<Integer, Map<Locale, NgramModel>> models = readTextModelFiles();
+		Map<Integer, NgramIndex> indexes = new HashMap<>();
+		for (Map.Entry<Integer, Map<Locale, NgramModel>> entry : models.entrySet()) {
+			indexes.put(entry.getKey(), NgramIndex.build(entry.getKey(), locales, entry.getValue()));
 		}
+		// ngrams of all sizes are stored once with the indexes
+		NgramVocabulary vocabulary = NgramVocabulary.build(indexes, models);
+
+		// weights are stored in configured precision, doubles by default
+		indexes = quantize(indexes, WeightPrecision.getConfigured());
+
+		Path bundleLocation = locationBase.resolve(NgramModelBundle.BUNDLE_FILE);
+		NgramModelBundle.write(indexes, vocabulary, bundleLocation.toFile());
 
+		StringBuilder output = new StringBuilder(128);
+		output.append("\n\n******** Converted ngram models into ").append(bundleLocation).append(" ********\n");
+		for (NgramIndex index : indexes.values()) {
+			output.append(index.getNgramSize()).append("-gram: ").append(index.size()).append(" ngrams, ")
+					.append(index.getPrecision().getBits()).append(" bit weights\n");
+		}
+		output.append("vocabulary: ").append(vocabulary.size()).append(" ngrams in ")
+				.append(vocabulary.getSizeInBytes()).append(" bytes\n");
+
+		Path profilesLocation = locationBase.resolve(ScriptProfiles.PROFILES_FILE);
+		// converted models can have other locales than loaded ones
+		LocaleRegistry modelRegistry = new LocaleRegistry(locales);
+		ScriptProfiles scriptProfiles = buildScriptProfiles(modelRegistry);
+		scriptProfiles.write(profilesLocation.toFile());
+		output.append("\n******** Wrote script profiles into ").append(profilesLocation).append(" ********\n");
+		for (Locale locale : modelRegistry.getLocales()) {
+			output.append(locale).append(": ").append(scriptProfiles.getProfile(locale)).append("\n");
+		}
 		return output.toString();
 	}
 
 	public String generateTrainingAndTestData() throws IOException {
+		return generateTrainingAndTestData(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Splits source text of each locale into samples of random length, 90%
+	 * of them go to training set and the rest to test set. Source text is
+	 * read and tokenized on a pool of threads, see CorpusReader, samples are
+	 * drawn from its words in order, so sets are the same for any number of
+	 * threads.
+	 *
+	 * @param numThreads
+	 *            - number of segments of source text tokenized at once
+	 */
+	public String generateTrainingAndTestData(int numThreads) throws IOException {
 
 		StringBuilder output = new StringBuilder(512);
 
-		Path locationBase = basePath.toPath().resolve(BASE_MODEL_DIR);
-		for (Locale locale : LOCALES) {
+		try (CorpusReader reader = new CorpusReader(numThreads)) {
+			for (Locale locale : getSourceLocales()) {
+				generateTrainingAndTestData(locale, reader, output);
+			}
+		}
 
-			output.append("\n\n******** Creating training and test sets for ").append(locale.toString());
-			output.append(" (").append(minTrainingSampleLength).append("-");
-			output.append(maxTrainingSampleLength).append(") ********\n");
+		return output.toString();
+	}
 
-			Path fileWithText = locationBase.resolve(SOURCE_DIR).resolve(locale.toString());
-			if (!Files.exists(fileWithText)) {
-				output.append("+++++ Skipping generating training and test sets for ").append(locale.toString());
-				output.append(" since source file does not exist\n");
-				continue;
-			}
+	private void generateTrainingAndTestData(Locale locale, CorpusReader reader, StringBuilder output)
+			throws IOException {
+		output.append("\n\n******** Creating training and test sets for ").append(locale.toString());
+		output.append(" (").append(minTrainingSampleLength).append("-");
+		output.append(maxTrainingSampleLength).append(") ********\n");
 
-			List<String> trainingSet = new ArrayList<>();
-			List<String> testSet = new ArrayList<>();
-			try (BufferedReader br = new BufferedReader(new FileReader(fileWithText.toFile()))) {
+		Path fileWithText = locationBase.resolve(SOURCE_DIR).resolve(locale.toString());
+		if (!Files.exists(fileWithText)) {
+			output.append("+++++ Skipping generating training and test sets for ").append(locale.toString());
+			output.append(" since source file does not exist\n");
+			return;
+		}
 
-				String s;
-				StringBuilder sb = new StringBuilder(128);
-				int randomLength = generateRandomSampleLength();
-				while ((s = br.readLine()) != null) {
-					for (String word : LanguageUtil.tokenize(s, 1)) {
-						randomLength--;
-						if (randomLength < 0) {
-							// add 90% of examples to training set and 10% to
-							// test set
-							if (rnd.nextDouble() > .1) {
-								trainingSet.add(sb.toString().trim());
-							} else {
-								testSet.add(sb.toString().trim());
-							}
-							// new random length
-							randomLength = generateRandomSampleLength();
-							sb.delete(0, sb.length() - 1);
-						} else {
-							sb.append(word).append(" ");
-						}
-					}
-				}
+		SampleSplitter splitter = new SampleSplitter();
+		reader.read(fileWithText.toFile(), splitter);
+		splitter.testSet.add(splitter.sb.toString().trim());
+
+		// write test set and training set
+		Path trainingTestSetPath = checkAndCreateDir(locationBase.resolve(TRAINING_TEST_DIR));
 
-				testSet.add(sb.toString().trim());
+		try (BufferedWriter outForTraining = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				trainingTestSetPath.resolve(locale.toString() + "_training").toFile()), UTF8))) {
+			for (String training : splitter.trainingSet) {
+				outForTraining.write(training + "\n");
 			}
+		}
 
-			// write test set and training set
-			Path trainingTestSetPath = checkAndCreateDir(locationBase.resolve(TRAINING_TEST_DIR));
+		try (BufferedWriter outForTesting = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				trainingTestSetPath.resolve(locale.toString() + "_test").toFile()), UTF8))) {
+			for (String test : splitter.testSet) {
+				outForTesting.write(test + "\n");
+			}
+		}
+	}
 
-			try (BufferedWriter outForTraining = new BufferedWriter(new FileWriter(trainingTestSetPath.resolve(
-					locale.toString() + "_training").toFile()))) {
-				for (String training : trainingSet) {
-					outForTraining.write(training + "\n");
-				}
+	/**
+	 * Tokenizes segments of source text and splits their words into samples
+	 * in order of the text
+	 */
+	private class SampleSplitter implements CorpusReader.Handler<List<String>> {
+
+		private final List<String> trainingSet = new ArrayList<>();
+		private final List<String> testSet = new ArrayList<>();
+		private final StringBuilder sb = new StringBuilder(128);
+		private int randomLength = generateRandomSampleLength();
+
+		public List<String> process(CorpusReader.Segment segment) {
+			List<String> words = new ArrayList<>();
+			String s;
+			while ((s = segment.readLine()) != null) {
+				words.addAll(LanguageUtil.tokenize(s, 1));
 			}
+			return words;
+		}
 
-			try (BufferedWriter outForTesting = new BufferedWriter(new FileWriter(trainingTestSetPath.resolve(
-					locale.toString() + "_test").toFile()))) {
-				for (String test : testSet) {
-					outForTesting.write(test + "\n");
+		public void collect(List<String> words) {
+			for (String word : words) {
+				randomLength--;
+				if (randomLength < 0) {
+					// add 90% of examples to training set and 10% to
+					// test set
+					if (rnd.nextDouble() > .1) {
+						trainingSet.add(sb.toString().trim());
+					} else {
+						testSet.add(sb.toString().trim());
+					}
+					// new random length
+					randomLength = generateRandomSampleLength();
+					sb.delete(0, sb.length() - 1);
+				} else {
+					sb.append(word).append(" ");
 				}
 			}
 		}
-
-		return output.toString();
 	}
 
 	public String generateMultiLingualTestData() throws IOException {
 
 		StringBuilder output = new StringBuilder(512);
 
-		BufferedReader sourceFiles[] = new BufferedReader[LOCALES.length];
+		Locale[] locales = getLocaleRegistry().getLocales();
+		BufferedReader sourceFiles[] = new BufferedReader[locales.length];
 		// first open buffered reader into all files
-		for (int ind = 0; ind < LOCALES.length; ind++) {
+		for (int ind = 0; ind < locales.length; ind++) {
 
-			Locale locale = LOCALES[ind];
+			Locale locale = locales[ind];
 			Path fileWithText = locationBase.resolve(TRAINING_TEST_DIR).resolve(locale.toString() + "_test");
 
 			if (!Files.exists(fileWithText)) {
@@ -212,7 +494,7 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 				// get a line and write to test file
 				while (line == null) {
 					int random = rnd.nextInt(sourceFiles.length);
-					Locale locale = LOCALES[random];
+					Locale locale = locales[random];
 					BufferedReader br = sourceFiles[random];
 					line = br != null ? br.readLine() : null;
 					if (line != null) {
@@ -233,6 +515,33 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 		return output.toString();
 	}
 
+	/**
+	 * appends text of the file to the target file, on a new line
+	 */
+	private static void appendText(Path from, Path to) throws IOException {
+		checkAndCreateDir(to.getParent());
+		boolean newLine = false;
+		if (Files.exists(to) && Files.size(to) > 0) {
+			try (RandomAccessFile raf = new RandomAccessFile(to.toFile(), "r")) {
+				raf.seek(raf.length() - 1);
+				newLine = raf.read() != '\n';
+			}
+		}
+		try (OutputStream out = Files.newOutputStream(to, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if (newLine) {
+				out.write('\n');
+			}
+			Files.copy(from, out);
+		}
+	}
+
+	/**
+	 * @return locales that have source text in model directory
+	 */
+	private Locale[] getSourceLocales() {
+		return findLocales(locationBase.resolve(SOURCE_DIR).toFile(), SOURCE_FILE_PATTERN);
+	}
+
 	private int generateRandomSampleLength() {
 		return rnd.nextInt(maxTrainingSampleLength - minTrainingSampleLength) + minTrainingSampleLength;
 	}
@@ -241,11 +550,12 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 
 		StringBuilder output = new StringBuilder(512);
 
-		Map<Locale, Integer> localeErrorCount = new HashMap<>(LOCALES.length * 2);
-		Map<Locale, Integer> localeTotalCount = new HashMap<>(LOCALES.length * 2);
+		Locale[] locales = getLocaleRegistry().getLocales();
+		Map<Locale, Integer> localeErrorCount = new HashMap<>(locales.length * 2);
+		Map<Locale, Integer> localeTotalCount = new HashMap<>(locales.length * 2);
 		int totalCount = 0;
 		int totalErrorCount = 0;
-		for (Locale locale : LOCALES) {
+		for (Locale locale : locales) {
 
 			Path testSetPath = locationBase.resolve(TRAINING_TEST_DIR).resolve(locale.toString() + "_test");
 
@@ -296,6 +606,106 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 		return output.toString();
 	}
 
+	/**
+	 * Runs test set with linear weights using models of this detector and
+	 * the same models with weights in given precision, reports correct rates
+	 * of both, number of texts detected differently and largest difference
+	 * of language scores introduced by quantization
+	 */
+	public String runQuantizedTestSet(WeightPrecision precision) throws IOException {
+
+		StringBuilder output = new StringBuilder(512);
+
+		NgramLanguageDetector quantized = new NgramLanguageDetector(this, precision);
+
+		int totalCount = 0;
+		int totalErrorCount = 0;
+		int totalQuantizedErrorCount = 0;
+		int changedCount = 0;
+		double maxScoreError = 0;
+		double sumScoreError = 0;
+		for (Locale locale : getLocaleRegistry().getLocales()) {
+
+			Path testSetPath = locationBase.resolve(TRAINING_TEST_DIR).resolve(locale.toString() + "_test");
+
+			if (!Files.exists(testSetPath)) {
+				continue;
+			}
+
+			int count = 0;
+			int errorCount = 0;
+			int quantizedErrorCount = 0;
+			String s;
+
+			// need to read in UTF-8
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(
+					new FileInputStream(testSetPath.toFile()), UTF8));) {
+				while ((s = br.readLine()) != null) {
+					LocaleScores scores = getLinearWeightScores(s, true);
+					LocaleScores quantizedScores = quantized.getLinearWeightScores(s, true);
+
+					// error is measured without dropping low scores, a score
+					// that falls just below the cut would look like large error
+					LocaleScores allScores = getLinearWeightScores(s, false);
+					LocaleScores allQuantizedScores = quantized.getLinearWeightScores(s, false);
+					double scoreError = 0;
+					for (int id = 0; id < allScores.getRegistry().size(); id++) {
+						scoreError = Math.max(scoreError, Math.abs(allScores.get(id) - allQuantizedScores.get(id)));
+					}
+					maxScoreError = Math.max(maxScoreError, scoreError);
+					sumScoreError += scoreError;
+
+					Locale detectedLanguage = scores.getTopLocale();
+					Locale quantizedLanguage = quantizedScores.getTopLocale();
+					count++;
+					if (!locale.equals(detectedLanguage)) {
+						errorCount++;
+					}
+					if (!locale.equals(quantizedLanguage)) {
+						quantizedErrorCount++;
+					}
+					if (detectedLanguage == null ? quantizedLanguage != null : !detectedLanguage
+							.equals(quantizedLanguage)) {
+						changedCount++;
+					}
+				}
+			}
+
+			if (count > 0) {
+				totalCount += count;
+				totalErrorCount += errorCount;
+				totalQuantizedErrorCount += quantizedErrorCount;
+				output.append("Correct rate for ").append(locale.toString()).append(": ")
+						.append(decimalFormat.format(((double) (count - errorCount)) / count)).append(", ")
+						.append(precision.getBits()).append(" bit: ")
+						.append(decimalFormat.format(((double) (count - quantizedErrorCount)) / count))
+						.append(" (").append(count).append(")\n");
+			}
+		}
+
+		if (totalCount > 0) {
+			output.append("Total rate:")
+					.append(decimalFormat.format(((double) (totalCount - totalErrorCount)) / totalCount))
+					.append(", ").append(precision.getBits()).append(" bit: ")
+					.append(decimalFormat.format(((double) (totalCount - totalQuantizedErrorCount)) / totalCount))
+					.append(", total test set size:").append(totalCount).append("\n");
+			output.append("Changed detections: ").append(changedCount).append(", max score error: ")
+					.append(String.format(Locale.ROOT, "%.3g", maxScoreError)).append(", mean score error: ")
+					.append(String.format(Locale.ROOT, "%.3g", sumScoreError / totalCount)).append("\n");
+		}
+
+		long weightsSize = 0;
+		long quantizedWeightsSize = 0;
+		for (int nGramSize : ngramSet) {
+			weightsSize += getNgramIndex(nGramSize).getWeightsSize();
+			quantizedWeightsSize += quantized.getNgramIndex(nGramSize).getWeightsSize();
+		}
+		output.append("Weights size: ").append(weightsSize).append(" bytes, ").append(precision.getBits())
+				.append(" bit: ").append(quantizedWeightsSize).append(" bytes\n");
+
+		return output.toString();
+	}
+
 	public String runMultiLingualTestSet(ClassificationAlgorithm algorithmToUse,
 			BoundaryDetectionAlgorithm boundaryDetector) throws IOException {
 
@@ -308,8 +718,9 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 			return output.toString();
 		}
 
-		Map<Locale, Integer> localeErrorCount = new HashMap<>(LOCALES.length * 2);
-		Map<Locale, Integer> localeTotalCount = new HashMap<>(LOCALES.length * 2);
+		Locale[] locales = getLocaleRegistry().getLocales();
+		Map<Locale, Integer> localeErrorCount = new HashMap<>(locales.length * 2);
+		Map<Locale, Integer> localeTotalCount = new HashMap<>(locales.length * 2);
 
 		Map<String, Locale> allLanguageStrings = new HashMap<>();
 
@@ -325,7 +736,7 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 				String parts[] = s.split(MULTI_LING_SEPARATOR);
 				assert (parts.length == 2);
 				String testString = parts[0].trim();
-				Locale locale = LOCALE_MAP.get(parts[1]);
+				Locale locale = toLocale(parts[1]);
 				incrementLocaleCounts(locale, localeTotalCount);
 
 				if (prevLocale == null || locale.equals(prevLocale)) {
@@ -360,7 +771,7 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 
 		int totalCount = 0;
 		int totalErrorCount = 0;
-		for (Locale locale : LOCALES) {
+		for (Locale locale : locales) {
 
 			if (localeTotalCount.get(locale) != null && localeTotalCount.get(locale) > 0) {
 				totalCount += localeTotalCount.get(locale);
@@ -386,39 +797,8 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 		}
 
 		// now use boundary detection to determine samples
-		LanguageBoundaryDetector detector = null;
-		switch (boundaryDetector) {
-		case ONE_WORD:
-			detector = new OneWordBoundaryDetector(algorithmToUse, this);
-			break;
-		case TWO_WORD:
-			detector = new TwoWordBoundaryDetector(algorithmToUse, this);
-			break;
-		case THREE_WORD:
-			detector = new ThreeWordBoundaryDetector(algorithmToUse, this);
-			break;
-		case BASE_BIGRAM:
-			detector = new BigramBoundaryDetector(algorithmToUse, this);
-			break;
-		case TWO_WORD_BIGRAM:
-			detector = new SlidingWindowBigramBoundaryDetector(algorithmToUse, this, 2);
-			break;
-		case THREE_WORD_BIGRAM:
-			detector = new SlidingWindowBigramBoundaryDetector(algorithmToUse, this, 3);
-			break;
-		case FOUR_WORD_BIGRAM:
-			detector = new SlidingWindowBigramBoundaryDetector(algorithmToUse, this, 4);
-			break;
-		case FIVE_WORD_BIGRAM:
-			detector = new SlidingWindowBigramBoundaryDetector(algorithmToUse, this, 5);
-			break;
-		case SIX_WORD_BIGRAM:
-			detector = new SlidingWindowBigramBoundaryDetector(algorithmToUse, this, 6);
-			break;
-		case FIVE_WORD_NESTED:
-			detector = new NestedSlidingWindowBigramBoundaryDetector(algorithmToUse, this, 5);
-			break;
-		}
+		LanguageBoundaryDetector detector = LanguageDetectorRegistry.createBoundaryDetector(boundaryDetector,
+				algorithmToUse, this);
 		List<Pair<String, Locale>> languageTags = detector.tagStringWithLanguages(entireDocument.toString());
 
 		int incorrectlyClassified = 0;
@@ -494,7 +874,7 @@ public class NgramLanguageDetectorWithUtils extends NgramLanguageDetector {
 		}
 	}
 
-	private Path checkAndCreateDir(Path dir) throws IOException {
+	private static Path checkAndCreateDir(Path dir) throws IOException {
 		if (!Files.exists(dir)) {
 			Files.createDirectories(dir);
 		}
@@ -13,6 +13,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import language.model.NgramLanguageDetectorWithUtils;
+import language.model.WeightPrecision;
 import language.model.NgramLanguageDetector.BoundaryDetectionAlgorithm;
 import language.model.NgramLanguageDetector.ClassificationAlgorithm;
 import language.model.multiling.LanguageBoundaryDetector;
@@ -29,9 +30,12 @@ public class LanguageDetectorTester {
 
 	private static final String VERBOSE_PARAM = "-verbose";
 	private static final String GEN_MODELS_PARAM = "-genModels";
+	private static final String UPDATE_MODELS_PARAM = "-updateModels";
+	private static final String CONVERT_MODELS_PARAM = "-convertModels";
 	private static final String GEN_TRAIN_TEST_SET_PARAM = "-genTrainTest";
 	private static final String GEN_MULTI_LING_TEST_SET_PARAM = "-genMultiLingSet";
 	private static final String RUN_TEST_SET_PARAM = "-runTestSet";
+	private static final String WEIGHT_BITS_PARAM = "-weightBits";
 	private static final String RUN_MULTI_LING_TEST_SET_PARAM = "-runMultiTestSet";
 	private static final String BOUNDARY_DETECTOR = "-boundaryDetector";
 	private static final String CLASSIFIER_SELECTION_PARAM = "-useClassifier";
@@ -41,6 +45,8 @@ public class LanguageDetectorTester {
 
 	private static final String MIN_TRAIN_PARAM = "-minTrainSize";
 	private static final String MAX_TRAIN_PARAM = "-maxTrainSize";
+	private static final String THREADS_PARAM = "-threads";
+	private static final String MAX_COUNTS_PARAM = "-maxCounts";
 
 	private static DecimalFormat decimalFormat;
 	private static final int scale = 3;
@@ -57,6 +63,8 @@ public class LanguageDetectorTester {
 
 		boolean verbose = argValues.containsKey(VERBOSE_PARAM);
 		boolean genModels = argValues.containsKey(GEN_MODELS_PARAM);
+		boolean updateModels = argValues.containsKey(UPDATE_MODELS_PARAM);
+		boolean convertModels = argValues.containsKey(CONVERT_MODELS_PARAM);
 		boolean genTrainingAndTestSet = argValues.containsKey(GEN_TRAIN_TEST_SET_PARAM);
 		boolean genMultiLingualSet = argValues.containsKey(GEN_MULTI_LING_TEST_SET_PARAM);
 		boolean runTestSet = argValues.containsKey(RUN_TEST_SET_PARAM);
@@ -76,12 +84,29 @@ public class LanguageDetectorTester {
 				.get(MIN_TRAIN_PARAM)) : 4;
 		int maxTrainingSampleSize = argValues.containsKey(MAX_TRAIN_PARAM) ? Integer.valueOf(argValues
 				.get(MAX_TRAIN_PARAM)) : 8;
+		// models generated at once, one per available processor by default
+		int numThreads = argValues.containsKey(THREADS_PARAM) ? Integer.valueOf(argValues.get(THREADS_PARAM))
+				: Runtime.getRuntime().availableProcessors();
+		// distinct words or ngrams counted in memory by each of them before
+		// counts are spilled to disk, 0 keeps all of them in memory
+		int maxCounts = argValues.containsKey(MAX_COUNTS_PARAM) ? Integer.valueOf(argValues.get(MAX_COUNTS_PARAM))
+				: 0;
 		// 1 - only linear classifier
 		// 2 - bagged decision tree
 		// 4 - logisitic classifier
 		// for example 7 selects all of them
 		int classifierSelection = argValues.containsKey(CLASSIFIER_SELECTION_PARAM) ? Integer.valueOf(argValues
 				.get(CLASSIFIER_SELECTION_PARAM)) : 1;
+		// 16 or 8 - also run linear weights with quantized models
+		WeightPrecision quantizedPrecision = null;
+		if (argValues.get(WEIGHT_BITS_PARAM) != null) {
+			try {
+				quantizedPrecision = WeightPrecision.forBits(Integer.valueOf(argValues.get(WEIGHT_BITS_PARAM)));
+			} catch (Exception e) {
+				System.out.println("Error parsing WeightPrecision from -weightBits param");
+				System.exit(1);
+			}
+		}
 
 		String basePath = argValues.get(DATA_PATH_PARAM);
 		if (basePath == null) {
@@ -135,13 +160,25 @@ public class LanguageDetectorTester {
 
 		// generate models from source text
 		if (genModels) {
-			String output = detector.generateLanguageModels();
+			String output = detector.generateLanguageModels(numThreads, maxCounts);
+			printIfVerbose(verbose, output);
+		}
+
+		// update models with new text
+		if (updateModels) {
+			String output = detector.updateLanguageModels(numThreads, maxCounts);
+			printIfVerbose(verbose, output);
+		}
+
+		// compile text models into binary bundle
+		if (convertModels) {
+			String output = detector.convertLanguageModels();
 			printIfVerbose(verbose, output);
 		}
 
 		// generate training and test data
 		if (genTrainingAndTestSet) {
-			String output = detector.generateTrainingAndTestData();
+			String output = detector.generateTrainingAndTestData(numThreads);
 			printIfVerbose(verbose, output);
 		}
 
@@ -197,6 +234,12 @@ public class LanguageDetectorTester {
 				output = detector.runTestSet(ClassificationAlgorithm.LINEAR_WEIGHTS);
 				printIfVerbose(verbose, output);
 			}
+
+			if (quantizedPrecision != null) {
+				System.out.println("---------- Quantized linear weight results----------\n");
+				output = detector.runQuantizedTestSet(quantizedPrecision);
+				printIfVerbose(verbose, output);
+			}
 		}
 
 		// detect the most likely language for given string
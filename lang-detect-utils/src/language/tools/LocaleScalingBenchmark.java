@@ -0,0 +1,200 @@
+package language.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import language.model.NgramLanguageDetector;
+import language.model.NgramModel;
+
+/**
+ * Measures how detection latency grows with number of languages. Synthetic
+ * languages are derived from bundled text models the way related languages
+ * share vocabulary: they keep most ngrams of their source language with
+ * perturbed weights, so ngrams of test texts hit rows of synthetic languages
+ * as often as rows of bundled ones. Models of each size of the benchmark are
+ * written into a temporary model directory and detector finds its locales
+ * there, then test sets of bundled languages are detected. Synthetic
+ * languages are as close to their source as dialects, so besides the rate
+ * of correct languages the rate of texts detected as their language or one
+ * derived from it is reported.
+ *
+ * Usage: LocaleScalingBenchmark -dataPath ../lang-detect/war/ [-locales
+ * 6,25,50,100] [-texts 3000]
+ *
+ * @author Andrey Gusev
+ */
+public class LocaleScalingBenchmark {
+
+	private static final String DATA_PATH_PARAM = "-dataPath";
+	private static final String LOCALES_PARAM = "-locales";
+	private static final String TEXTS_PARAM = "-texts";
+
+	private static final int[] NGRAM_SIZES = new int[] { 1, 2, 3, 4, 5, 6 };
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 5;
+	// names of synthetic locales are prefix and their number
+	private static final String SYNTHETIC_PREFIX = "x";
+	// one in this many ngrams of source language is dropped
+	private static final int SKIPPED_NGRAMS = 5;
+
+	public static void main(String[] args) throws IOException {
+		String dataPath = null;
+		String locales = "6,25,50,100";
+		int numTexts = 3000;
+		for (int ind = 0; ind + 1 < args.length; ind += 2) {
+			if (DATA_PATH_PARAM.equals(args[ind])) {
+				dataPath = args[ind + 1];
+			} else if (LOCALES_PARAM.equals(args[ind])) {
+				locales = args[ind + 1];
+			} else if (TEXTS_PARAM.equals(args[ind])) {
+				numTexts = Integer.parseInt(args[ind + 1]);
+			}
+		}
+		if (dataPath == null) {
+			System.out.println("Usage: LocaleScalingBenchmark " + DATA_PATH_PARAM + " path [" + LOCALES_PARAM
+					+ " 6,25,50,100] [" + TEXTS_PARAM + " 3000]");
+			return;
+		}
+
+		File modelBase = new File(dataPath, NgramLanguageDetector.BASE_MODEL_DIR);
+		Locale[] sourceLocales = NgramLanguageDetector.getLocales();
+		List<String> texts = new ArrayList<>();
+		List<Locale> textLocales = new ArrayList<>();
+		for (Locale locale : sourceLocales) {
+			List<String> lines = readLines(new File(modelBase, NgramLanguageDetector.TRAINING_TEST_DIR
+					+ File.separator + locale + "_test"), numTexts / sourceLocales.length);
+			texts.addAll(lines);
+			textLocales.addAll(Collections.nCopies(lines.size(), locale));
+		}
+
+		System.out.println("locales\tus/text\tvs first\tcorrect rate\tsource rate");
+		double firstLatency = 0;
+		for (String value : locales.split(",")) {
+			int numLocales = Integer.parseInt(value.trim());
+			Path benchmarkBase = Files.createTempDirectory("localeScaling");
+			try {
+				writeModels(modelBase, benchmarkBase.toFile(), numLocales);
+				NgramLanguageDetector detector = new NgramLanguageDetector(benchmarkBase.toFile());
+
+				double latency = 0;
+				int numCorrect = 0;
+				int numSource = 0;
+				for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+					numCorrect = 0;
+					numSource = 0;
+					long start = System.nanoTime();
+					for (int ind = 0; ind < texts.size(); ind++) {
+						Locale locale = detector.getLanguageWithLinerWeights(texts.get(ind));
+						if (textLocales.get(ind).equals(locale)) {
+							numCorrect++;
+						}
+						if (textLocales.get(ind).equals(getSource(locale))) {
+							numSource++;
+						}
+					}
+					if (round >= WARMUP_ROUNDS) {
+						latency += (System.nanoTime() - start) / 1000.0 / texts.size() / ROUNDS;
+					}
+				}
+				if (firstLatency == 0) {
+					firstLatency = latency;
+				}
+				System.out.println(String.format("%d\t%.1f\t%.2fx\t%.3f\t%.3f", detector.getLocaleRegistry().size(),
+						latency, latency / firstLatency, (double) numCorrect / texts.size(), (double) numSource
+								/ texts.size()));
+			} finally {
+				delete(benchmarkBase.toFile());
+			}
+		}
+	}
+
+	/**
+	 * writes text models of bundled languages and synthetic languages
+	 * derived from them, numLocales in total
+	 */
+	private static void writeModels(File sourceBase, File benchmarkBase, int numLocales) throws IOException {
+		Locale[] sourceLocales = NgramLanguageDetector.getLocales();
+		File modelDir = new File(benchmarkBase, NgramLanguageDetector.BASE_MODEL_DIR + File.separator
+				+ NgramLanguageDetector.NGRAM_MODEL_DIR);
+		if (!modelDir.mkdirs()) {
+			throw new IOException("Failed to create " + modelDir);
+		}
+
+		Random rnd = new Random(numLocales);
+		for (int nGramSize : NGRAM_SIZES) {
+			for (int ind = 0; ind < numLocales; ind++) {
+				Locale source = sourceLocales[ind % sourceLocales.length];
+				boolean synthetic = ind >= sourceLocales.length;
+				String locale = synthetic ? SYNTHETIC_PREFIX + ind : source.toString();
+
+				File sourceFile = new File(sourceBase, NgramLanguageDetector.NGRAM_MODEL_DIR + File.separator
+						+ source + "_" + nGramSize);
+				try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(
+						modelDir, locale + "_" + nGramSize)), NgramLanguageDetector.UTF8))) {
+					for (String line : readLines(sourceFile, Integer.MAX_VALUE)) {
+						if (synthetic) {
+							// some ngrams are not in the synthetic language,
+							// weights of others are up to half lower or higher
+							if (rnd.nextInt(SKIPPED_NGRAMS) == 0) {
+								continue;
+							}
+							String[] parts = line.split(NgramModel.NGRAM_SEPARTOR);
+							double weight = Double.parseDouble(parts[1]) * (0.5 + rnd.nextDouble());
+							line = parts[0] + NgramModel.NGRAM_SEPARTOR + weight;
+						}
+						out.write(line);
+						out.write('\n');
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return bundled locale the locale is derived from, the locale itself
+	 *         if it is not synthetic
+	 */
+	private static Locale getSource(Locale locale) {
+		if (locale == null || !locale.getLanguage().startsWith(SYNTHETIC_PREFIX)) {
+			return locale;
+		}
+		Locale[] sourceLocales = NgramLanguageDetector.getLocales();
+		int ind = Integer.parseInt(locale.getLanguage().substring(SYNTHETIC_PREFIX.length()));
+		return sourceLocales[ind % sourceLocales.length];
+	}
+
+	private static List<String> readLines(File file, int maxLines) throws IOException {
+		List<String> retVal = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+				NgramLanguageDetector.UTF8))) {
+			String s;
+			while (retVal.size() < maxLines && (s = br.readLine()) != null) {
+				retVal.add(s);
+			}
+		}
+		return retVal;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
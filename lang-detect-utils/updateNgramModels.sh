@@ -0,0 +1,11 @@
+#!/bin/bash
+
+DATA_PATH=../lang-detect/war/
+
+java -server -Xmx2G -cp bin:../lang-detect/war/WEB-INF/classes \
+  language.tools.LanguageDetectorTester \
+  -dataPath $DATA_PATH \
+  -updateModels \
+  -threads ${1:-$(nproc)} \
+  -maxCounts ${2:-0} \
+  -verbose
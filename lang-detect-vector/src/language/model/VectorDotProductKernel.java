@@ -0,0 +1,48 @@
+package language.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Dot product kernel that uses SIMD lanes of jdk.incubator.vector, lanes
+ * go over ngrams of the text and weights of each locale are gathered by rows
+ * of the ngrams. Needs java 17 and --add-modules jdk.incubator.vector, loaded
+ * by DotProductKernel when available.
+ *
+ * @author Andrey Gusev
+ */
+public final class VectorDotProductKernel extends DotProductKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void addDotProducts(double[][] columns, int[] rows, double[] values, int count, double[] retVal) {
+		int length = SPECIES.length();
+		int bound = SPECIES.loopBound(count);
+		for (int col = 0; col < columns.length; col++) {
+			double[] column = columns[col];
+			if (column == null) {
+				continue;
+			}
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int ind = 0;
+			for (; ind < bound; ind += length) {
+				DoubleVector weights = DoubleVector.fromArray(SPECIES, column, 0, rows, ind);
+				// multiply and add instead of fma, which is slow where cpu
+				// doesn't have it
+				sums = sums.add(weights.mul(DoubleVector.fromArray(SPECIES, values, ind)));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for (; ind < count; ind++) {
+				sum += column[rows[ind]] * values[ind];
+			}
+			retVal[col] += sum;
+		}
+	}
+
+	@Override
+	public boolean isVectorized() {
+		return true;
+	}
+}
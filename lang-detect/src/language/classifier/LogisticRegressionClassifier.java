@@ -3,7 +3,7 @@ package language.classifier;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -12,13 +12,13 @@ import java.util.logging.Logger;
  * 
  * @author Andrey Gusev
  */
-public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double, K>> implements
+public class LogisticRegressionClassifier<K, Z extends VectorClassifierExample<K>> implements
 		Classifier<Double, K, Z> {
 
 	private static final Logger log = Logger.getLogger(LogisticRegressionClassifier.class.getName());
 
 	private final int numFeatures;
-	private final List<Double> featureWeights;
+	private final double[] featureWeights;
 	private final K positiveLabel;
 
 	private static int MAX_ITER = 20;
@@ -30,7 +30,7 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 
 	public LogisticRegressionClassifier(int numFeatures, K positiveLabel) {
 		this.numFeatures = numFeatures;
-		this.featureWeights = new ArrayList<>(this.numFeatures);
+		this.featureWeights = new double[this.numFeatures];
 		this.positiveLabel = positiveLabel;
 	}
 
@@ -39,16 +39,14 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 	}
 
 	public double getConfidenceLevel(Z example) {
-		double sum = getSumGivenWeights(example.getFeatureValues(positiveLabel));
+		double sum = getSumGivenWeights(example.getFeatureVector(positiveLabel));
 		double logisticValue = getLogisticValue(sum);
 		return logisticValue;
 	}
 
 	public void train(List<Z> trainingData) {
-		for (int ind = 0; ind < numFeatures; ind++) {
-			// set all to one
-			this.featureWeights.add(1.0d);
-		}
+		// set all to one
+		Arrays.fill(this.featureWeights, 1.0d);
 
 		int iteration = 0, numMistakes = 0, falsePositives = 0, falseNegatives = 0;
 		double sumOfUdpates = 0;
@@ -79,12 +77,12 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 						}
 					}
 					if (Math.abs(errorMult) > 0.000001) {
-						sumOfErrors += errorMult * trainingExample.getFeatureValues(this.positiveLabel).get(ind);
+						sumOfErrors += errorMult * trainingExample.getFeatureVector(this.positiveLabel)[ind];
 					}
 				}
 
 				sumOfUdpates += Math.abs(sumOfErrors);
-				this.featureWeights.set(ind, this.featureWeights.get(ind) + LEARNING_RATE * sumOfErrors);
+				this.featureWeights[ind] += LEARNING_RATE * sumOfErrors;
 			}
 
 			// additional classifier output
@@ -109,7 +107,7 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 
 		output.writeInt(numFeatures);
 		for (int ind = 0; ind < numFeatures; ind++) {
-			output.writeDouble(featureWeights.get(ind));
+			output.writeDouble(featureWeights[ind]);
 		}
 	}
 
@@ -121,7 +119,7 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 			return false;
 		}
 		for (int ind = 0; ind < numFeatures; ind++) {
-			this.featureWeights.add(input.readDouble());
+			this.featureWeights[ind] = input.readDouble();
 		}
 
 		return true;
@@ -131,11 +129,11 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 		return 1.0 / (1.0 + Math.exp(-1.0 * sumValue));
 	}
 
-	private double getSumGivenWeights(List<Double> features) {
+	private double getSumGivenWeights(double[] features) {
 
 		double sum = 0;
 		for (int ind = 0; ind < this.numFeatures; ind++) {
-			sum += features.get(ind) * this.featureWeights.get(ind);
+			sum += features[ind] * this.featureWeights[ind];
 		}
 
 		return sum;
@@ -152,7 +150,7 @@ public class LogisticRegressionClassifier<K, Z extends ClassifierExample<Double,
 
 	private String getWeightsAsString() {
 		StringBuilder sb = new StringBuilder(512);
-		for (Double weight : this.featureWeights) {
+		for (double weight : this.featureWeights) {
 			sb.append(weight).append(WEIGHT_DELIMETER);
 		}
 
@@ -0,0 +1,19 @@
+package language.classifier;
+
+/**
+ * 
+ * Interface for example whose feature values are numbers, values are
+ * available as primitive array without boxing
+ * 
+ * @author Andrey Gusev
+ */
+public interface VectorClassifierExample<K> extends ClassifierExample<Double, K> {
+
+	/**
+	 * 
+	 * @return values for positive label for all features, same as
+	 *         getFeatureValues, array must not be modified
+	 */
+	double[] getFeatureVector(K positiveLabel);
+
+}
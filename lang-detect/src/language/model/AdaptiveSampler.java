@@ -0,0 +1,141 @@
+package language.model;
+
+import java.util.Locale;
+
+import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
+import language.util.ScriptHistogram;
+
+/**
+ * Detects language of long text from evenly spaced windows of the text
+ * instead of all of it. Windows are added in rounds, every round doubles
+ * number of windows by putting new ones half way between existing ones, so
+ * sample stays spread over the whole text. After each round ngrams of all
+ * windows so far are scored with linear weights, sampling stops once the
+ * same language leads two rounds in a row by at least minMargin of the
+ * score. Cost depends on how clear the language is rather than on length of
+ * the text.
+ *
+ * Texts up to MIN_SAMPLED_LENGTH and texts where windows would cover most of
+ * the text are examined whole, in which case result is the same as
+ * NgramLanguageDetector.getLanguageWithLinerWeights.
+ *
+ * Sampler keeps state of one text so it is not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+class AdaptiveSampler {
+
+	static final int MIN_SAMPLED_LENGTH = 4096;
+	static final double DEFAULT_MIN_MARGIN = 0.1;
+
+	private static final int WINDOW_LENGTH = 256;
+	// rounds that are done before ranking is checked first, gives 7 windows
+	private static final int FIRST_CHECKED_ROUND = 2;
+
+	private final NgramLanguageDetector detector;
+	private final int[] ngramSizes;
+	private final double minMargin;
+
+	private final NgramExtractor extractor;
+	private final LongDoubleHashMap[] textVectors;
+	// letters of examined text by script, see ScriptProfiles
+	private final ScriptHistogram histogram = new ScriptHistogram();
+
+	AdaptiveSampler(NgramLanguageDetector detector, int[] ngramSizes, double minMargin) {
+		this.detector = detector;
+		this.ngramSizes = ngramSizes;
+		this.minMargin = minMargin;
+		this.extractor = new NgramExtractor(ngramSizes, true);
+		this.textVectors = new LongDoubleHashMap[ngramSizes.length];
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			textVectors[ind] = new LongDoubleHashMap();
+		}
+	}
+
+	DetectionResult detect(CharSequence text) {
+		// same as String.trim without copying the text
+		int start = 0;
+		int end = text.length();
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		while (start < end && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		int length = end - start;
+
+		Locale previousLeader = null;
+		int examined = 0;
+		for (int round = 0; length > MIN_SAMPLED_LENGTH; round++) {
+			int numWindows = 1 << round;
+			// windows of this round would cover the text
+			if ((long) numWindows * 2 * WINDOW_LENGTH > length) {
+				break;
+			}
+
+			// new windows are centered at (2i + 1) / 2^(round + 1) of the text
+			for (int window = 0; window < numWindows; window++) {
+				int center = start + (int) ((2L * window + 1) * length / (2L * numWindows));
+				examined += extractWindow(text, start, end, center - WINDOW_LENGTH / 2, center + WINDOW_LENGTH / 2);
+			}
+			if (round < FIRST_CHECKED_ROUND) {
+				continue;
+			}
+
+			LocaleScores scores = getScores(examined);
+			int[] ranked = scores.getRankedIds();
+			if (ranked.length == 0) {
+				continue;
+			}
+			Locale leader = scores.getRegistry().getLocale(ranked[0]);
+			double margin = scores.get(ranked[0]) - (ranked.length > 1 ? scores.get(ranked[1]) : 0);
+			if (leader.equals(previousLeader) && margin >= minMargin) {
+				return new DetectionResult(leader, false, (double) examined / length);
+			}
+			previousLeader = leader;
+		}
+
+		// examine the whole text
+		for (LongDoubleHashMap textVector : textVectors) {
+			textVector.clear();
+		}
+		extractor.extract(text, start, end, textVectors);
+		histogram.clear();
+		histogram.add(text, start, end);
+		return new DetectionResult(getScores(length).getTopLocale(), false, 1.0);
+	}
+
+	/**
+	 * extracts ngrams of words that are fully inside the window
+	 *
+	 * @return number of characters examined
+	 */
+	private int extractWindow(CharSequence text, int textStart, int textEnd, int windowStart, int windowEnd) {
+		windowStart = Math.max(textStart, windowStart);
+		windowEnd = Math.min(textEnd, windowEnd);
+		// cut partial words at both ends of the window
+		if (windowStart > textStart) {
+			while (windowStart < windowEnd && !LanguageUtil.isDelimiter(text.charAt(windowStart - 1))) {
+				windowStart++;
+			}
+		}
+		if (windowEnd < textEnd) {
+			while (windowEnd > windowStart && !LanguageUtil.isDelimiter(text.charAt(windowEnd))) {
+				windowEnd--;
+			}
+		}
+		if (windowStart >= windowEnd) {
+			return 0;
+		}
+		extractor.extract(text, windowStart, windowEnd, textVectors);
+		histogram.add(text, windowStart, windowEnd);
+		return windowEnd - windowStart;
+	}
+
+	private LocaleScores getScores(int textLength) {
+		return detector.combineWithLinearWeights(
+				detector.getRawCosineSimilarities(textVectors, textLength, ngramSizes, true,
+						detector.getCandidates(histogram)), true);
+	}
+}
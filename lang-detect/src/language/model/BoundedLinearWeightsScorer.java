@@ -0,0 +1,304 @@
+package language.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import language.util.LongDoubleHashMap;
+
+/**
+ * Linear weights scoring that stops as soon as the leading language can not
+ * be overtaken anymore.
+ *
+ * In linear weights combination every ngram size contributes at most
+ * 1/numOfModels to the score of the language, see
+ * NgramLanguageDetector.combineWithLinearWeights. Ngram sizes are scored one
+ * after another and ngrams of the text are scored from the largest values
+ * down. At checkpoints similarity of every language is bounded: lower bound
+ * is dot product so far, upper bound adds what remaining ngrams could still
+ * give, which is at most min(sum of remaining values * largest model weight,
+ * length of remaining values * length of model weights). Length of weights
+ * is taken as they are stored in the index, so the bound also holds for
+ * quantized weights (see NgramIndex.getWeightNorm). Bounds of similarities
+ * give bounds of contributions and sizes that were not scored yet can give
+ * anything between 0 and 1/numOfModels.
+ * Once lower bound of the leader is above upper bounds of all others scoring
+ * stops.
+ *
+ * Leader is the same language that full scoring would return, up to rounding
+ * of exactly tied scores. Scorer keeps state of one text so it is not thread
+ * safe.
+ *
+ * @author Andrey Gusev
+ */
+class BoundedLinearWeightsScorer {
+
+	// bounds are checked after 16, 32, 64... ngrams of each size
+	private static final int FIRST_CHECKPOINT = 16;
+	// slack for rounding differences with full scoring
+	private static final double EPSILON = 1e-9;
+
+	private final NgramIndex[] indexes;
+	private final int[] ngramSizes;
+	private final int numOrders;
+	private final int numLocales;
+	private final LocaleRegistry localeRegistry;
+
+	// bounds of weighted cosine similarity of each ngram size and locale
+	private final double[][] lower;
+	private final double[][] upper;
+	private final boolean[][] hasModel;
+	private final boolean[] hasAnyModel;
+
+	/**
+	 * @param indexes
+	 *            - index for each ngram size, null if there is no index
+	 * @param localeRegistry
+	 *            - registry whose ids are columns of indexes
+	 * @param candidates
+	 *            - locale ids that can be language of the text, see
+	 *            ScriptProfiles, null if all of them can
+	 */
+	BoundedLinearWeightsScorer(int[] ngramSizes, NgramIndex[] indexes, LocaleRegistry localeRegistry,
+			boolean[] candidates) {
+		this.ngramSizes = ngramSizes;
+		this.indexes = indexes;
+		this.numOrders = ngramSizes.length;
+		this.localeRegistry = localeRegistry;
+		this.numLocales = localeRegistry.size();
+
+		this.lower = new double[numOrders][numLocales];
+		this.upper = new double[numOrders][numLocales];
+		this.hasModel = new boolean[numOrders][numLocales];
+		this.hasAnyModel = new boolean[numLocales];
+		for (int order = 0; order < numOrders; order++) {
+			for (int col = 0; col < numLocales; col++) {
+				// locales that are not candidates are scored as if they had
+				// no model
+				hasModel[order][col] = indexes[order] != null && indexes[order].hasModel(col)
+						&& (candidates == null || candidates[col]);
+				hasAnyModel[col] |= hasModel[order][col];
+				// anything is possible before ngram size is scored
+				upper[order][col] = Double.POSITIVE_INFINITY;
+			}
+		}
+	}
+
+	/**
+	 * scores text vectors until leading language is known
+	 *
+	 * @param textVectors
+	 *            - text vector for each ngram size, see NgramExtractor
+	 * @param textLength
+	 *            - length of trimmed text
+	 * @return leading language if scoring stopped early, null if all ngrams
+	 *         were scored, in which case similarities are exact
+	 */
+	Locale score(LongDoubleHashMap[] textVectors, int textLength) {
+		// all sizes weigh the same, so ones with fewer ngrams go first and
+		// scoring most likely stops within the largest ones
+		Integer[] orders = new Integer[numOrders];
+		for (int order = 0; order < numOrders; order++) {
+			orders[order] = order;
+		}
+		final LongDoubleHashMap[] vectors = textVectors;
+		Arrays.sort(orders, new Comparator<Integer>() {
+
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(vectors[a].size(), vectors[b].size());
+			}
+
+		});
+
+		for (int ind = 0; ind < numOrders; ind++) {
+			int order = orders[ind];
+			boolean lastOrder = ind == numOrders - 1;
+			Locale leader = scoreOrder(order, textVectors[order], textLength, lastOrder);
+			if (leader != null) {
+				return leader;
+			}
+		}
+		return null;
+	}
+
+	private Locale scoreOrder(int order, LongDoubleHashMap textVector, int textLength, boolean lastOrder) {
+		NgramIndex index = indexes[order];
+		int nGramSize = ngramSizes[order];
+
+		if (textLength < nGramSize || index == null || textVector.isEmpty()) {
+			for (int col = 0; col < numLocales; col++) {
+				lower[order][col] = 0;
+				upper[order][col] = 0;
+			}
+			return lastOrder ? null : getLeader();
+		}
+
+		// ngrams of the text in descending order of value
+		int size = textVector.size();
+		double[] values = new double[size];
+		long[] keys = new long[size];
+		double remainingSum = 0;
+		double remainingSquares = 0;
+		int ind = 0;
+		for (int slot = 0; slot < textVector.slots(); slot++) {
+			if (textVector.isSlotUsed(slot)) {
+				values[ind] = textVector.valueAt(slot);
+				keys[ind] = textVector.keyAt(slot);
+				remainingSum += values[ind];
+				remainingSquares += values[ind] * values[ind];
+				ind++;
+			}
+		}
+		sortDescending(values, keys, 0, size - 1);
+
+		// same length norm and normalization as
+		// NgramIndex.calculateCosineSimilarities
+		double lengthNorm = 0;
+		int topNgrams = Math.min(size, NgramModel.getTopNgramsCount(nGramSize) + 1);
+		for (ind = 0; ind < topNgrams; ind++) {
+			lengthNorm += Math.pow(values[ind], 2);
+		}
+		lengthNorm = Math.sqrt(lengthNorm);
+		double[] norms = new double[numLocales];
+		for (int col = 0; col < numLocales; col++) {
+			double modelNorm = index.getModelNorm(col);
+			norms[col] = modelNorm != 0 ? lengthNorm * modelNorm : 1;
+		}
+
+		double[] dotProducts = new double[numLocales];
+		int checkpoint = FIRST_CHECKPOINT;
+		for (ind = 0; ind < size; ind++) {
+			index.addDotProducts(keys[ind], values[ind], dotProducts);
+			remainingSum -= values[ind];
+			remainingSquares -= values[ind] * values[ind];
+
+			boolean lastNgram = ind == size - 1;
+			if (ind + 1 == checkpoint || lastNgram) {
+				checkpoint <<= 1;
+				if (lastNgram) {
+					remainingSum = 0;
+					remainingSquares = 0;
+				}
+				for (int col = 0; col < numLocales; col++) {
+					double remaining = Math.min(Math.max(remainingSum, 0) * index.getMaxWeight(col),
+							Math.sqrt(Math.max(remainingSquares, 0)) * index.getWeightNorm(col));
+					lower[order][col] = dotProducts[col] / norms[col] * nGramSize;
+					upper[order][col] = (dotProducts[col] + remaining) / norms[col] * nGramSize;
+				}
+
+				Locale leader = lastOrder && lastNgram ? null : getLeader();
+				if (leader != null) {
+					return leader;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * quick sort of values in descending order, keys are moved together with
+	 * values
+	 */
+	private static void sortDescending(double[] values, long[] keys, int from, int to) {
+		while (from < to) {
+			double pivot = values[(from + to) >>> 1];
+			int left = from;
+			int right = to;
+			while (left <= right) {
+				while (values[left] > pivot) {
+					left++;
+				}
+				while (values[right] < pivot) {
+					right--;
+				}
+				if (left <= right) {
+					double value = values[left];
+					values[left] = values[right];
+					values[right] = value;
+					long key = keys[left];
+					keys[left] = keys[right];
+					keys[right] = key;
+					left++;
+					right--;
+				}
+			}
+			// recurse into smaller part to bound the stack
+			if (right - from < to - left) {
+				sortDescending(values, keys, from, right);
+				from = left;
+			} else {
+				sortDescending(values, keys, left, to);
+				to = right;
+			}
+		}
+	}
+
+	/**
+	 * @return weighted cosine similarities for each ngram size, only valid
+	 *         after all ngrams were scored
+	 */
+	LocaleScores[] getSimilarities() {
+		LocaleScores[] retVal = new LocaleScores[numOrders];
+		for (int order = 0; order < numOrders; order++) {
+			retVal[order] = new LocaleScores(localeRegistry);
+			for (int col = 0; col < numLocales; col++) {
+				if (hasModel[order][col]) {
+					retVal[order].set(col, lower[order][col]);
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return language whose lowest possible score is above highest possible
+	 *         scores of all other languages, null if there is none yet
+	 */
+	private Locale getLeader() {
+		double[] totalLower = new double[numLocales];
+		double[] totalUpper = new double[numLocales];
+		double maxContribution = 1.0 / numOrders;
+
+		for (int order = 0; order < numOrders; order++) {
+			double maxLower = 0;
+			double maxUpper = 0;
+			for (int col = 0; col < numLocales; col++) {
+				if (hasModel[order][col]) {
+					maxLower = Math.max(maxLower, lower[order][col]);
+					maxUpper = Math.max(maxUpper, upper[order][col]);
+				}
+			}
+			for (int col = 0; col < numLocales; col++) {
+				if (!hasModel[order][col]) {
+					continue;
+				}
+				// low scores are ignored and top score contributes the most
+				double high = upper[order][col];
+				if (high >= NgramLanguageDetector.MIN_SCORE) {
+					totalUpper[col] += maxLower > 0 ? Math.min(maxContribution, high / (maxLower * numOrders))
+							: maxContribution;
+				}
+				double low = lower[order][col];
+				if (low >= NgramLanguageDetector.MIN_SCORE) {
+					totalLower[col] += low / (maxUpper * numOrders);
+				}
+			}
+		}
+
+		int leader = -1;
+		for (int col = 0; col < numLocales; col++) {
+			if (hasAnyModel[col] && (leader < 0 || totalLower[col] > totalLower[leader])) {
+				leader = col;
+			}
+		}
+		if (leader < 0 || totalLower[leader] <= 0) {
+			return null;
+		}
+		for (int col = 0; col < numLocales; col++) {
+			if (col != leader && hasAnyModel[col] && totalUpper[col] >= totalLower[leader] - EPSILON) {
+				return null;
+			}
+		}
+		return localeRegistry.getLocale(leader);
+	}
+}
@@ -0,0 +1,55 @@
+package language.model;
+
+import java.util.Locale;
+
+/**
+ * Most likely language of the text together with information how it was
+ * detected
+ *
+ * @author Andrey Gusev
+ */
+public class DetectionResult {
+
+	private final Locale language;
+	private final boolean exitedEarly;
+	private final double fractionExamined;
+
+	public DetectionResult(Locale language, boolean exitedEarly) {
+		this(language, exitedEarly, 1.0);
+	}
+
+	public DetectionResult(Locale language, boolean exitedEarly, double fractionExamined) {
+		this.language = language;
+		this.exitedEarly = exitedEarly;
+		this.fractionExamined = fractionExamined;
+	}
+
+	/**
+	 * @return most likely language or null if it could not be detected
+	 */
+	public Locale getLanguage() {
+		return language;
+	}
+
+	/**
+	 * @return whether scoring stopped before all ngrams were scored because
+	 *         leading language could not be overtaken anymore
+	 */
+	public boolean isExitedEarly() {
+		return exitedEarly;
+	}
+
+	/**
+	 * @return fraction of characters of the text that were examined, less
+	 *         than 1 when language was detected from sample of the text
+	 */
+	public double getFractionExamined() {
+		return fractionExamined;
+	}
+
+	@Override
+	public String toString() {
+		return "DetectionResult language: " + language + ", exitedEarly: " + exitedEarly + ", fractionExamined: "
+				+ fractionExamined;
+	}
+}
@@ -0,0 +1,274 @@
+package language.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
+import language.util.ScriptHistogram;
+
+/**
+ * Detects language of text that arrives in chunks (network frames, file
+ * reads) without building the whole document. Each chunk is scanned once and
+ * ngrams of all sizes are added to accumulators of the session, current
+ * ranking can be taken at any point and is the same as
+ * NgramLanguageDetector.detectLanguageWithLinearWeights of all the text so
+ * far.
+ *
+ * Memory of the session is bounded: from the text only the end of the last
+ * word, that may continue in the next chunk, is kept and each accumulator
+ * holds at most maxNgrams distinct ngrams. When accumulator is full ngrams
+ * that none of the models has are dropped starting with the lowest values,
+ * they only matter for length norm of the text through its top ngrams, so
+ * ranking becomes approximate only for very long texts with rich vocabulary,
+ * see isApproximate.
+ *
+ * Session is created with NgramLanguageDetector.newSession and is not thread
+ * safe.
+ *
+ * @author Andrey Gusev
+ */
+public class DetectionSession {
+
+	static final int DEFAULT_MAX_NGRAMS = 8192;
+	private static final int MIN_MAX_NGRAMS = 1024;
+
+	// longest end of the word that is kept between chunks, longer words are
+	// skipped by tokenizer anyway
+	private static final int MAX_CARRY = 4 * LanguageUtil.MAX_WORD_LENGTH;
+
+	private final NgramLanguageDetector detector;
+	private final int[] ngramSizes;
+	private final NgramIndex[] indexes;
+	private final int maxNgrams;
+
+	private final NgramExtractor extractor;
+	private final LongDoubleHashMap[] textVectors;
+	// letters of all the text by script, see ScriptProfiles
+	private final ScriptHistogram histogram = new ScriptHistogram();
+
+	// end of the last chunk after its last delimeter
+	private final StringBuilder carry = new StringBuilder();
+	private boolean carryOverflow;
+
+	// positions of first and last non whitespace characters, to get length
+	// of trimmed text
+	private long length;
+	private long firstNonSpace = -1;
+	private long lastNonSpace = -1;
+
+	private boolean approximate;
+
+	DetectionSession(NgramLanguageDetector detector, int[] ngramSizes, int maxNgrams) {
+		this.detector = detector;
+		this.ngramSizes = ngramSizes.clone();
+		this.maxNgrams = Math.max(maxNgrams, MIN_MAX_NGRAMS);
+		this.extractor = new NgramExtractor(ngramSizes, true);
+		this.indexes = new NgramIndex[ngramSizes.length];
+		this.textVectors = new LongDoubleHashMap[ngramSizes.length];
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			indexes[ind] = detector.getNgramIndex(ngramSizes[ind]);
+			textVectors[ind] = new LongDoubleHashMap();
+		}
+	}
+
+	/**
+	 * adds next chunk of the text, chunk can end in the middle of the word
+	 *
+	 * @return this session
+	 */
+	public DetectionSession append(CharSequence chunk) {
+		int chunkLength = chunk.length();
+		if (chunkLength == 0) {
+			return this;
+		}
+		updateTrimmedLength(chunk);
+		histogram.add(chunk);
+
+		int first = 0;
+		while (first < chunkLength && !LanguageUtil.isDelimiter(chunk.charAt(first))) {
+			first++;
+		}
+		if (first == chunkLength) {
+			// the whole chunk continues current word
+			addToCarry(chunk, 0, chunkLength);
+			return this;
+		}
+
+		// word from previous chunks ends at the first delimeter
+		addToCarry(chunk, 0, first);
+		flushCarry();
+
+		int last = chunkLength - 1;
+		while (!LanguageUtil.isDelimiter(chunk.charAt(last))) {
+			last--;
+		}
+		extractor.extract(chunk, first, last + 1, textVectors);
+		addToCarry(chunk, last + 1, chunkLength);
+
+		for (int ind = 0; ind < textVectors.length; ind++) {
+			if (textVectors[ind].size() > maxNgrams) {
+				prune(ind);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return ordered set of languages that are most similar to the text so
+	 *         far, see NgramLanguageDetector.detectLanguageWithLinearWeights
+	 */
+	public SortedSet<Entry<Locale, Double>> getRanking(boolean ignoreLowScores) {
+		return getScores(ignoreLowScores).toSortedSet();
+	}
+
+	/**
+	 * @return scores of languages for the text so far, see
+	 *         NgramLanguageDetector.getLinearWeightScores
+	 */
+	public LocaleScores getScores(boolean ignoreLowScores) {
+		LongDoubleHashMap[] vectors = textVectors;
+		if (carry.length() > 0 && !carryOverflow) {
+			// last word may still continue so it is only added to a copy
+			vectors = new LongDoubleHashMap[textVectors.length];
+			for (int ind = 0; ind < textVectors.length; ind++) {
+				vectors[ind] = new LongDoubleHashMap(textVectors[ind]);
+			}
+			extractor.extract(carry, vectors);
+		}
+
+		int textLength = (int) Math.min(Integer.MAX_VALUE, getTrimmedLength());
+		return detector.combineWithLinearWeights(
+				detector.getRawCosineSimilarities(vectors, textLength, ngramSizes, true,
+						detector.getCandidates(histogram)), ignoreLowScores);
+	}
+
+	/**
+	 * @return most likely language of the text so far or null if it can not
+	 *         be detected
+	 */
+	public Locale getMostLikelyLanguage() {
+		return getScores(true).getTopLocale();
+	}
+
+	/**
+	 * @return number of characters appended so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return whether some ngrams had to be dropped to keep memory bounded,
+	 *         in which case length norm of the text is approximate
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/**
+	 * clears the session so it can be used for another text
+	 */
+	public void reset() {
+		for (LongDoubleHashMap textVector : textVectors) {
+			textVector.clear();
+		}
+		histogram.clear();
+		carry.setLength(0);
+		carryOverflow = false;
+		length = 0;
+		firstNonSpace = -1;
+		lastNonSpace = -1;
+		approximate = false;
+	}
+
+	private void updateTrimmedLength(CharSequence chunk) {
+		int chunkLength = chunk.length();
+		if (firstNonSpace < 0) {
+			for (int ind = 0; ind < chunkLength; ind++) {
+				if (chunk.charAt(ind) > ' ') {
+					firstNonSpace = length + ind;
+					break;
+				}
+			}
+		}
+		for (int ind = chunkLength - 1; ind >= 0; ind--) {
+			if (chunk.charAt(ind) > ' ') {
+				lastNonSpace = length + ind;
+				break;
+			}
+		}
+		length += chunkLength;
+	}
+
+	private long getTrimmedLength() {
+		return firstNonSpace < 0 ? 0 : lastNonSpace - firstNonSpace + 1;
+	}
+
+	private void addToCarry(CharSequence chunk, int start, int end) {
+		if (carryOverflow || start == end) {
+			return;
+		}
+		if (carry.length() + end - start > MAX_CARRY) {
+			// word is too long to be used
+			carryOverflow = true;
+			carry.setLength(0);
+			return;
+		}
+		carry.append(chunk, start, end);
+	}
+
+	private void flushCarry() {
+		if (carry.length() > 0 && !carryOverflow) {
+			extractor.extract(carry, textVectors);
+		}
+		carry.setLength(0);
+		carryOverflow = false;
+	}
+
+	/**
+	 * drops lowest ngrams that are not in any model until accumulator is half
+	 * full
+	 */
+	private void prune(int sizeIndex) {
+		LongDoubleHashMap textVector = textVectors[sizeIndex];
+		NgramIndex index = indexes[sizeIndex];
+
+		int size = textVector.size();
+		long[] keys = new long[size];
+		double[] values = new double[size];
+		boolean[] inIndex = new boolean[size];
+		double[] otherValues = new double[size];
+		int numOther = 0;
+		int ind = 0;
+		for (int slot = 0; slot < textVector.slots(); slot++) {
+			if (textVector.isSlotUsed(slot)) {
+				keys[ind] = textVector.keyAt(slot);
+				values[ind] = textVector.valueAt(slot);
+				inIndex[ind] = index != null && index.contains(keys[ind]);
+				if (!inIndex[ind]) {
+					otherValues[numOther++] = values[ind];
+				}
+				ind++;
+			}
+		}
+
+		int numKept = Math.max(0, maxNgrams / 2 - (size - numOther));
+		Arrays.sort(otherValues, 0, numOther);
+		double threshold = numKept == 0 ? Double.POSITIVE_INFINITY : otherValues[numOther - Math.min(numKept,
+				numOther)];
+
+		textVector.clear();
+		for (ind = 0; ind < size; ind++) {
+			if (inIndex[ind]) {
+				textVector.add(keys[ind], values[ind]);
+			} else if (values[ind] >= threshold && numKept > 0) {
+				textVector.add(keys[ind], values[ind]);
+				numKept--;
+			}
+		}
+		approximate = true;
+	}
+}
@@ -0,0 +1,111 @@
+package language.model;
+
+import java.util.logging.Logger;
+
+/**
+ * Computes dot products of text ngrams with weights of all locales, used by
+ * NgramIndex. Weights are packed into dense array per locale (column) and
+ * text is given as rows of its ngrams with their values.
+ *
+ * Vectorized kernel (language.model.VectorDotProductKernel from
+ * lang-detect-vector project) uses SIMD lanes of jdk.incubator.vector and is
+ * picked when it is on the classpath and jdk.incubator.vector module is
+ * added (--add-modules jdk.incubator.vector), otherwise scalar kernel is
+ * used. Kernel can be forced with system property language.detector.kernel
+ * set to scalar or vector.
+ *
+ * Vectorized kernel adds products in different order than scalar one, so
+ * results differ by rounding: cosine similarities are within TOLERANCE of
+ * NgramModel.calculateCosineSimilarity. Scalar kernel gives exactly the same
+ * results.
+ *
+ * @author Andrey Gusev
+ */
+public abstract class DotProductKernel {
+
+	private static final Logger log = Logger.getLogger(DotProductKernel.class.getName());
+
+	public static final String KERNEL_PROPERTY = "language.detector.kernel";
+	public static final double TOLERANCE = 1e-9;
+
+	private static final String VECTOR_KERNEL_CLASS = "language.model.VectorDotProductKernel";
+
+	private static final DotProductKernel KERNEL = load();
+
+	/**
+	 * @return kernel used by all indexes
+	 */
+	public static DotProductKernel get() {
+		return KERNEL;
+	}
+
+	/**
+	 * @return kernel that uses no SIMD instructions
+	 */
+	public static DotProductKernel getScalar() {
+		return ScalarDotProductKernel.INSTANCE;
+	}
+
+	/**
+	 * adds dot products of text with weights of every locale to retVal
+	 *
+	 * @param columns
+	 *            - weights of each locale indexed by row, null if locale has
+	 *            no model
+	 * @param rows
+	 *            - rows of text ngrams
+	 * @param values
+	 *            - values of text ngrams
+	 * @param count
+	 *            - number of text ngrams
+	 */
+	public abstract void addDotProducts(double[][] columns, int[] rows, double[] values, int count, double[] retVal);
+
+	/**
+	 * @return whether kernel uses SIMD instructions
+	 */
+	public abstract boolean isVectorized();
+
+	private static DotProductKernel load() {
+		String kernel = System.getProperty(KERNEL_PROPERTY, "");
+		if (!"scalar".equals(kernel)) {
+			try {
+				DotProductKernel retVal = Class.forName(VECTOR_KERNEL_CLASS).asSubclass(DotProductKernel.class)
+						.getDeclaredConstructor().newInstance();
+				log.info("Using vectorized dot product kernel");
+				return retVal;
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// not on classpath or module is absent
+				if ("vector".equals(kernel)) {
+					throw new RuntimeException("Vectorized dot product kernel is not available", e);
+				}
+			}
+		}
+		return ScalarDotProductKernel.INSTANCE;
+	}
+
+	private static final class ScalarDotProductKernel extends DotProductKernel {
+
+		private static final ScalarDotProductKernel INSTANCE = new ScalarDotProductKernel();
+
+		@Override
+		public void addDotProducts(double[][] columns, int[] rows, double[] values, int count, double[] retVal) {
+			for (int col = 0; col < columns.length; col++) {
+				double[] column = columns[col];
+				if (column == null) {
+					continue;
+				}
+				double sum = retVal[col];
+				for (int ind = 0; ind < count; ind++) {
+					sum += column[rows[ind]] * values[ind];
+				}
+				retVal[col] = sum;
+			}
+		}
+
+		@Override
+		public boolean isVectorized() {
+			return false;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package language.model;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.SortedSet;
@@ -36,4 +37,17 @@ public interface LanguageDetector {
 	SortedSet<Entry<Locale, Double>> detectLanguageWithLinearWeights(String text, boolean ignoreLowScores)
 			throws IOException;
 
+	/**
+	 * detects languages of many texts at once, texts are spread across
+	 * available processors
+	 *
+	 * @param texts
+	 *            - texts for which we will detect language
+	 * @return most likely language of each text with specified algorithm, in
+	 *         the same order as texts, null for texts whose language could
+	 *         not be detected
+	 */
+	List<Locale> detectBatch(List<? extends CharSequence> texts, ClassificationAlgorithm algorithmToUse)
+			throws IOException;
+
 }
@@ -0,0 +1,177 @@
+package language.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import language.model.NgramLanguageDetector.BoundaryDetectionAlgorithm;
+import language.model.NgramLanguageDetector.ClassificationAlgorithm;
+import language.model.multiling.BigramBoundaryDetector;
+import language.model.multiling.LanguageBoundaryDetector;
+import language.model.multiling.NestedSlidingWindowBigramBoundaryDetector;
+import language.model.multiling.OneWordBoundaryDetector;
+import language.model.multiling.SlidingWindowBigramBoundaryDetector;
+import language.model.multiling.ThreeWordBoundaryDetector;
+import language.model.multiling.TwoWordBoundaryDetector;
+import language.util.Pair;
+
+/**
+ * Process wide registry of language detectors keyed by model directory.
+ * Models, bigram counts and boundary detectors are built once per directory
+ * and shared by all threads, detectors are immutable after construction and
+ * safe to use concurrently.
+ *
+ * In web application lifecycle of the registry is handled by
+ * language.web.LanguageDetectorContextListener.
+ *
+ * @author Andrey Gusev
+ */
+@ThreadSafe
+public final class LanguageDetectorRegistry {
+
+	private static final Logger log = Logger.getLogger(LanguageDetectorRegistry.class.getName());
+
+	private final static Lock RG = new ReentrantLock();
+
+	@GuardedBy("RG")
+	private static final ConcurrentMap<File, Detectors> REGISTRY = new ConcurrentHashMap<>();
+
+	private LanguageDetectorRegistry() {
+	}
+
+	/**
+	 * @return shared detector for model directory, detector is created on
+	 *         first call
+	 */
+	public static NgramLanguageDetector getDetector(File basePath) {
+		return getDetectors(basePath).detector;
+	}
+
+	/**
+	 * @return shared boundary detector for model directory, boundary detector
+	 *         is created on first call
+	 */
+	public static LanguageBoundaryDetector getBoundaryDetector(File basePath,
+			BoundaryDetectionAlgorithm boundaryDetectionAlgorithm, ClassificationAlgorithm algorithmToUse)
+			throws IOException {
+		Detectors detectors = getDetectors(basePath);
+		Pair<BoundaryDetectionAlgorithm, ClassificationAlgorithm> key = new Pair<>(boundaryDetectionAlgorithm,
+				algorithmToUse);
+		LanguageBoundaryDetector boundaryDetector = detectors.boundaryDetectors.get(key);
+		if (boundaryDetector == null) {
+			boundaryDetector = createBoundaryDetector(boundaryDetectionAlgorithm, algorithmToUse, detectors.detector);
+			LanguageBoundaryDetector existing = detectors.boundaryDetectors.putIfAbsent(key, boundaryDetector);
+			if (existing != null) {
+				boundaryDetector = existing;
+			}
+		}
+		return boundaryDetector;
+	}
+
+	/**
+	 * removes detectors and bigram counts of model directory from the
+	 * registry, detectors that are still in use keep working
+	 */
+	public static void release(File basePath) {
+		RG.lock();
+		try {
+			REGISTRY.remove(getKey(basePath));
+			BigramBoundaryDetector.releaseBigramCounts(basePath);
+		} finally {
+			RG.unlock();
+		}
+	}
+
+	/**
+	 * removes all detectors and bigram counts from the registry
+	 */
+	public static void clear() {
+		RG.lock();
+		try {
+			REGISTRY.clear();
+			BigramBoundaryDetector.clearBigramCounts();
+		} finally {
+			RG.unlock();
+		}
+	}
+
+	/**
+	 * creates new boundary detector of given type
+	 */
+	public static LanguageBoundaryDetector createBoundaryDetector(
+			BoundaryDetectionAlgorithm boundaryDetectionAlgorithm, ClassificationAlgorithm algorithmToUse,
+			NgramLanguageDetector detector) throws IOException {
+		switch (boundaryDetectionAlgorithm) {
+		case ONE_WORD:
+			return new OneWordBoundaryDetector(algorithmToUse, detector);
+		case TWO_WORD:
+			return new TwoWordBoundaryDetector(algorithmToUse, detector);
+		case THREE_WORD:
+			return new ThreeWordBoundaryDetector(algorithmToUse, detector);
+		case BASE_BIGRAM:
+			return new BigramBoundaryDetector(algorithmToUse, detector);
+		case TWO_WORD_BIGRAM:
+			return new SlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 2);
+		case THREE_WORD_BIGRAM:
+			return new SlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 3);
+		case FOUR_WORD_BIGRAM:
+			return new SlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 4);
+		case FIVE_WORD_BIGRAM:
+			return new SlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 5);
+		case SIX_WORD_BIGRAM:
+			return new SlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 6);
+		case FIVE_WORD_NESTED:
+			return new NestedSlidingWindowBigramBoundaryDetector(algorithmToUse, detector, 5);
+		default:
+			throw new IllegalArgumentException("Unsupported boundary detection algorithm: "
+					+ boundaryDetectionAlgorithm);
+		}
+	}
+
+	private static Detectors getDetectors(File basePath) {
+		File key = getKey(basePath);
+		Detectors detectors = REGISTRY.get(key);
+		// initialize only once
+		if (detectors == null) {
+			RG.lock();
+			try {
+				detectors = REGISTRY.get(key);
+				if (detectors == null) {
+					long start = System.currentTimeMillis();
+					detectors = new Detectors(new NgramLanguageDetector(key));
+					REGISTRY.put(key, detectors);
+					log.info("Loaded language detector from " + key + " in " + (System.currentTimeMillis() - start)
+							+ " ms");
+				}
+			} finally {
+				RG.unlock();
+			}
+		}
+		return detectors;
+	}
+
+	private static File getKey(File basePath) {
+		try {
+			return basePath.getCanonicalFile();
+		} catch (IOException e) {
+			return basePath.getAbsoluteFile();
+		}
+	}
+
+	private static class Detectors {
+
+		private final NgramLanguageDetector detector;
+		private final ConcurrentMap<Pair<BoundaryDetectionAlgorithm, ClassificationAlgorithm>, LanguageBoundaryDetector> boundaryDetectors = new ConcurrentHashMap<>();
+
+		private Detectors(NgramLanguageDetector detector) {
+			this.detector = detector;
+		}
+	}
+}
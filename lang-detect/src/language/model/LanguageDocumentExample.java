@@ -1,38 +1,56 @@
 package language.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+import language.classifier.VectorClassifierExample;
 import language.classifier.tree.DecisionTreeEntity;
 import language.classifier.tree.DecisionTreeExample;
 import language.classifier.tree.DecisionTreeFeature;
 
 /**
- * Training set example for language models
+ * Training set example for language models, values of each feature are
+ * scores of languages indexed by locale id
  * 
  * @author Andrey Gusev
  */
-public class LanguageDocumentExample implements DecisionTreeExample<Double, Locale> {
+public class LanguageDocumentExample implements DecisionTreeExample<Double, Locale>, VectorClassifierExample<Locale> {
 
 	private final Locale exampleLocale;
-	private final SortedMap<NgramLanguageModelFeature, Map<Locale, Double>> featureValues;
+	private final LocaleRegistry localeRegistry;
+	// indexed by ordinal of feature, null if feature has no values
+	private final LocaleScores[] featureValues;
 
-	private volatile List<Double> allFeatureValues;
+	private volatile double[] allFeatureValues;
 
 	public LanguageDocumentExample(Locale exampleLocale) {
+		this(exampleLocale, NgramLanguageDetector.LOCALE_REGISTRY);
+	}
+
+	public LanguageDocumentExample(Locale exampleLocale, LocaleRegistry localeRegistry) {
 		this.exampleLocale = exampleLocale;
-		this.featureValues = new TreeMap<>();
+		this.localeRegistry = localeRegistry;
+		this.featureValues = new LocaleScores[NgramLanguageModelFeature.values().length];
+	}
 
+	public void addFeatureValue(NgramLanguageModelFeature feature, LocaleScores value) {
+		assert feature != null;
+		assert value.getRegistry() == localeRegistry;
+		this.featureValues[feature.ordinal()] = value;
 	}
 
 	public void addFeatureValue(NgramLanguageModelFeature feature, Map<Locale, Double> value) {
-		assert feature != null;
-		this.featureValues.put(feature, value);
+		addFeatureValue(feature, LocaleScores.fromMap(localeRegistry, value));
+	}
+
+	/**
+	 * @return scores of languages for the feature, null if feature has no
+	 *         values
+	 */
+	LocaleScores getFeatureValue(NgramLanguageModelFeature feature) {
+		return this.featureValues[feature.ordinal()];
 	}
 
 	/**
@@ -57,20 +75,37 @@ public class LanguageDocumentExample implements DecisionTreeExample<Double, Loca
 	public boolean hasValueForFeature(DecisionTreeFeature<Double> feat, Comparable<Double> lowValue,
 			Comparable<Double> highValue, Locale positiveLabel) {
 
-		Map<Locale, Double> valuesForFeature = this.featureValues.get(feat);
+		if (!(feat instanceof NgramLanguageModelFeature)) {
+			return false;
+		}
+		LocaleScores valuesForFeature = this.featureValues[((NgramLanguageModelFeature) feat).ordinal()];
 		if (valuesForFeature == null) {
 			return false;
 		}
 
 		Double valueForFeature = valuesForFeature.get(positiveLabel);
-		if (valueForFeature == null) {
-			valueForFeature = 0.0;
-		}
 		boolean value = DecisionTreeEntity.<Double> isValueWithinRange(valueForFeature, lowValue, highValue);
 		return value;
 	}
 
 	public List<Double> getFeatureValues(Locale positiveLabel) {
+		final double[] values = getFeatureVector(positiveLabel);
+		return new AbstractList<Double>() {
+
+			@Override
+			public Double get(int index) {
+				return values[index];
+			}
+
+			@Override
+			public int size() {
+				return values.length;
+			}
+
+		};
+	}
+
+	public double[] getFeatureVector(Locale positiveLabel) {
 
 		// we will actually use feature values not just for particular locale
 		if (allFeatureValues == null) {
@@ -80,17 +115,27 @@ public class LanguageDocumentExample implements DecisionTreeExample<Double, Loca
 					return allFeatureValues;
 				}
 
-				List<Double> tempList = new ArrayList<>();
-
-				for (Map<Locale, Double> valueMap : this.featureValues.values()) {
-					for (Double value : valueMap.values()) {
-						if (value == null) {
-							value = 0.0;
-						}
-						tempList.add(value);
+				// values of features in order of features and locale ids,
+				// languages without values are 0
+				int numLocales = localeRegistry.size();
+				int numFeatures = 0;
+				for (LocaleScores valueMap : this.featureValues) {
+					if (valueMap != null) {
+						numFeatures++;
+					}
+				}
+				double[] tempValues = new double[numFeatures * numLocales];
+				int offset = 0;
+				for (LocaleScores valueMap : this.featureValues) {
+					if (valueMap == null) {
+						continue;
 					}
+					for (int id = 0; id < numLocales; id++) {
+						tempValues[offset + id] = valueMap.get(id);
+					}
+					offset += numLocales;
 				}
-				allFeatureValues = Collections.<Double> unmodifiableList(tempList);
+				allFeatureValues = tempValues;
 			}
 		}
 
@@ -99,7 +144,14 @@ public class LanguageDocumentExample implements DecisionTreeExample<Double, Loca
 
 	@Override
 	public String toString() {
-		return this.exampleLocale.toString() + ", features: " + this.featureValues.toString();
+		StringBuilder sb = new StringBuilder();
+		for (NgramLanguageModelFeature feature : NgramLanguageModelFeature.values()) {
+			LocaleScores valueMap = this.featureValues[feature.ordinal()];
+			if (valueMap != null) {
+				sb.append(sb.length() > 0 ? ", " : "").append(feature).append("=").append(valueMap);
+			}
+		}
+		return this.exampleLocale + ", features: {" + sb + "}";
 	}
 
 }
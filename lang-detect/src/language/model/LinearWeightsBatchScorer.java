@@ -0,0 +1,117 @@
+package language.model;
+
+import java.util.Locale;
+
+import language.util.LongDoubleHashMap;
+import language.util.ScriptHistogram;
+
+/**
+ * Linear weights detection for batches of texts. Text vectors, script
+ * histogram, similarity scores and sort buffer are allocated once and reused
+ * for every text. Returns the same language as
+ * NgramLanguageDetector.getLanguageWithLinerWeights.
+ *
+ * Scorer keeps state of one text so it is not thread safe, every thread of
+ * the batch has its own.
+ *
+ * @author Andrey Gusev
+ */
+class LinearWeightsBatchScorer {
+
+	private final int[] ngramSizes;
+	private final NgramIndex[] indexes;
+	private final ScriptProfiles scriptProfiles;
+
+	private final NgramExtractor extractor;
+	private final LongDoubleHashMap[] textVectors;
+	private final ScriptHistogram histogram = new ScriptHistogram();
+	private final double[] cosineSimilarities;
+	private final LocaleScores[] similarities;
+	private final LocaleScores scores;
+	private double[] scratch = new double[256];
+
+	/**
+	 * @param indexes
+	 *            - index for each ngram size, null if there is no index
+	 * @param localeRegistry
+	 *            - registry whose ids are columns of indexes
+	 * @param scriptProfiles
+	 *            - profiles used to drop locales whose scripts are not in
+	 *            the text
+	 */
+	LinearWeightsBatchScorer(int[] ngramSizes, NgramIndex[] indexes, LocaleRegistry localeRegistry,
+			ScriptProfiles scriptProfiles) {
+		this.ngramSizes = ngramSizes;
+		this.indexes = indexes;
+		this.scriptProfiles = scriptProfiles;
+
+		this.extractor = new NgramExtractor(ngramSizes, true);
+		this.textVectors = new LongDoubleHashMap[ngramSizes.length];
+		this.similarities = new LocaleScores[ngramSizes.length];
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			textVectors[ind] = new LongDoubleHashMap();
+			similarities[ind] = new LocaleScores(localeRegistry);
+		}
+		this.cosineSimilarities = new double[localeRegistry.size()];
+		this.scores = new LocaleScores(localeRegistry);
+	}
+
+	/**
+	 * @return most likely language of the text or null if it can not be
+	 *         detected
+	 */
+	Locale detect(CharSequence text) {
+		// same as String.trim without copying the text
+		int start = 0;
+		int end = text.length();
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		while (start < end && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		int textLength = end - start;
+
+		for (LongDoubleHashMap textVector : textVectors) {
+			textVector.clear();
+		}
+		extractor.extract(text, start, end, textVectors);
+		histogram.clear();
+		histogram.add(text, start, end);
+		boolean[] candidates = scriptProfiles.getCandidates(histogram);
+
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			setSimilarities(ind, textLength, candidates);
+		}
+		NgramLanguageDetector.combineWithLinearWeights(similarities, true, scores);
+		return scores.getTopLocale();
+	}
+
+	/**
+	 * same similarities as NgramLanguageDetector.getRawCosineSimilarities
+	 * with ngram weight, calculated in reused arrays
+	 */
+	private void setSimilarities(int ind, int textLength, boolean[] candidates) {
+		int nGramSize = ngramSizes[ind];
+		NgramIndex index = indexes[ind];
+		LocaleScores retVal = similarities[ind];
+		retVal.clear();
+		if (index == null) {
+			return;
+		}
+
+		boolean hasText = textLength >= nGramSize;
+		if (hasText) {
+			LongDoubleHashMap textVector = textVectors[ind];
+			if (scratch.length < textVector.size()) {
+				scratch = new double[Math.max(textVector.size(), scratch.length * 2)];
+			}
+			index.calculateCosineSimilarities(textVector, cosineSimilarities, scratch, candidates);
+		}
+		for (int col = 0; col < index.getNumLocales(); col++) {
+			if (index.hasModel(col) && (candidates == null || candidates[col])) {
+				retVal.set(col, hasText ? cosineSimilarities[col] * nGramSize : 0.00);
+			}
+		}
+	}
+}
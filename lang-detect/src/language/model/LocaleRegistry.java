@@ -0,0 +1,70 @@
+package language.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dense ids of supported locales, ids are positions of locales in the order
+ * they were registered. Scores of languages are kept in arrays indexed by id,
+ * see LocaleScores, and ids of detector are the same as columns of its
+ * compiled models, see NgramIndex. Registry is immutable.
+ *
+ * @author Andrey Gusev
+ */
+public final class LocaleRegistry {
+
+	private final Locale[] locales;
+	private final Map<Locale, Integer> ids;
+
+	public LocaleRegistry(Locale[] locales) {
+		this.locales = locales.clone();
+		Map<Locale, Integer> tempMap = new HashMap<>();
+		for (int id = 0; id < locales.length; id++) {
+			if (tempMap.put(locales[id], id) != null) {
+				throw new IllegalArgumentException("Duplicate locale: " + locales[id]);
+			}
+		}
+		this.ids = Collections.unmodifiableMap(tempMap);
+	}
+
+	/**
+	 * @return number of locales, ids are from 0 to size() - 1
+	 */
+	public int size() {
+		return locales.length;
+	}
+
+	public Locale getLocale(int id) {
+		return locales[id];
+	}
+
+	/**
+	 * @return id of locale or -1 if locale is not registered
+	 */
+	public int getId(Locale locale) {
+		Integer id = ids.get(locale);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @return locales in the order of their ids
+	 */
+	public Locale[] getLocales() {
+		return locales.clone();
+	}
+
+	/**
+	 * @return whether registry has the same locales with the same ids
+	 */
+	public boolean hasLocales(Locale[] otherLocales) {
+		return Arrays.equals(locales, otherLocales);
+	}
+
+	@Override
+	public String toString() {
+		return "LocaleRegistry " + Arrays.toString(locales);
+	}
+}
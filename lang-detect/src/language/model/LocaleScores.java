@@ -0,0 +1,199 @@
+package language.model;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Scores of languages kept in primitive array indexed by locale id, see
+ * LocaleRegistry. Only some languages may have score, for instance languages
+ * whose models were not loaded have none. Scores are reused between texts
+ * with clear and converted to maps and sorted sets only for public api.
+ *
+ * Not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+public final class LocaleScores {
+
+	/**
+	 * descending order of scores, ties are broken by lexicographic order of
+	 * languages
+	 */
+	static final Comparator<Entry<Locale, Double>> DESCENDING_ORDER = new Comparator<Entry<Locale, Double>>() {
+
+		public int compare(Entry<Locale, Double> a, Entry<Locale, Double> b) {
+			// since since we want reverse order list, we multiply by -1,
+			// fall back to lexicographic order of languages
+			int valCompare = a.getValue().compareTo(b.getValue()) * -1;
+			return valCompare != 0 ? valCompare : a.getKey().getLanguage().compareTo(b.getKey().getLanguage());
+		}
+
+	};
+
+	private final LocaleRegistry registry;
+	private final double[] scores;
+	private final boolean[] hasScore;
+	private int size;
+
+	public LocaleScores(LocaleRegistry registry) {
+		this.registry = registry;
+		this.scores = new double[registry.size()];
+		this.hasScore = new boolean[registry.size()];
+	}
+
+	public LocaleRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return score of locale with given id, 0 if it has no score
+	 */
+	public double get(int id) {
+		return scores[id];
+	}
+
+	/**
+	 * @return score of locale, 0 if it has no score or is not registered
+	 */
+	public double get(Locale locale) {
+		int id = registry.getId(locale);
+		return id >= 0 ? scores[id] : 0;
+	}
+
+	public boolean hasScore(int id) {
+		return hasScore[id];
+	}
+
+	public void set(int id, double score) {
+		if (!hasScore[id]) {
+			hasScore[id] = true;
+			size++;
+		}
+		scores[id] = score;
+	}
+
+	public void add(int id, double score) {
+		set(id, scores[id] + score);
+	}
+
+	/**
+	 * @return number of locales that have score
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		for (int id = 0; id < scores.length; id++) {
+			scores[id] = 0;
+			hasScore[id] = false;
+		}
+		size = 0;
+	}
+
+	/**
+	 * @return id of locale with the highest score, ties are broken by
+	 *         language as in DESCENDING_ORDER, -1 if there are no scores
+	 */
+	public int getTopId() {
+		int best = -1;
+		for (int id = 0; id < scores.length; id++) {
+			if (hasScore[id] && (best < 0 || compare(id, best) < 0)) {
+				best = id;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return locale with the highest score or null if there are no scores
+	 */
+	public Locale getTopLocale() {
+		int id = getTopId();
+		return id >= 0 ? registry.getLocale(id) : null;
+	}
+
+	/**
+	 * @return ids of locales that have score in DESCENDING_ORDER
+	 */
+	public int[] getRankedIds() {
+		int[] retVal = new int[size];
+		int count = 0;
+		for (int id = 0; id < scores.length; id++) {
+			if (!hasScore[id]) {
+				continue;
+			}
+			// there are only few languages so insertion sort will do
+			int ind = count++;
+			while (ind > 0 && compare(id, retVal[ind - 1]) < 0) {
+				retVal[ind] = retVal[ind - 1];
+				ind--;
+			}
+			retVal[ind] = id;
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return scores as map of locales, only locales that have score are
+	 *         included
+	 */
+	public Map<Locale, Double> toMap() {
+		Map<Locale, Double> retVal = new HashMap<>();
+		for (int id = 0; id < scores.length; id++) {
+			if (hasScore[id]) {
+				retVal.put(registry.getLocale(id), scores[id]);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return scores as set of entries in DESCENDING_ORDER
+	 */
+	public SortedSet<Entry<Locale, Double>> toSortedSet() {
+		SortedSet<Entry<Locale, Double>> retVal = new TreeSet<>(DESCENDING_ORDER);
+		for (int id = 0; id < scores.length; id++) {
+			if (hasScore[id]) {
+				retVal.add(new SimpleImmutableEntry<>(registry.getLocale(id), scores[id]));
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return scores of locales registered in this registry from map, other
+	 *         locales are ignored
+	 */
+	public static LocaleScores fromMap(LocaleRegistry registry, Map<Locale, Double> map) {
+		LocaleScores retVal = new LocaleScores(registry);
+		for (Entry<Locale, Double> entry : map.entrySet()) {
+			int id = registry.getId(entry.getKey());
+			if (id >= 0 && entry.getValue() != null) {
+				retVal.set(id, entry.getValue());
+			}
+		}
+		return retVal;
+	}
+
+	private int compare(int a, int b) {
+		int valCompare = Double.compare(scores[b], scores[a]);
+		return valCompare != 0 ? valCompare : registry.getLocale(a).getLanguage().compareTo(
+				registry.getLocale(b).getLanguage());
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+}
@@ -0,0 +1,325 @@
+package language.model;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+
+import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
+
+/**
+ * Aho-Corasick automaton of model ngrams of all sizes, built on top of the
+ * trie of NgramVocabulary. Words of the text are fed through the automaton
+ * character by character as they are extracted (see
+ * NgramExtractor.WordVisitor), every match is a model ngram of the word and
+ * gives its row in the index of its size directly, so text ngrams are not
+ * looked up in indexes by hash.
+ *
+ * Words are wrapped into boundary markers and ngrams are not matched across
+ * punctuation, whitespace or digits, the same as in NgramExtractor, so
+ * similarities are the same as with text vectors up to rounding (products
+ * are added in different order). Length norm of the text still needs all of
+ * its ngrams, not only model ones, so text vectors are extracted in the same
+ * pass.
+ *
+ * Automaton is used when system property language.detector.engine is set to
+ * automaton, text vectors are looked up in indexes otherwise.
+ *
+ * Automaton is immutable and can be shared between threads, state of a text
+ * is kept in Scan, every thread reuses its own Scan for all of its texts.
+ * Scan doesn't refer to its automaton and scans of a thread are weakly keyed
+ * by automaton, so released automatons are collected even if pooled threads
+ * have scans of them.
+ *
+ * @author Andrey Gusev
+ */
+public final class NgramAutomaton {
+
+	public static final String ENGINE_PROPERTY = "language.detector.engine";
+
+	private final int[] ngramSizes;
+	private final NgramIndex[] indexes;
+
+	// trie of the vocabulary, children of node i are nodes firstChild[i] to
+	// firstChild[i + 1] - 1 sorted by label
+	private final int[] firstChild;
+	private final char[] labels;
+	// longest proper suffix of the node that is in the trie
+	private final int[] failures;
+	// longest proper suffix of the node that is a matched ngram, 0 if none
+	private final int[] outputs;
+	// position of ngram size of the node in ngramSizes, -1 if the node is
+	// not a matched ngram
+	private final int[] sizePositions;
+	private final int[] rows;
+
+	// scans of the thread by automaton, scan has arrays of all rows of
+	// indexes, so it is allocated once per thread and not per text
+	private static final ThreadLocal<Map<NgramAutomaton, Scan>> SCANS = new ThreadLocal<Map<NgramAutomaton, Scan>>() {
+
+		@Override
+		protected Map<NgramAutomaton, Scan> initialValue() {
+			return new WeakHashMap<>();
+		}
+
+	};
+
+	/**
+	 * @param vocabulary
+	 *            - ngrams of the indexes
+	 * @param ngramSizes
+	 *            - ngram sizes to match
+	 * @param indexes
+	 *            - index of each ngram size, null if there is no index
+	 */
+	NgramAutomaton(NgramVocabulary vocabulary, int[] ngramSizes, NgramIndex[] indexes) {
+		this.ngramSizes = ngramSizes.clone();
+		this.indexes = indexes.clone();
+
+		int numNodes = vocabulary.getNumNodes();
+		this.firstChild = new int[numNodes + 1];
+		this.labels = new char[numNodes];
+		this.rows = new int[numNodes];
+		this.sizePositions = new int[numNodes];
+		for (int node = 0; node <= numNodes; node++) {
+			firstChild[node] = vocabulary.getFirstChild(node);
+		}
+
+		int maxNgramSize = 0;
+		for (int nGramSize : ngramSizes) {
+			maxNgramSize = Math.max(maxNgramSize, nGramSize);
+		}
+		int[] positions = new int[maxNgramSize + 1];
+		for (int ind = 0; ind <= maxNgramSize; ind++) {
+			positions[ind] = -1;
+		}
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			if (indexes[ind] != null) {
+				positions[ngramSizes[ind]] = ind;
+			}
+		}
+
+		// depth of the node is size of its ngram
+		int[] depths = new int[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			labels[node] = vocabulary.getLabel(node);
+			rows[node] = vocabulary.getNodeRow(node);
+			int depth = depths[node];
+			for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+				depths[child] = depth + 1;
+			}
+			// unigrams have to be letters, see NgramExtractor
+			boolean matched = rows[node] >= 0 && depth <= maxNgramSize && positions[depth] >= 0
+					&& (depth > 1 || LanguageUtil.isLetter(labels[node]));
+			sizePositions[node] = matched ? positions[depth] : -1;
+		}
+
+		// failure and output links in breadth first order, so links of
+		// shorter suffixes are ready
+		this.failures = new int[numNodes];
+		this.outputs = new int[numNodes];
+		Queue<Integer> queue = new ArrayDeque<>();
+		for (int child = firstChild[0]; child < firstChild[1]; child++) {
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+				int failure = next(failures[node], labels[child]);
+				failures[child] = failure;
+				outputs[child] = sizePositions[failure] >= 0 ? failure : outputs[failure];
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * @return whether automaton is configured to score texts, see
+	 *         ENGINE_PROPERTY
+	 */
+	public static boolean isConfigured() {
+		return "automaton".equals(System.getProperty(ENGINE_PROPERTY, "").trim());
+	}
+
+	/**
+	 * @return ngram sizes matched by automaton
+	 */
+	int[] getNgramSizes() {
+		return ngramSizes.clone();
+	}
+
+	/**
+	 * @return state after reading the character in given state
+	 */
+	private int next(int state, char chr) {
+		while (true) {
+			int child = getChild(state, chr);
+			if (child >= 0) {
+				return child;
+			}
+			if (state == 0) {
+				return 0;
+			}
+			state = failures[state];
+		}
+	}
+
+	private int getChild(int node, char chr) {
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char label = labels[mid];
+			if (label < chr) {
+				low = mid + 1;
+			} else if (label > chr) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return new state for scoring texts
+	 */
+	Scan newScan() {
+		return new Scan(this);
+	}
+
+	/**
+	 * @return state for scoring texts of the current thread, reused by all
+	 *         of its texts
+	 */
+	Scan getScan() {
+		Map<NgramAutomaton, Scan> scans = SCANS.get();
+		Scan retVal = scans.get(this);
+		if (retVal == null) {
+			retVal = new Scan(this);
+			scans.put(this, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Model ngrams and text vectors of one text. Scan keeps state so it is
+	 * not thread safe, but it can be reused for many texts of automaton it
+	 * was created for.
+	 */
+	static final class Scan implements NgramExtractor.WordVisitor {
+
+		private final NgramExtractor extractor;
+		private final LongDoubleHashMap[] textVectors;
+		// value of text ngram of each row of each index and rows that have
+		// value
+		private final double[][] rowValues;
+		private final int[][] textRows;
+		private final int[] numTextRows;
+		// distinct matches of current word
+		private int[] wordMatches = new int[32];
+		private int numWordMatches;
+		// automaton of current scan, not kept after it
+		private NgramAutomaton automaton;
+
+		private Scan(NgramAutomaton automaton) {
+			int numSizes = automaton.ngramSizes.length;
+			this.extractor = new NgramExtractor(automaton.ngramSizes, true);
+			this.textVectors = new LongDoubleHashMap[numSizes];
+			this.rowValues = new double[numSizes][];
+			this.textRows = new int[numSizes][];
+			this.numTextRows = new int[numSizes];
+			for (int ind = 0; ind < numSizes; ind++) {
+				textVectors[ind] = new LongDoubleHashMap();
+				int numRows = automaton.indexes[ind] != null ? automaton.indexes[ind].size() : 0;
+				rowValues[ind] = new double[numRows];
+				textRows[ind] = new int[numRows];
+			}
+		}
+
+		/**
+		 * reads the region of the text with automaton the scan was created
+		 * for, state of previous text is dropped
+		 */
+		void scan(NgramAutomaton automaton, CharSequence text, int start, int end) {
+			for (int ind = 0; ind < numTextRows.length; ind++) {
+				textVectors[ind].clear();
+				for (int row = 0; row < numTextRows[ind]; row++) {
+					rowValues[ind][textRows[ind][row]] = 0;
+				}
+				numTextRows[ind] = 0;
+			}
+			this.automaton = automaton;
+			try {
+				extractor.extract(text, start, end, textVectors, this);
+			} finally {
+				this.automaton = null;
+			}
+		}
+
+		@Override
+		public void visitWord(char[] wordChars, int length, double ngramValue) {
+			int[] sizePositions = automaton.sizePositions;
+			int[] outputs = automaton.outputs;
+			numWordMatches = 0;
+			int state = 0;
+			for (int pos = 0; pos < length; pos++) {
+				char chr = wordChars[pos];
+				if (LanguageUtil.isNgramBreak(chr)) {
+					state = 0;
+					continue;
+				}
+				state = automaton.next(state, chr);
+				int node = sizePositions[state] >= 0 ? state : outputs[state];
+				for (; node > 0; node = outputs[node]) {
+					addMatch(node);
+				}
+			}
+
+			int[] rows = automaton.rows;
+			for (int ind = 0; ind < numWordMatches; ind++) {
+				int node = wordMatches[ind];
+				int sizePosition = sizePositions[node];
+				int row = rows[node];
+				if (rowValues[sizePosition][row] == 0) {
+					textRows[sizePosition][numTextRows[sizePosition]++] = row;
+				}
+				rowValues[sizePosition][row] += ngramValue;
+			}
+		}
+
+		private void addMatch(int node) {
+			// each distinct ngram is counted once per word, words are short so
+			// linear scan is cheaper than a set
+			for (int ind = 0; ind < numWordMatches; ind++) {
+				if (wordMatches[ind] == node) {
+					return;
+				}
+			}
+			if (numWordMatches == wordMatches.length) {
+				int[] tmp = new int[numWordMatches * 2];
+				System.arraycopy(wordMatches, 0, tmp, 0, numWordMatches);
+				wordMatches = tmp;
+			}
+			wordMatches[numWordMatches++] = node;
+		}
+
+		/**
+		 * @return text vectors of the text in the order of ngram sizes
+		 */
+		LongDoubleHashMap[] getTextVectors() {
+			return textVectors;
+		}
+
+		/**
+		 * same as NgramIndex.calculateCosineSimilarities of text vector of
+		 * ngram size at given position, automaton is the one of the scan
+		 */
+		double[] calculateCosineSimilarities(NgramAutomaton automaton, int ind, double[] retVal, double[] scratch,
+				boolean[] candidates) {
+			return automaton.indexes[ind].calculateCosineSimilarities(textRows[ind], numTextRows[ind],
+					rowValues[ind], textVectors[ind], retVal, scratch, candidates);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package language.model;
+
+import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
+import language.util.NgramHash;
+import language.util.WordScanner;
+
+/**
+ * Extracts ngrams of several sizes from text in a single pass. Ngrams are
+ * emitted as 64 bit hash keys (see NgramHash) into primitive accumulators,
+ * one accumulator per ngram size, so no String is created per ngram.
+ *
+ * Follows the same rules as NgramModel.getNgrams: each word is wrapped into
+ * word boundary markers, ngrams containing punctuation, whitespace or digits
+ * are skipped, unigrams have to be letters and each distinct ngram is only
+ * counted once per word.
+ *
+ * Words are scanned in place with WordScanner, so extraction does not create
+ * any Strings.
+ *
+ * Extractor keeps scratch buffers so it is not thread safe, but it is cheap
+ * to create one per request.
+ *
+ * @author Andrey Gusev
+ */
+public class NgramExtractor {
+
+	private final int[] ngramSizes;
+	// maps ngram size to position in ngramSizes or -1 if size is not extracted
+	private final int[] sizePositions;
+	private final int maxNgramSize;
+	private final boolean adjustValue;
+
+	// distinct ngrams of current word for each ngram size
+	private final long[][] wordNgrams;
+	private final int[] wordNgramCounts;
+	private char[] wordChars;
+	private final WordScanner scanner = new WordScanner(1);
+
+	/**
+	 * Receives every word of the text wrapped into boundary markers, see
+	 * NgramAutomaton
+	 */
+	interface WordVisitor {
+
+		/**
+		 * @param wordChars
+		 *            - characters of the word between boundary markers
+		 * @param length
+		 *            - number of characters including markers
+		 * @param ngramValue
+		 *            - value of each ngram of the word
+		 */
+		void visitWord(char[] wordChars, int length, double ngramValue);
+	}
+
+	/**
+	 * @param ngramSizes
+	 *            - ngram sizes to extract, accumulators passed to extract
+	 *            should be in the same order
+	 * @param adjustValue
+	 *            - whether value of ngram is adjusted by length of the word,
+	 *            see NgramLanguageDetector.getNgramModelForText
+	 */
+	public NgramExtractor(int[] ngramSizes, boolean adjustValue) {
+		this.ngramSizes = ngramSizes.clone();
+		this.adjustValue = adjustValue;
+
+		int max = 0;
+		for (int nGramSize : ngramSizes) {
+			max = Math.max(max, nGramSize);
+		}
+		this.maxNgramSize = max;
+		this.sizePositions = new int[max + 1];
+		for (int ind = 0; ind <= max; ind++) {
+			sizePositions[ind] = -1;
+		}
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			sizePositions[ngramSizes[ind]] = ind;
+		}
+
+		this.wordNgrams = new long[ngramSizes.length][32];
+		this.wordNgramCounts = new int[ngramSizes.length];
+		this.wordChars = new char[32];
+	}
+
+	public int[] getNgramSizes() {
+		return ngramSizes.clone();
+	}
+
+	/**
+	 * adds ngrams of all words in the text to accumulators
+	 *
+	 * @param accumulators
+	 *            - one accumulator for each ngram size in the same order as
+	 *            sizes passed to constructor
+	 */
+	public void extract(CharSequence text, LongDoubleHashMap[] accumulators) {
+		if (text == null) {
+			return;
+		}
+		extract(text, 0, text.length(), accumulators);
+	}
+
+	/**
+	 * adds ngrams of all words in the region of the text to accumulators,
+	 * words crossing region boundaries are cut at the boundaries
+	 */
+	public void extract(CharSequence text, int start, int end, LongDoubleHashMap[] accumulators) {
+		extract(text, start, end, accumulators, null);
+	}
+
+	/**
+	 * same as extract but every word is also passed to the visitor in the
+	 * same pass
+	 *
+	 * @param visitor
+	 *            - receives words, can be null
+	 */
+	void extract(CharSequence text, int start, int end, LongDoubleHashMap[] accumulators, WordVisitor visitor) {
+		assert accumulators.length == ngramSizes.length : "need accumulator for each ngram size";
+		if (start >= end) {
+			return;
+		}
+		scanner.reset(text, start, end);
+		while (scanner.next()) {
+			addWord(scanner.getWord(), scanner.getLength(), accumulators, visitor);
+		}
+	}
+
+	private void addWord(char[] word, int wordLength, LongDoubleHashMap[] accumulators, WordVisitor visitor) {
+		// the value of ngram is adjusted for longer words, see
+		// NgramLanguageDetector.getNgramModelForText
+		double ngramValue = (!adjustValue || wordLength <= NgramLanguageDetector.WORD_LENGTH_BOUNDARY) ? 1.0
+				: ((double) NgramLanguageDetector.WORD_LENGTH_BOUNDARY) / ((double) wordLength);
+
+		// wrap word into boundary markers
+		int length = wordLength + 2;
+		if (wordChars.length < length) {
+			wordChars = new char[length * 2];
+		}
+		wordChars[0] = LanguageUtil.WORD_BOUNDARY_MARKER;
+		System.arraycopy(word, 0, wordChars, 1, wordLength);
+		wordChars[length - 1] = LanguageUtil.WORD_BOUNDARY_MARKER;
+		if (visitor != null) {
+			visitor.visitWord(wordChars, length, ngramValue);
+		}
+
+		for (int ind = 0; ind < wordNgramCounts.length; ind++) {
+			wordNgramCounts[ind] = 0;
+		}
+
+		for (int start = 0; start < length; start++) {
+			long hash = NgramHash.start();
+			int end = Math.min(length, start + maxNgramSize);
+			for (int pos = start; pos < end; pos++) {
+				char chr = wordChars[pos];
+				// all longer ngrams from this position contain this character
+				// as well so they are skipped too
+				if (LanguageUtil.isNgramBreak(chr)) {
+					break;
+				}
+				hash = NgramHash.extend(hash, chr);
+				int nGramSize = pos - start + 1;
+				int sizePosition = sizePositions[nGramSize];
+				if (sizePosition < 0 || (nGramSize == 1 && !LanguageUtil.isLetter(chr))) {
+					continue;
+				}
+				addDistinct(sizePosition, hash);
+			}
+		}
+
+		for (int ind = 0; ind < wordNgramCounts.length; ind++) {
+			long[] nGrams = wordNgrams[ind];
+			LongDoubleHashMap accumulator = accumulators[ind];
+			for (int nGram = 0; nGram < wordNgramCounts[ind]; nGram++) {
+				accumulator.add(nGrams[nGram], ngramValue);
+			}
+		}
+	}
+
+	private void addDistinct(int sizePosition, long hash) {
+		long[] nGrams = wordNgrams[sizePosition];
+		int count = wordNgramCounts[sizePosition];
+		// words are short so linear scan is cheaper than a set
+		for (int ind = 0; ind < count; ind++) {
+			if (nGrams[ind] == hash) {
+				return;
+			}
+		}
+		if (count == nGrams.length) {
+			long[] tmp = new long[count * 2];
+			System.arraycopy(nGrams, 0, tmp, 0, count);
+			nGrams = tmp;
+			wordNgrams[sizePosition] = nGrams;
+		}
+		nGrams[count] = hash;
+		wordNgramCounts[sizePosition] = count + 1;
+	}
+}
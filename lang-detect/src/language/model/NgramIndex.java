@@ -0,0 +1,924 @@
+package language.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import language.util.BlockedBloomFilter;
+import language.util.LongDoubleHashMap;
+import language.util.NgramHash;
+
+/**
+ * Inverted index over language models of one ngram size. Every ngram of any
+ * language model is mapped to a packed row of weights of all locales, this
+ * way text vector is walked only once and dot products for all locales are
+ * built up together instead of walking each language model separately.
+ *
+ * Rows are sorted by descending total weight so frequent ngrams of all
+ * languages are close to each other. Tables are held in buffers, index built
+ * from NgramModel is backed by heap arrays and index read from model bundle
+ * (see NgramModelBundle) uses memory mapped file directly. When vectorized
+ * dot product kernel is available weights are also packed into dense array
+ * per locale for it (see DotProductKernel), except mapped weights with
+ * NgramLanguageDetector.OFF_HEAP_PROPERTY on, which are only read from the
+ * mapped file by scalar kernel.
+ *
+ * Weights can be quantized to 16 or 8 bits with scale factor per language
+ * model, see WeightPrecision and quantize. Dot products are then summed over
+ * quantized values and scaled once per language at the end.
+ *
+ * Indexes with many locales also keep locale filters (see
+ * LOCALE_FILTERS_PROPERTY): bloom filter of all ngrams that rejects text
+ * ngrams none of the models has without probing the table, and bit set of
+ * locales that have each ngram, so only weights of those locales are read.
+ * Rows of such indexes are mostly zeros since each ngram is frequent in few
+ * languages only.
+ *
+ * Index is immutable once built and can be shared between threads.
+ *
+ * @author Andrey Gusev
+ */
+public class NgramIndex {
+
+	/**
+	 * on or off to force locale filters, by default they are used by indexes
+	 * with at least FILTER_MIN_LOCALES locales
+	 */
+	public static final String LOCALE_FILTERS_PROPERTY = "language.detector.localeFilters";
+	private static final int FILTER_MIN_LOCALES = 32;
+
+	private final int ngramSize;
+
+	// locales are columns of the index
+	private final Locale[] locales;
+	private final boolean[] hasModel;
+	// length norms of language models, 0 when there is no model
+	private final double[] modelNorms;
+	// largest weight and length of weights of each language model, computed
+	// on first use so mapped weights are not read when index is loaded
+	private final Lock WS = new ReentrantLock();
+	@GuardedBy("WS")
+	private volatile WeightStats weightStats;
+
+	// open addressing table that maps ngram hash to its row, each row has
+	// locales.length weights
+	private final LongBuffer keys;
+	private final IntBuffer rows;
+	private final int mask;
+	private final int numRows;
+	private final WeightPrecision precision;
+	// only one of weight tables is used depending on precision
+	private final DoubleBuffer weights;
+	private final ShortBuffer shortWeights;
+	private final ByteBuffer byteWeights;
+	// scale of quantized weights of each language model, null when weights
+	// are not quantized
+	private final double[] scales;
+	// all columns in order, used when all locales are scored
+	private final int[] allColumns;
+
+	// weights of each locale indexed by row for vectorized kernel, null
+	// when scalar kernel is used
+	private final DotProductKernel kernel;
+	private final double[][] columns;
+
+	// locale filters, null when they are not used
+	private final BlockedBloomFilter filter;
+	// bits of locales that have ngram of each row, wordsPerRow longs per row
+	private final long[] rowLocales;
+	private final int wordsPerRow;
+
+	/**
+	 * @param weights
+	 *            - DoubleBuffer, ShortBuffer or ByteBuffer depending on
+	 *            precision
+	 * @param scales
+	 *            - scale of each column, null if weights are not quantized
+	 */
+	private NgramIndex(int ngramSize, Locale[] locales, boolean[] hasModel, double[] modelNorms, LongBuffer keys,
+			IntBuffer rows, int numRows, WeightPrecision precision, double[] scales, Buffer weights) {
+		this.ngramSize = ngramSize;
+		this.locales = locales;
+		this.hasModel = hasModel;
+		this.modelNorms = modelNorms;
+		this.keys = keys;
+		this.rows = rows;
+		this.mask = keys.capacity() - 1;
+		this.numRows = numRows;
+		this.precision = precision;
+		this.scales = scales;
+		this.weights = precision == WeightPrecision.DOUBLE ? (DoubleBuffer) weights : null;
+		this.shortWeights = precision == WeightPrecision.SHORT ? (ShortBuffer) weights : null;
+		this.byteWeights = precision == WeightPrecision.BYTE ? (ByteBuffer) weights : null;
+
+		int numLocales = locales.length;
+		this.allColumns = new int[numLocales];
+		for (int col = 0; col < numLocales; col++) {
+			allColumns[col] = col;
+		}
+		// vectorized kernel works on double weights only, mapped weights are
+		// not copied to heap when model data is kept off heap
+		this.kernel = DotProductKernel.get();
+		this.columns = kernel.isVectorized() && precision == WeightPrecision.DOUBLE
+				&& !(weights.isDirect() && NgramLanguageDetector.isOffHeap()) ? getColumns() : null;
+
+		if (useLocaleFilters(numLocales)) {
+			this.filter = new BlockedBloomFilter(numRows);
+			for (int slot = 0; slot < keys.capacity(); slot++) {
+				if (rows.get(slot) != -1) {
+					filter.add(keys.get(slot));
+				}
+			}
+			this.wordsPerRow = (numLocales + 63) >>> 6;
+			this.rowLocales = new long[numRows * wordsPerRow];
+			for (int ind = 0; ind < numRows * numLocales; ind++) {
+				if (getRawWeight(ind) != 0) {
+					int row = ind / numLocales;
+					int col = ind % numLocales;
+					rowLocales[row * wordsPerRow + (col >>> 6)] |= 1L << col;
+				}
+			}
+		} else {
+			this.filter = null;
+			this.rowLocales = null;
+			this.wordsPerRow = 0;
+		}
+	}
+
+	private static boolean useLocaleFilters(int numLocales) {
+		String filters = System.getProperty(LOCALE_FILTERS_PROPERTY, "");
+		if ("on".equals(filters)) {
+			return true;
+		}
+		return !"off".equals(filters) && numLocales >= FILTER_MIN_LOCALES;
+	}
+
+	/**
+	 * @return whether bloom filter and locale bits of rows are used
+	 */
+	public boolean hasLocaleFilters() {
+		return filter != null;
+	}
+
+	/**
+	 * @return whether weights are also packed into heap columns for
+	 *         vectorized kernel
+	 */
+	boolean hasHeapColumns() {
+		return columns != null;
+	}
+
+	/**
+	 * @return weights packed into dense array per locale, null for locales
+	 *         without model
+	 */
+	double[][] getColumns() {
+		int numLocales = locales.length;
+		double[][] retVal = new double[numLocales][];
+		for (int col = 0; col < numLocales; col++) {
+			if (!hasModel[col]) {
+				continue;
+			}
+			retVal[col] = new double[numRows];
+			for (int row = 0; row < numRows; row++) {
+				retVal[col][row] = getWeight(row * numLocales + col);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Compiles index from language models of the same ngram size
+	 *
+	 * @param locales
+	 *            - locales that will become columns of the index
+	 * @param models
+	 *            - language models, locales without model are allowed
+	 */
+	public static NgramIndex build(int ngramSize, Locale[] locales, Map<Locale, NgramModel> models) {
+		int numLocales = locales.length;
+		boolean[] hasModel = new boolean[numLocales];
+		double[] modelNorms = new double[numLocales];
+
+		// first collect total weights of all distinct ngrams
+		final Map<String, Double> totals = new HashMap<>();
+		for (int col = 0; col < numLocales; col++) {
+			NgramModel model = models.get(locales[col]);
+			if (model == null) {
+				continue;
+			}
+			hasModel[col] = true;
+			modelNorms[col] = model.getLengthNorm();
+			for (Map.Entry<String, Double> entry : model.getTopNgrams().entrySet()) {
+				Double total = totals.get(entry.getKey());
+				totals.put(entry.getKey(), total == null ? entry.getValue() : total + entry.getValue());
+			}
+		}
+
+		// assign rows in descending order of total weight
+		List<String> sorted = new ArrayList<>(totals.keySet());
+		Collections.sort(sorted, new Comparator<String>() {
+
+			public int compare(String a, String b) {
+				int valCompare = totals.get(b).compareTo(totals.get(a));
+				return valCompare != 0 ? valCompare : a.compareTo(b);
+			}
+
+		});
+		Map<String, Integer> rows = new HashMap<>();
+		for (String nGram : sorted) {
+			rows.put(nGram, rows.size());
+		}
+
+		// now populate weights, missing ngrams have zero weight
+		double[] weights = new double[rows.size() * numLocales];
+		for (int col = 0; col < numLocales; col++) {
+			if (!hasModel[col]) {
+				continue;
+			}
+			for (Map.Entry<String, Double> entry : models.get(locales[col]).getTopNgrams().entrySet()) {
+				weights[rows.get(entry.getKey()) * numLocales + col] = entry.getValue();
+			}
+		}
+
+		// hash table with load factor of at most 0.5
+		int capacity = 16;
+		while (capacity < rows.size() * 2) {
+			capacity <<= 1;
+		}
+		long[] keys = new long[capacity];
+		int[] tableRows = new int[capacity];
+		Arrays.fill(tableRows, -1);
+		for (String nGram : sorted) {
+			long key = NgramHash.hash(nGram);
+			int slot = slot(key, capacity - 1);
+			while (tableRows[slot] != -1) {
+				if (keys[slot] == key) {
+					throw new RuntimeException("Ngram hash collision for: " + nGram);
+				}
+				slot = (slot + 1) & (capacity - 1);
+			}
+			keys[slot] = key;
+			tableRows[slot] = rows.get(nGram);
+		}
+
+		return new NgramIndex(ngramSize, locales.clone(), hasModel, modelNorms, LongBuffer.wrap(keys),
+				IntBuffer.wrap(tableRows), rows.size(), WeightPrecision.DOUBLE, null, DoubleBuffer.wrap(weights));
+	}
+
+	/**
+	 * Rebuilds language models that index was built from, models have only
+	 * ngrams that made it into the index and don't have ngrams of zero weight
+	 *
+	 * @param ngrams
+	 *            - ngram of each row, see NgramVocabulary.getNgrams, rows
+	 *            without ngram are skipped
+	 * @return models of locales that have model
+	 */
+	public Map<Locale, NgramModel> toModels(String[] ngrams) {
+		int numLocales = locales.length;
+		Map<Locale, NgramModel> retVal = new HashMap<>();
+		for (int col = 0; col < numLocales; col++) {
+			if (!hasModel[col]) {
+				continue;
+			}
+			NgramModel model = new NgramModel(locales[col], ngramSize);
+			for (int row = 0; row < numRows; row++) {
+				double weight = getWeight(row * numLocales + col);
+				if (ngrams[row] != null && weight != 0) {
+					model.addNormalizedNgram(ngrams[row], weight);
+				}
+			}
+			retVal.put(locales[col], model);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Copies index with weights of given precision, tables of ngrams are
+	 * shared with this index. Quantized weights are rounded to the nearest
+	 * multiple of scale of their language model, which is largest weight of
+	 * the model divided by largest quantized value.
+	 *
+	 * @return index with weights in given precision, this index if it
+	 *         already has it
+	 */
+	public NgramIndex quantize(WeightPrecision precision) {
+		if (precision == this.precision) {
+			return this;
+		}
+		int numLocales = locales.length;
+		int size = numRows * numLocales;
+		if (precision == WeightPrecision.DOUBLE) {
+			double[] retWeights = new double[size];
+			for (int ind = 0; ind < size; ind++) {
+				retWeights[ind] = getWeight(ind);
+			}
+			return new NgramIndex(ngramSize, locales, hasModel, modelNorms, keys, rows, numRows, precision, null,
+					DoubleBuffer.wrap(retWeights));
+		}
+
+		int maxValue = precision.getMaxValue();
+		double[] retScales = new double[numLocales];
+		for (int col = 0; col < numLocales; col++) {
+			retScales[col] = getMaxWeight(col) / maxValue;
+		}
+		short[] shorts = precision == WeightPrecision.SHORT ? new short[size] : null;
+		byte[] bytes = precision == WeightPrecision.BYTE ? new byte[size] : null;
+		for (int ind = 0; ind < size; ind++) {
+			double scale = retScales[ind % numLocales];
+			long value = scale > 0 ? Math.max(0, Math.min(maxValue, Math.round(getWeight(ind) / scale))) : 0;
+			if (shorts != null) {
+				shorts[ind] = (short) value;
+			} else {
+				bytes[ind] = (byte) value;
+			}
+		}
+		return new NgramIndex(ngramSize, locales, hasModel, modelNorms, keys, rows, numRows, precision, retScales,
+				shorts != null ? ShortBuffer.wrap(shorts) : ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Reads index written by write from current position of the buffer,
+	 * tables are views of the buffer so memory mapped buffer is used directly
+	 * without copying. Buffer position is moved after the index.
+	 *
+	 * @param locales
+	 *            - locales of the bundle, columns of the index
+	 */
+	static NgramIndex read(ByteBuffer buffer, Locale[] locales, int version) {
+		int numLocales = locales.length;
+		int ngramSize = buffer.getInt();
+		int capacity = buffer.getInt();
+		int numRows = buffer.getInt();
+		if (Integer.bitCount(capacity) != 1) {
+			throw new RuntimeException("Corrupted ngram index, capacity is not power of 2: " + capacity);
+		}
+		// first version had only double weights
+		WeightPrecision precision = version > 1 ? WeightPrecision.forBits(buffer.getInt()) : WeightPrecision.DOUBLE;
+
+		boolean[] hasModel = new boolean[numLocales];
+		double[] modelNorms = new double[numLocales];
+		for (int col = 0; col < numLocales; col++) {
+			hasModel[col] = buffer.get() != 0;
+		}
+		align(buffer);
+		for (int col = 0; col < numLocales; col++) {
+			modelNorms[col] = buffer.getDouble();
+		}
+		double[] scales = null;
+		if (precision != WeightPrecision.DOUBLE) {
+			scales = new double[numLocales];
+			for (int col = 0; col < numLocales; col++) {
+				scales[col] = buffer.getDouble();
+			}
+		}
+
+		LongBuffer keys = slice(buffer, capacity * 8).asLongBuffer();
+		IntBuffer rows = slice(buffer, capacity * 4).asIntBuffer();
+		align(buffer);
+		ByteBuffer weightBytes = slice(buffer, numRows * numLocales * precision.getBits() / 8);
+		Buffer weights;
+		switch (precision) {
+		case SHORT:
+			weights = weightBytes.asShortBuffer();
+			break;
+		case BYTE:
+			weights = weightBytes;
+			break;
+		default:
+			weights = weightBytes.asDoubleBuffer();
+		}
+
+		return new NgramIndex(ngramSize, locales.clone(), hasModel, modelNorms, keys, rows, numRows, precision,
+				scales, weights);
+	}
+
+	/**
+	 * Writes index in the format read by read, locales are not written since
+	 * they are shared by all indexes of the bundle. Tables are aligned to
+	 * 8 bytes from the start of the stream.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		int numLocales = locales.length;
+		out.writeInt(ngramSize);
+		out.writeInt(keys.capacity());
+		out.writeInt(numRows);
+		out.writeInt(precision.getBits());
+		for (int col = 0; col < numLocales; col++) {
+			out.writeByte(hasModel[col] ? 1 : 0);
+		}
+		align(out);
+		for (int col = 0; col < numLocales; col++) {
+			out.writeDouble(modelNorms[col]);
+		}
+		if (scales != null) {
+			for (int col = 0; col < numLocales; col++) {
+				out.writeDouble(scales[col]);
+			}
+		}
+		for (int slot = 0; slot < keys.capacity(); slot++) {
+			out.writeLong(keys.get(slot));
+		}
+		for (int slot = 0; slot < rows.capacity(); slot++) {
+			out.writeInt(rows.get(slot));
+		}
+		align(out);
+		int size = numRows * numLocales;
+		for (int ind = 0; ind < size; ind++) {
+			switch (precision) {
+			case SHORT:
+				out.writeShort(shortWeights.get(ind));
+				break;
+			case BYTE:
+				out.writeByte(byteWeights.get(ind));
+				break;
+			default:
+				out.writeDouble(weights.get(ind));
+			}
+		}
+	}
+
+	// 8 byte alignment keeps long and double tables aligned in mapped file
+	static void align(ByteBuffer buffer) {
+		buffer.position((buffer.position() + 7) & ~7);
+	}
+
+	static void align(DataOutputStream out) throws IOException {
+		while ((out.size() & 7) != 0) {
+			out.writeByte(0);
+		}
+	}
+
+	static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer retVal = buffer.slice();
+		retVal.limit(length);
+		retVal.order(buffer.order());
+		buffer.position(buffer.position() + length);
+		return retVal;
+	}
+
+	/**
+	 * calculates cosine similarity of text vector with all language models in
+	 * this index
+	 *
+	 * @param textVector
+	 *            - ngram hashes of the text with their values, see
+	 *            NgramExtractor
+	 * @return array of similarities indexed by column of the locale
+	 */
+	public double[] calculateCosineSimilarities(LongDoubleHashMap textVector) {
+		return calculateCosineSimilarities(textVector, new double[locales.length], null);
+	}
+
+	/**
+	 * same as calculateCosineSimilarities but result is written into given
+	 * array, so arrays can be reused between texts
+	 *
+	 * @param retVal
+	 *            - array of getNumLocales() similarities
+	 * @param scratch
+	 *            - array used to sort values of text vector, allocated if
+	 *            null or shorter than text vector
+	 */
+	public double[] calculateCosineSimilarities(LongDoubleHashMap textVector, double[] retVal, double[] scratch) {
+		return calculateCosineSimilarities(textVector, retVal, scratch, null);
+	}
+
+	/**
+	 * same as calculateCosineSimilarities but only columns of candidate
+	 * locales are computed, other columns are 0
+	 *
+	 * @param candidates
+	 *            - whether locale of each column is a candidate, null if all
+	 *            of them are
+	 */
+	public double[] calculateCosineSimilarities(LongDoubleHashMap textVector, double[] retVal, double[] scratch,
+			boolean[] candidates) {
+
+		int numLocales = locales.length;
+		Arrays.fill(retVal, 0, numLocales, 0);
+
+		int[] cols = getCandidateColumns(candidates);
+		if (cols.length == 0) {
+			return retVal;
+		}
+
+		// language models are already normalized so only text needs to be
+		double lengthNorm = getLengthNorm(textVector, NgramModel.getTopNgramsCount(ngramSize), scratch);
+		if (lengthNorm == 0) {
+			return retVal;
+		}
+
+		if (columns != null) {
+			double[][] candidateColumns = columns;
+			if (cols != allColumns) {
+				candidateColumns = new double[numLocales][];
+				for (int col : cols) {
+					candidateColumns[col] = columns[col];
+				}
+			}
+			addDotProducts(textVector, kernel, candidateColumns, retVal);
+		} else {
+			// candidate columns as bits to match locale bits of rows
+			long[] colBits = null;
+			if (rowLocales != null) {
+				colBits = new long[wordsPerRow];
+				for (int col : cols) {
+					colBits[col >>> 6] |= 1L << col;
+				}
+			}
+			for (int slot = 0; slot < textVector.slots(); slot++) {
+				if (!textVector.isSlotUsed(slot)) {
+					continue;
+				}
+				int row = getRow(textVector.keyAt(slot));
+				if (row < 0) {
+					continue;
+				}
+				if (colBits != null) {
+					addSparseRow(row, textVector.valueAt(slot), colBits, retVal);
+				} else {
+					addRow(row * numLocales, textVector.valueAt(slot), cols, retVal);
+				}
+			}
+		}
+
+		return normalize(retVal, cols, lengthNorm);
+	}
+
+	/**
+	 * same as calculateCosineSimilarities but ngrams of the text that are in
+	 * the index are already resolved to their rows, see NgramAutomaton
+	 *
+	 * @param textRows
+	 *            - rows of ngrams of the text, each row once
+	 * @param numTextRows
+	 *            - number of rows in textRows
+	 * @param rowValues
+	 *            - value of text ngram of each row, indexed by row
+	 * @param textVector
+	 *            - all ngrams of the text, only used for its length norm
+	 */
+	double[] calculateCosineSimilarities(int[] textRows, int numTextRows, double[] rowValues,
+			LongDoubleHashMap textVector, double[] retVal, double[] scratch, boolean[] candidates) {
+
+		int numLocales = locales.length;
+		Arrays.fill(retVal, 0, numLocales, 0);
+
+		int[] cols = getCandidateColumns(candidates);
+		if (cols.length == 0) {
+			return retVal;
+		}
+		double lengthNorm = getLengthNorm(textVector, NgramModel.getTopNgramsCount(ngramSize), scratch);
+		if (lengthNorm == 0) {
+			return retVal;
+		}
+
+		long[] colBits = null;
+		if (rowLocales != null) {
+			colBits = new long[wordsPerRow];
+			for (int col : cols) {
+				colBits[col >>> 6] |= 1L << col;
+			}
+		}
+		for (int ind = 0; ind < numTextRows; ind++) {
+			int row = textRows[ind];
+			if (colBits != null) {
+				addSparseRow(row, rowValues[row], colBits, retVal);
+			} else {
+				addRow(row * numLocales, rowValues[row], cols, retVal);
+			}
+		}
+
+		return normalize(retVal, cols, lengthNorm);
+	}
+
+	/**
+	 * @return columns of locales that have model and are candidates
+	 */
+	private int[] getCandidateColumns(boolean[] candidates) {
+		if (candidates == null) {
+			return allColumns;
+		}
+		int numCols = 0;
+		int[] cols = new int[locales.length];
+		for (int col = 0; col < locales.length; col++) {
+			if (candidates[col] && hasModel[col]) {
+				cols[numCols++] = col;
+			}
+		}
+		return Arrays.copyOf(cols, numCols);
+	}
+
+	/**
+	 * turns dot products of columns into cosine similarities
+	 */
+	private double[] normalize(double[] retVal, int[] cols, double lengthNorm) {
+		// quantized products are scaled once per language
+		if (scales != null) {
+			for (int col : cols) {
+				retVal[col] *= scales[col];
+			}
+		}
+		for (int col = 0; col < locales.length; col++) {
+			if (modelNorms[col] != 0) {
+				retVal[col] /= (lengthNorm * modelNorms[col]);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * adds weights of the ngram multiplied by value to dot products of all
+	 * locales, used to score text vector one ngram at a time
+	 *
+	 * @return false if none of the models has the ngram
+	 */
+	public boolean addDotProducts(long key, double value, double[] dotProducts) {
+		int row = getRow(key);
+		if (row < 0) {
+			return false;
+		}
+		int numLocales = locales.length;
+		int offset = row * numLocales;
+		if (rowLocales != null) {
+			// only locales that have the ngram
+			for (int word = 0; word < wordsPerRow; word++) {
+				long bits = rowLocales[row * wordsPerRow + word];
+				while (bits != 0) {
+					int col = (word << 6) + Long.numberOfTrailingZeros(bits);
+					dotProducts[col] += getWeight(offset + col) * value;
+					bits &= bits - 1;
+				}
+			}
+			return true;
+		}
+		for (int col = 0; col < numLocales; col++) {
+			dotProducts[col] += getWeight(offset + col) * value;
+		}
+		return true;
+	}
+
+	/**
+	 * same as addRow but only columns that have the ngram and are in colBits
+	 * are read, columns are added in the same order so results are the same
+	 */
+	private void addSparseRow(int row, double value, long[] colBits, double[] retVal) {
+		int offset = row * locales.length;
+		for (int word = 0; word < wordsPerRow; word++) {
+			long bits = rowLocales[row * wordsPerRow + word] & colBits[word];
+			while (bits != 0) {
+				int col = (word << 6) + Long.numberOfTrailingZeros(bits);
+				retVal[col] += getRawWeight(offset + col) * value;
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	/**
+	 * adds weights of the row at offset multiplied by value to retVal, for
+	 * quantized weights their quantized values are added without scale
+	 */
+	private void addRow(int offset, double value, int[] cols, double[] retVal) {
+		switch (precision) {
+		case SHORT:
+			for (int col : cols) {
+				retVal[col] += (shortWeights.get(offset + col) & 0xFFFF) * value;
+			}
+			break;
+		case BYTE:
+			for (int col : cols) {
+				retVal[col] += (byteWeights.get(offset + col) & 0xFF) * value;
+			}
+			break;
+		default:
+			for (int col : cols) {
+				retVal[col] += weights.get(offset + col) * value;
+			}
+		}
+	}
+
+	/**
+	 * @return weight at given position of weight table, quantized weight is
+	 *         multiplied by its scale
+	 */
+	private double getWeight(int ind) {
+		double weight = getRawWeight(ind);
+		return scales != null ? weight * scales[ind % locales.length] : weight;
+	}
+
+	/**
+	 * @return weight at given position of weight table, quantized weight
+	 *         without scale
+	 */
+	private double getRawWeight(int ind) {
+		switch (precision) {
+		case SHORT:
+			return shortWeights.get(ind) & 0xFFFF;
+		case BYTE:
+			return byteWeights.get(ind) & 0xFF;
+		default:
+			return weights.get(ind);
+		}
+	}
+
+	/**
+	 * @return whether any of the models has ngram with given hash
+	 */
+	public boolean contains(long key) {
+		return getRow(key) >= 0;
+	}
+
+	/**
+	 * @return row of the ngram with given hash or -1 if none of the models
+	 *         has it
+	 */
+	int getRow(long key) {
+		if (filter != null && !filter.mightContain(key)) {
+			return -1;
+		}
+		int slot = slot(key, mask);
+		int row;
+		while ((row = rows.get(slot)) != -1) {
+			if (keys.get(slot) == key) {
+				return row;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * adds dot products of text vector with all language models to retVal,
+	 * products are computed by kernel from weights packed by getColumns
+	 */
+	void addDotProducts(LongDoubleHashMap textVector, DotProductKernel kernel, double[][] columns, double[] retVal) {
+		int size = textVector.size();
+		int[] textRows = new int[size];
+		double[] textValues = new double[size];
+		int count = 0;
+		for (int slot = 0; slot < textVector.slots(); slot++) {
+			if (!textVector.isSlotUsed(slot)) {
+				continue;
+			}
+			int row = getRow(textVector.keyAt(slot));
+			if (row >= 0) {
+				textRows[count] = row;
+				textValues[count++] = textVector.valueAt(slot);
+			}
+		}
+		kernel.addDotProducts(columns, textRows, textValues, count, retVal);
+	}
+
+	/**
+	 * Computes length norm of text vector the same way as NgramModel does
+	 * for text model, only top maxNgrams + 1 values are used and they are
+	 * added in descending order
+	 */
+	static double getLengthNorm(LongDoubleHashMap textVector, int maxNgrams) {
+		return getLengthNorm(textVector, maxNgrams, null);
+	}
+
+	private static double getLengthNorm(LongDoubleHashMap textVector, int maxNgrams, double[] scratch) {
+		int size = textVector.size();
+		if (size == 0) {
+			return 0;
+		}
+		double[] values = textVector.values(scratch);
+		Arrays.sort(values, 0, size);
+
+		double lengthNorm = 0;
+		int last = Math.max(0, size - (maxNgrams + 1));
+		for (int ind = size - 1; ind >= last; ind--) {
+			lengthNorm += Math.pow(values[ind], 2);
+		}
+		return Math.sqrt(lengthNorm);
+	}
+
+	public int getNgramSize() {
+		return ngramSize;
+	}
+
+	public int getNumLocales() {
+		return locales.length;
+	}
+
+	public Locale getLocale(int col) {
+		return locales[col];
+	}
+
+	/**
+	 * @return length norm of language model in given column, 0 if there is
+	 *         no model
+	 */
+	public double getModelNorm(int col) {
+		return modelNorms[col];
+	}
+
+	/**
+	 * @return largest ngram weight of language model in given column
+	 */
+	public double getMaxWeight(int col) {
+		return getWeightStats().maxWeights[col];
+	}
+
+	/**
+	 * @return length of ngram weights of language model in given column as
+	 *         they are stored, quantized if index is quantized
+	 */
+	public double getWeightNorm(int col) {
+		return getWeightStats().weightNorms[col];
+	}
+
+	private WeightStats getWeightStats() {
+		// initialize only once
+		if (weightStats == null) {
+			WS.lock();
+			try {
+				if (weightStats == null) {
+					weightStats = new WeightStats(this);
+				}
+			} finally {
+				WS.unlock();
+			}
+		}
+		return weightStats;
+	}
+
+	/**
+	 * @return whether language model for locale in given column was loaded
+	 */
+	public boolean hasModel(int col) {
+		return hasModel[col];
+	}
+
+	/**
+	 * @return number of distinct ngrams in this index
+	 */
+	public int size() {
+		return numRows;
+	}
+
+	/**
+	 * @return precision of weights of this index
+	 */
+	public WeightPrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return number of bytes taken by weights of this index
+	 */
+	public long getWeightsSize() {
+		return (long) numRows * locales.length * precision.getBits() / 8;
+	}
+
+	/**
+	 * Largest weight and length of weights of each language model as they
+	 * are stored, length differs from model norm by rounding when weights
+	 * are quantized
+	 */
+	private static final class WeightStats {
+
+		private final double[] maxWeights;
+		private final double[] weightNorms;
+
+		private WeightStats(NgramIndex index) {
+			int numLocales = index.locales.length;
+			this.maxWeights = new double[numLocales];
+			this.weightNorms = new double[numLocales];
+			for (int ind = 0; ind < index.numRows * numLocales; ind++) {
+				int col = ind % numLocales;
+				double weight = index.getWeight(ind);
+				maxWeights[col] = Math.max(maxWeights[col], weight);
+				weightNorms[col] += weight * weight;
+			}
+			for (int col = 0; col < numLocales; col++) {
+				weightNorms[col] = Math.sqrt(weightNorms[col]);
+			}
+		}
+	}
+}
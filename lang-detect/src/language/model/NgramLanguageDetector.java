@@ -8,27 +8,39 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -36,7 +48,9 @@ import language.classifier.BaggedDecisionTreeClassifier;
 import language.classifier.Classifier;
 import language.classifier.LogisticRegressionClassifier;
 import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
 import language.util.Pair;
+import language.util.ScriptHistogram;
 
 /**
  * Uses ngram model in Eucledian ngram vector space to detect language of the
@@ -58,38 +72,62 @@ public class NgramLanguageDetector implements LanguageDetector {
 	public static final String LOGISTIC_CLASSFIER_DIR = "logisticClassifier";
 
 	public static final String UTF8 = "UTF-8";
+	// text model files are named locale_ngramSize
+	static final Pattern MODEL_FILE_PATTERN = Pattern.compile("(.+)_(\\d+)");
+
+	// keep model data in memory mapped files of model directory shared by
+	// JVMs of the host (on/off), ngram model bundle is always mapped
+	public static final String OFF_HEAP_PROPERTY = "language.detector.offHeap";
 
 	// classifier constants
-	private static final Double MIN_SCORE = 0.05;
-	private static final int WORD_LENGTH_BOUNDARY = 1;
+	static final Double MIN_SCORE = 0.05;
+	static final int WORD_LENGTH_BOUNDARY = 1;
 	private static final int DEFAULT_DECISION_TREE_BAGS = 10;
 	private static final ClassificationAlgorithm DEFAULT_CLASSIFIER = ClassificationAlgorithm.LINEAR_WEIGHTS;
+	// texts of the batch are handed out to threads in blocks of this size
+	private static final int BATCH_BLOCK_SIZE = 32;
 
-	// locales
+	// locales of bundled models, locales of detector are the ones found in
+	// its model directory, see getModelLocales
 	protected static final Locale[] LOCALES;
 	protected static final Map<String, Locale> LOCALE_MAP;
+	protected static final LocaleRegistry LOCALE_REGISTRY;
 
 	// format
 	protected static DecimalFormat decimalFormat;
 	private static final int scale = 3;
 
-	private final static Lock DF = new ReentrantLock();
-	private final static Lock LC = new ReentrantLock();
-	private final static Lock DS = new ReentrantLock();
+	private final static Lock BE = new ReentrantLock();
+	private final Lock DF = new ReentrantLock();
+	private final Lock LC = new ReentrantLock();
+	private final Lock DS = new ReentrantLock();
+	private final Lock AC = new ReentrantLock();
+
+	@GuardedBy("BE")
+	private static volatile ExecutorService BATCH_EXECUTOR;
 
-	// dataset cache
+	// dataset cache, features are in order of ids of locales of this
+	// detector
 	@GuardedBy("DS")
-	private static volatile List<LanguageDocumentExample> DATASET;
+	private volatile List<LanguageDocumentExample> dataset;
 
 	// cache of trained classifiers
 	@GuardedBy("DF")
-	private static volatile Map<Locale, Classifier<Double, Locale, LanguageDocumentExample>> DECISION_TREES;
+	private volatile Map<Locale, Classifier<Double, Locale, LanguageDocumentExample>> decisionTrees;
 	@GuardedBy("LC")
-	private static volatile Map<Locale, Classifier<Double, Locale, LanguageDocumentExample>> LOGISITIC_CLASSIFIERS;
+	private volatile Map<Locale, Classifier<Double, Locale, LanguageDocumentExample>> logisticClassifiers;
 
-	// main ngram models
-	private final Map<Pair<Locale, Integer>, NgramModel> languageNgramModels;
+	// main ngram models compiled into inverted index per ngram size
+	private final Map<Integer, NgramIndex> ngramIndexes;
 	protected final Integer[] ngramSet;
+	private final int[] ngramSizes;
+	// automaton of ngrams of all sizes, built on first use
+	@GuardedBy("AC")
+	private volatile NgramAutomaton automaton;
+	// ids of locales are columns of compiled models
+	private final LocaleRegistry localeRegistry;
+	// scripts of each locale, used to drop locales that can not match text
+	private final ScriptProfiles scriptProfiles;
 
 	protected final File basePath;
 
@@ -106,6 +144,7 @@ public class NgramLanguageDetector implements LanguageDetector {
 			tempMap.put(locale.toString(), locale);
 		}
 		LOCALE_MAP = Collections.unmodifiableMap(tempMap);
+		LOCALE_REGISTRY = new LocaleRegistry(LOCALES);
 	}
 
 	public NgramLanguageDetector(File basePath) {
@@ -125,9 +164,71 @@ public class NgramLanguageDetector implements LanguageDetector {
 		this.ngramSet = new Integer[ngrams.size()];
 		this.basePath = basePath;
 		ngrams.toArray(this.ngramSet);
+		this.ngramSizes = new int[this.ngramSet.length];
+		for (int ind = 0; ind < this.ngramSet.length; ind++) {
+			this.ngramSizes[ind] = this.ngramSet[ind];
+		}
 
 		// init all the models
-		this.languageNgramModels = Collections.unmodifiableMap(populateLanguageModels());
+		this.ngramIndexes = Collections.unmodifiableMap(quantize(populateLanguageModels(),
+				WeightPrecision.getConfigured()));
+		this.localeRegistry = getLocaleRegistry(this.ngramIndexes.values());
+		this.scriptProfiles = loadScriptProfiles();
+	}
+
+	/**
+	 * Creates detector with the same models as given detector but with
+	 * weights in given precision, used to measure error of quantized weights
+	 */
+	protected NgramLanguageDetector(NgramLanguageDetector detector, WeightPrecision precision) {
+		this.ngramSet = detector.ngramSet;
+		this.ngramSizes = detector.ngramSizes;
+		this.basePath = detector.basePath;
+		Map<Integer, NgramIndex> indexes = new HashMap<>();
+		for (Map.Entry<Integer, NgramIndex> entry : detector.ngramIndexes.entrySet()) {
+			indexes.put(entry.getKey(), entry.getValue().quantize(precision));
+		}
+		this.ngramIndexes = Collections.unmodifiableMap(indexes);
+		this.localeRegistry = detector.localeRegistry;
+		this.scriptProfiles = detector.scriptProfiles;
+	}
+
+	/**
+	 * @param precision
+	 *            - precision of weights, null to keep indexes as they are
+	 * @return indexes with weights in given precision, indexes with the same
+	 *         or lower precision are kept as they are
+	 */
+	protected static Map<Integer, NgramIndex> quantize(Map<Integer, NgramIndex> indexes, WeightPrecision precision) {
+		if (precision == null) {
+			return indexes;
+		}
+		Map<Integer, NgramIndex> retVal = new HashMap<>();
+		for (Map.Entry<Integer, NgramIndex> entry : indexes.entrySet()) {
+			NgramIndex index = entry.getValue();
+			retVal.put(entry.getKey(), index.getPrecision().getBits() > precision.getBits() ? index
+					.quantize(precision) : index);
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return registry whose ids are the same as columns of all indexes
+	 */
+	private static LocaleRegistry getLocaleRegistry(Collection<NgramIndex> indexes) {
+		Locale[] locales = null;
+		for (NgramIndex index : indexes) {
+			Locale[] indexLocales = new Locale[index.getNumLocales()];
+			for (int col = 0; col < indexLocales.length; col++) {
+				indexLocales[col] = index.getLocale(col);
+			}
+			if (locales == null) {
+				locales = indexLocales;
+			} else if (!Arrays.equals(locales, indexLocales)) {
+				throw new RuntimeException("Models of different ngram sizes have different locales");
+			}
+		}
+		return locales == null || LOCALE_REGISTRY.hasLocales(locales) ? LOCALE_REGISTRY : new LocaleRegistry(locales);
 	}
 
 	public final void logQuery(String q) {
@@ -191,7 +292,7 @@ public class NgramLanguageDetector implements LanguageDetector {
 		String locationBase = basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator;
 
 		List<LanguageDocumentExample> examples = new ArrayList<>();
-		outer: for (Locale positiveLocale : LOCALES) {
+		outer: for (Locale positiveLocale : localeRegistry.getLocales()) {
 			log.info("Reading data set for: " + positiveLocale);
 			String testSetLocation = locationBase + TRAINING_TEST_DIR + File.separator + positiveLocale.toString()
 					+ "_training";
@@ -235,20 +336,17 @@ public class NgramLanguageDetector implements LanguageDetector {
 	 */
 	protected final LanguageDocumentExample getExample(String s, boolean addLinearWeightFeature, Locale positiveLocale)
 			throws IOException {
-		LanguageDocumentExample example = new LanguageDocumentExample(positiveLocale);
-		for (int nGram : ngramSet) {
-			// calculate all cosine similarities for each language
-			Map<Locale, Double> rawSimilarities = getRawCosineSimilarities(s, nGram, true);
-			example.addFeatureValue(NgramLanguageModelFeature.getEnumByValue(nGram), rawSimilarities);
+		LanguageDocumentExample example = new LanguageDocumentExample(positiveLocale, localeRegistry);
+		// calculate all cosine similarities for each language
+		LocaleScores[] rawCosineSimilaties = getRawCosineSimilarities(s, ngramSizes, true);
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			example.addFeatureValue(NgramLanguageModelFeature.getEnumByValue(ngramSizes[ind]),
+					rawCosineSimilaties[ind]);
 		}
 		if (addLinearWeightFeature) {
 			// add special linear combination feature
-			Map<Locale, Double> linearCombination = new HashMap<>();
-			for (Entry<Locale, Double> entry : this.detectLanguageWithLinearWeights(s, false)) {
-				linearCombination.put(entry.getKey(), entry.getValue());
-			}
-
-			example.addFeatureValue(NgramLanguageModelFeature.LINEAR_COMBINATION, linearCombination);
+			example.addFeatureValue(NgramLanguageModelFeature.LINEAR_COMBINATION,
+					combineWithLinearWeights(rawCosineSimilaties, false));
 		}
 
 		return example;
@@ -271,12 +369,12 @@ public class NgramLanguageDetector implements LanguageDetector {
 				executor);
 
 		int numSubmitted = 0;
-		for (Locale positiveLocale : LOCALES) {
+		for (Locale positiveLocale : localeRegistry.getLocales()) {
 			log.info("Creating logistic regression classifier for: " + positiveLocale);
 			// just need one datum to establish dimensions
 			LanguageDocumentExample someExample = getTrainingExamples(true, 1, 0).get(0);
 			LogisticRegressionClassifier<Locale, LanguageDocumentExample> localeClassifier = new LogisticRegressionClassifier<>(
-					someExample.getFeatureValues(positiveLocale).size(), positiveLocale);
+					someExample.getFeatureVector(positiveLocale).length, positiveLocale);
 
 			// submit to read or train classifier
 			completionService.submit(new LogisticClassifierTrainer(localeClassifier, positiveLocale));
@@ -328,17 +426,17 @@ public class NgramLanguageDetector implements LanguageDetector {
 
 	protected List<LanguageDocumentExample> getCachedTrainingDataSet(boolean addLinearWeightFeature) throws IOException {
 		// lazy init
-		if (DATASET == null) {
+		if (dataset == null) {
 			DS.lock();
 			try {
-				if (DATASET == null) {
-					DATASET = getTrainingExamples(addLinearWeightFeature);
+				if (dataset == null) {
+					dataset = getTrainingExamples(addLinearWeightFeature);
 				}
 			} finally {
 				DS.unlock();
 			}
 		}
-		return DATASET;
+		return dataset;
 	}
 
 	protected String getLogisticClassifierFileCache(Locale locale) {
@@ -381,7 +479,7 @@ public class NgramLanguageDetector implements LanguageDetector {
 
 		Map<Locale, Classifier<Double, Locale, LanguageDocumentExample>> retVal = new HashMap<>();
 
-		for (Locale positiveLocale : LOCALES) {
+		for (Locale positiveLocale : localeRegistry.getLocales()) {
 			log.info("Creating bagged decision tree classifier for: " + positiveLocale);
 			BaggedDecisionTreeClassifier<Double, Locale, LanguageDocumentExample> localeBag = new BaggedDecisionTreeClassifier<>(
 					numBags, positiveLocale, NgramLanguageModelFeature.values());
@@ -417,7 +515,7 @@ public class NgramLanguageDetector implements LanguageDetector {
 		double highestConfidence = 0;
 
 		List<Locale> sameConfidenceLocale = new ArrayList<>();
-		for (Locale locale : LOCALES) {
+		for (Locale locale : localeRegistry.getLocales()) {
 
 			double confidenceLevel = classifiers.get(locale).getConfidenceLevel(example);
 			if (confidenceLevel > highestConfidence) {
@@ -431,9 +529,19 @@ public class NgramLanguageDetector implements LanguageDetector {
 			}
 		}
 
-		// we have matching highestConfidences return random one
+		// we have matching highestConfidences, usually classifiers saturated at
+		// 1.0, return the one with highest linear combination so result does
+		// not depend on state of the shared random
 		if (predictedLocale == null) {
-			return sameConfidenceLocale.get(rnd.nextInt(sameConfidenceLocale.size()));
+			LocaleScores linearScores = example.getFeatureValue(NgramLanguageModelFeature.LINEAR_COMBINATION);
+			if (linearScores == null) {
+				return sameConfidenceLocale.get(rnd.nextInt(sameConfidenceLocale.size()));
+			}
+			for (Locale locale : sameConfidenceLocale) {
+				if (predictedLocale == null || linearScores.get(locale) > linearScores.get(predictedLocale)) {
+					predictedLocale = locale;
+				}
+			}
 		}
 		return predictedLocale;
 	}
@@ -445,17 +553,17 @@ public class NgramLanguageDetector implements LanguageDetector {
 	private final Locale detectLanguageWithDecisionTree(String text) throws IOException {
 
 		// lazy init
-		if (DECISION_TREES == null) {
+		if (decisionTrees == null) {
 			DF.lock();
 			try {
-				if (DECISION_TREES == null) {
-					DECISION_TREES = Collections.unmodifiableMap(trainDecisionTree(DEFAULT_DECISION_TREE_BAGS));
+				if (decisionTrees == null) {
+					decisionTrees = Collections.unmodifiableMap(trainDecisionTree(DEFAULT_DECISION_TREE_BAGS));
 				}
 			} finally {
 				DF.unlock();
 			}
 		}
-		return detectLanguageClassifier(text, DECISION_TREES, true);
+		return detectLanguageClassifier(text, decisionTrees, true);
 	}
 
 	/**
@@ -464,17 +572,17 @@ public class NgramLanguageDetector implements LanguageDetector {
 	private final Locale detectLanguageWithLogisiticClassifier(String text) throws IOException {
 
 		// lazy init
-		if (LOGISITIC_CLASSIFIERS == null) {
+		if (logisticClassifiers == null) {
 			LC.lock();
 			try {
-				if (LOGISITIC_CLASSIFIERS == null) {
-					LOGISITIC_CLASSIFIERS = Collections.unmodifiableMap(trainLogisiticClassifier());
+				if (logisticClassifiers == null) {
+					logisticClassifiers = Collections.unmodifiableMap(trainLogisiticClassifier());
 				}
 			} finally {
 				LC.unlock();
 			}
 		}
-		return detectLanguageClassifier(text, LOGISITIC_CLASSIFIERS, true);
+		return detectLanguageClassifier(text, logisticClassifiers, true);
 	}
 
 	@Override
@@ -505,12 +613,7 @@ public class NgramLanguageDetector implements LanguageDetector {
 	 * @return most likely language
 	 */
 	public final Locale getLanguageWithLinerWeights(String text) throws IOException {
-		SortedSet<Entry<Locale, Double>> set = this.detectLanguageWithLinearWeights(text, true);
-		if (set != null && set.size() > 0) {
-			return set.first().getKey();
-		} else {
-			return null;
-		}
+		return getLinearWeightScores(text, true).getTopLocale();
 	}
 
 	/**
@@ -520,114 +623,691 @@ public class NgramLanguageDetector implements LanguageDetector {
 	@Override
 	public final SortedSet<Entry<Locale, Double>> detectLanguageWithLinearWeights(String text, boolean ignoreLowScores)
 			throws IOException {
+		return getLinearWeightScores(text, ignoreLowScores).toSortedSet();
+	}
+
+	/**
+	 * returns scores of languages that are most similar to given text, using
+	 * all nGram sizes specified for language detector, same as
+	 * detectLanguageWithLinearWeights without boxing and sorting
+	 */
+	public final LocaleScores getLinearWeightScores(String text, boolean ignoreLowScores) {
+
+		// first get all the raw cosine similarities, text is read once for
+		// all ngram sizes
+		return combineWithLinearWeights(getRawCosineSimilarities(text, ngramSizes, true), ignoreLowScores);
+	}
+
+	/**
+	 * @return registry of locales whose ids are used in scores of this
+	 *         detector
+	 */
+	public final LocaleRegistry getLocaleRegistry() {
+		return localeRegistry;
+	}
+
+	/**
+	 * Detects languages of many texts at once. Texts are handed out in blocks
+	 * to threads of shared pool, one per available processor, and every thread
+	 * reuses its text vectors and score arrays for all of its texts, see
+	 * LinearWeightsBatchScorer. Results are the same as of
+	 * getMostLikelyLanguage for each text.
+	 */
+	@Override
+	public final List<Locale> detectBatch(List<? extends CharSequence> texts,
+			final ClassificationAlgorithm algorithmToUse) throws IOException {
+
+		final Locale[] retVal = new Locale[texts.size()];
+		final List<? extends CharSequence> batch = texts instanceof RandomAccess ? texts : new ArrayList<>(texts);
+		final AtomicInteger nextBlock = new AtomicInteger();
+
+		Callable<Void> worker = new Callable<Void>() {
+
+			public Void call() throws IOException {
+				// classifiers have no scratch state to reuse
+				LinearWeightsBatchScorer scorer = null;
+				if (algorithmToUse == ClassificationAlgorithm.LINEAR_WEIGHTS) {
+					scorer = newBatchScorer();
+				}
+				int start;
+				while ((start = nextBlock.getAndAdd(BATCH_BLOCK_SIZE)) < retVal.length) {
+					int end = Math.min(retVal.length, start + BATCH_BLOCK_SIZE);
+					for (int ind = start; ind < end; ind++) {
+						CharSequence text = batch.get(ind);
+						retVal[ind] = scorer != null ? scorer.detect(text) : getMostLikelyLanguage(text.toString(),
+								algorithmToUse);
+					}
+				}
+				return null;
+			}
+
+		};
+
+		int numBlocks = (retVal.length + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+		int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), numBlocks);
+		if (numThreads <= 1) {
+			try {
+				worker.call();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return Collections.unmodifiableList(Arrays.asList(retVal));
+		}
+
+		ExecutorService executor = getBatchExecutor();
+		List<Future<Void>> futures = new ArrayList<>(numThreads);
+		for (int ind = 0; ind < numThreads; ind++) {
+			futures.add(executor.submit(worker));
+		}
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return Collections.unmodifiableList(Arrays.asList(retVal));
+	}
+
+	private LinearWeightsBatchScorer newBatchScorer() {
+		NgramIndex[] indexes = new NgramIndex[ngramSizes.length];
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			indexes[ind] = this.ngramIndexes.get(ngramSizes[ind]);
+		}
+		return new LinearWeightsBatchScorer(ngramSizes, indexes, localeRegistry, scriptProfiles);
+	}
+
+	/**
+	 * @return pool of daemon threads shared by batches of all detectors
+	 */
+	private static ExecutorService getBatchExecutor() {
+		// initialize only once
+		if (BATCH_EXECUTOR == null) {
+			BE.lock();
+			try {
+				if (BATCH_EXECUTOR == null) {
+					final AtomicInteger threadCount = new AtomicInteger();
+					BATCH_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+							new ThreadFactory() {
+
+								public Thread newThread(Runnable runnable) {
+									Thread thread = new Thread(runnable, "language-detector-batch-"
+											+ threadCount.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+
+							});
+				}
+			} finally {
+				BE.unlock();
+			}
+		}
+		return BATCH_EXECUTOR;
+	}
+
+	/**
+	 * @return new session for detecting language of text that arrives in
+	 *         chunks, see DetectionSession
+	 */
+	public final DetectionSession newSession() {
+		return new DetectionSession(this, ngramSizes, DetectionSession.DEFAULT_MAX_NGRAMS);
+	}
+
+	/**
+	 * @param maxNgrams
+	 *            - maximum number of distinct ngrams of each size kept by
+	 *            the session
+	 * @return new session for detecting language of text that arrives in
+	 *         chunks, see DetectionSession
+	 */
+	public final DetectionSession newSession(int maxNgrams) {
+		return new DetectionSession(this, ngramSizes, maxNgrams);
+	}
 
-		List<Map<Locale, Double>> listOfRawCosineSimilaties = new ArrayList<>(ngramSet.length);
+	/**
+	 * @return compiled models of given ngram size, null if there are none
+	 */
+	final NgramIndex getNgramIndex(int nGramSize) {
+		return this.ngramIndexes.get(nGramSize);
+	}
+
+	/**
+	 * Detects most likely language with linear weights, but stops scoring as
+	 * soon as leading language can not be overtaken by the rest of ngrams,
+	 * see BoundedLinearWeightsScorer. Returns the same language as
+	 * getLanguageWithLinerWeights.
+	 */
+	public final DetectionResult detectLanguageWithEarlyExit(String text) {
+		text = text.trim();
 
-		// first get all the raw cosine similarities
-		for (int nGramSize : ngramSet) {
-			listOfRawCosineSimilaties.add(getRawCosineSimilarities(text, nGramSize, true));
+		NgramIndex[] indexes = new NgramIndex[ngramSizes.length];
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			indexes[ind] = this.ngramIndexes.get(ngramSizes[ind]);
 		}
+		BoundedLinearWeightsScorer scorer = new BoundedLinearWeightsScorer(ngramSizes, indexes, localeRegistry,
+				getCandidates(text, 0, text.length()));
+		Locale leader = scorer.score(extractTextVectors(text, ngramSizes), text.length());
+		if (leader != null) {
+			return new DetectionResult(leader, true);
+		}
+
+		return new DetectionResult(combineWithLinearWeights(scorer.getSimilarities(), true).getTopLocale(), false);
+	}
+
+	/**
+	 * Detects most likely language of long text from sample of evenly spaced
+	 * windows that grows until the same language leads by default margin, see
+	 * AdaptiveSampler. Short texts are examined whole.
+	 */
+	public final DetectionResult detectLanguageWithSampling(CharSequence text) {
+		return detectLanguageWithSampling(text, AdaptiveSampler.DEFAULT_MIN_MARGIN);
+	}
+
+	/**
+	 * @param minMargin
+	 *            - how much linear weights score of leading language has to
+	 *            be above the next one for sampling to stop, higher margin
+	 *            examines more of the text
+	 * @return most likely language and fraction of the text that was examined
+	 */
+	public final DetectionResult detectLanguageWithSampling(CharSequence text, double minMargin) {
+		return new AdaptiveSampler(this, ngramSizes, minMargin).detect(text);
+	}
 
-		Map<Locale, Double> retValue = new HashMap<>();
+	/**
+	 * combines similarities of all ngram sizes into one score per language,
+	 * within each ngram size top similarity contributes 1/numOfModels
+	 */
+	final LocaleScores combineWithLinearWeights(LocaleScores[] rawCosineSimilaties, boolean ignoreLowScores) {
+		LocaleScores retValue = new LocaleScores(localeRegistry);
+		combineWithLinearWeights(rawCosineSimilaties, ignoreLowScores, retValue);
+		return retValue;
+	}
 
-		int numOfModels = listOfRawCosineSimilaties.size();
+	/**
+	 * same as combineWithLinearWeights but scores are written into given
+	 * scores that are cleared first
+	 */
+	static void combineWithLinearWeights(LocaleScores[] rawCosineSimilaties, boolean ignoreLowScores,
+			LocaleScores retValue) {
+
+		retValue.clear();
+		int numOfModels = rawCosineSimilaties.length;
+		int numLocales = retValue.getRegistry().size();
 
 		// for all raw cosine similarities create overall locale score
 		// that combines positional information in each return list of results
 		// TODO: maybe adding original scores will reflect matches better
-		for (Map<Locale, Double> rawCosineSimilarity : listOfRawCosineSimilaties) {
-			int counter = rawCosineSimilarity.size();
+		for (LocaleScores rawCosineSimilarity : rawCosineSimilaties) {
 			double maxScore = 0;
+			for (int id = 0; id < numLocales; id++) {
+				if (rawCosineSimilarity.hasScore(id)) {
+					maxScore = Math.max(maxScore, rawCosineSimilarity.get(id));
+				}
+			}
 
-			for (Entry<Locale, Double> entry : getValueSortedDescendingEntries(rawCosineSimilarity)) {
-
-				Double value = entry.getValue();
-				if (ignoreLowScores && value == 0) {
+			for (int id = 0; id < numLocales; id++) {
+				if (!rawCosineSimilarity.hasScore(id)) {
 					continue;
 				}
-				if (counter == rawCosineSimilarity.size()) {
-					maxScore = value;
-				}
-
+				double value = rawCosineSimilarity.get(id);
 				// ignore the scores that are very low
-				if (ignoreLowScores && value < MIN_SCORE) {
+				if (ignoreLowScores && (value == 0 || value < MIN_SCORE)) {
 					continue;
 				}
 
 				// normalize it so that top score is 1.00
-				Double currentValue = retValue.get(entry.getKey());
-				if (currentValue == null) {
-					currentValue = value > 0 ? (value / (maxScore * numOfModels)) : 0;
-				} else {
-					currentValue += value > 0 ? (value / (maxScore * numOfModels)) : 0;
-				}
-				retValue.put(entry.getKey(), currentValue);
-				counter--;
+				retValue.add(id, value > 0 ? (value / (maxScore * numOfModels)) : 0);
 			}
 		}
+	}
 
-		return getValueSortedDescendingEntries(retValue);
+	/**
+	 * return unsorted locales and their consine similarity to given text in
+	 * nGram space
+	 */
+	public final Map<Locale, Double> getRawCosineSimilarities(String text, int nGramSize, boolean addNgramWeight)
+			throws IOException {
+		return getRawCosineSimilarities(text, new int[] { nGramSize }, addNgramWeight)[0].toMap();
 	}
 
-	private SortedSet<Entry<Locale, Double>> getValueSortedDescendingEntries(Map<Locale, Double> map) {
-		SortedSet<Entry<Locale, Double>> retVal = new TreeSet<>(new Comparator<Entry<Locale, Double>>() {
+	/**
+	 * return locales and their cosine similarity to given text for each of
+	 * the nGram sizes, ngrams of all sizes are extracted in a single pass over
+	 * the text
+	 */
+	private LocaleScores[] getRawCosineSimilarities(String text, int[] nGramSizes, boolean addNgramWeight) {
 
-			public int compare(Entry<Locale, Double> a, Entry<Locale, Double> b) {
-				// since since we want reverse order list, we multiply by -1,
-				// fall back to lexicographic order of languages
-				int valCompare = a.getValue().compareTo(b.getValue()) * -1;
-				return valCompare != 0 ? valCompare : a.getKey().getLanguage().compareTo(b.getKey().getLanguage());
-			}
+		text = text.trim();
+
+		// long texts are split between threads, see ParallelNgramExtractor
+		if (ParallelNgramExtractor.isParallel(text.length())) {
+			ParallelNgramExtractor extractor = ParallelNgramExtractor.extract(text, 0, text.length(), nGramSizes);
+			return getRawCosineSimilaritiesInParallel(extractor.getTextVectors(), text.length(), nGramSizes,
+					addNgramWeight, getCandidates(extractor.getHistogram()));
+		}
 
-		});
+		boolean[] candidates = getCandidates(text, 0, text.length());
 
-		retVal.addAll(map.entrySet());
+		// model ngrams are matched by automaton in the same pass when it is
+		// configured, see NgramAutomaton
+		if (NgramAutomaton.isConfigured() && Arrays.equals(nGramSizes, ngramSizes)) {
+			NgramAutomaton automaton = getAutomaton();
+			NgramAutomaton.Scan scan = automaton.getScan();
+			scan.scan(automaton, text, 0, text.length());
+			return getRawCosineSimilarities(scan.getTextVectors(), text.length(), nGramSizes, addNgramWeight,
+					candidates, scan);
+		}
+
+		return getRawCosineSimilarities(extractTextVectors(text, nGramSizes), text.length(), nGramSizes,
+				addNgramWeight, candidates);
+	}
+
+	/**
+	 * @return which locale ids can be language of the text judging by
+	 *         scripts of its letters, see ScriptProfiles, null when all of
+	 *         them can
+	 */
+	final boolean[] getCandidates(CharSequence text, int start, int end) {
+		ScriptHistogram histogram = new ScriptHistogram();
+		histogram.add(text, start, end);
+		return scriptProfiles.getCandidates(histogram);
+	}
+
+	/**
+	 * @return which locale ids can be language of text with given letters,
+	 *         null when all of them can
+	 */
+	final boolean[] getCandidates(ScriptHistogram histogram) {
+		return scriptProfiles.getCandidates(histogram);
+	}
+
+	/**
+	 * @return scripts of locales that are used to prune candidate languages
+	 */
+	public final ScriptProfiles getScriptProfiles() {
+		return scriptProfiles;
+	}
+
+	/**
+	 * return locales and their cosine similarity to text vectors for each of
+	 * the nGram sizes, only locales whose models were loaded have similarity
+	 *
+	 * @param textLength
+	 *            - length of trimmed text, ngram sizes longer than text get
+	 *            zero similarity
+	 */
+	final LocaleScores[] getRawCosineSimilarities(LongDoubleHashMap[] textVectors, int textLength,
+			int[] nGramSizes, boolean addNgramWeight) {
+		return getRawCosineSimilarities(textVectors, textLength, nGramSizes, addNgramWeight, null);
+	}
+
+	/**
+	 * same as getRawCosineSimilarities but only locales that are candidates
+	 * are scored, others have no similarity
+	 *
+	 * @param candidates
+	 *            - candidate locale ids, see getCandidates, null if all
+	 *            locales are candidates
+	 */
+	final LocaleScores[] getRawCosineSimilarities(LongDoubleHashMap[] textVectors, int textLength,
+			int[] nGramSizes, boolean addNgramWeight, boolean[] candidates) {
+		return getRawCosineSimilarities(textVectors, textLength, nGramSizes, addNgramWeight, candidates, null);
+	}
+
+	/**
+	 * same as getRawCosineSimilarities but model ngrams of the text are
+	 * taken from the scan of automaton when it is not null
+	 */
+	private LocaleScores[] getRawCosineSimilarities(LongDoubleHashMap[] textVectors, int textLength,
+			int[] nGramSizes, boolean addNgramWeight, boolean[] candidates, NgramAutomaton.Scan scan) {
+
+		LocaleScores[] retVal = new LocaleScores[nGramSizes.length];
+		for (int ind = 0; ind < nGramSizes.length; ind++) {
+			retVal[ind] = getRawCosineSimilarities(ind, textVectors, textLength, nGramSizes, addNgramWeight,
+					candidates, scan);
+		}
 
 		return retVal;
 	}
 
 	/**
-	 * return unsorted locales and their consine similarity to given text in
-	 * nGram space
+	 * @return locales and their cosine similarity to text vector of ngram
+	 *         size at given position
 	 */
-	public final Map<Locale, Double> getRawCosineSimilarities(String text, int nGramSize, boolean addNgramWeight)
-			throws IOException {
+	private LocaleScores getRawCosineSimilarities(int ind, LongDoubleHashMap[] textVectors, int textLength,
+			int[] nGramSizes, boolean addNgramWeight, boolean[] candidates, NgramAutomaton.Scan scan) {
 
-		text = text.trim();
+		int nGramSize = nGramSizes[ind];
+		LocaleScores similarities = new LocaleScores(localeRegistry);
 
-		NgramModel textModel = text.length() >= nGramSize ? this.getNgramModelForText(text, new NgramModel(nGramSize),
-				true) : null;
+		NgramIndex index = this.ngramIndexes.get(nGramSize);
+		if (index == null) {
+			return similarities;
+		}
 
-		Map<Locale, Double> retVal = new HashMap<>();
+		// calculate cosine similarities with all candidate languages at once
+		double[] cosineSimilarities = null;
+		if (textLength >= nGramSize) {
+			cosineSimilarities = new double[index.getNumLocales()];
+			if (scan != null) {
+				scan.calculateCosineSimilarities(getAutomaton(), ind, cosineSimilarities, null, candidates);
+			} else {
+				index.calculateCosineSimilarities(textVectors[ind], cosineSimilarities, null, candidates);
+			}
+		}
 
-		for (Map.Entry<Pair<Locale, Integer>, NgramModel> model : this.languageNgramModels.entrySet()) {
-			// skip models that have different ngram size
-			if (model.getKey().getSecond() != nGramSize) {
+		for (int col = 0; col < index.getNumLocales(); col++) {
+			// skip languages for which model was not loaded or whose scripts
+			// are not in the text
+			if (!index.hasModel(col) || (candidates != null && !candidates[col])) {
 				continue;
 			}
-			// calculate cosine similarity
-			double cosineSimilarity = textModel != null ? model.getValue().calculateCosineSimilarity(textModel) : 0.00;
+			double cosineSimilarity = cosineSimilarities != null ? cosineSimilarities[col] : 0.00;
 			if (addNgramWeight) {
 				cosineSimilarity *= nGramSize;
 			}
-			retVal.put(model.getKey().getFirst(), cosineSimilarity);
+			// columns of index are ids of locales
+			similarities.set(col, cosineSimilarity);
 		}
 
+		return similarities;
+	}
+
+	/**
+	 * same as getRawCosineSimilarities but ngram sizes are scored on threads
+	 * of the pool of ParallelNgramExtractor, used for long texts
+	 */
+	private LocaleScores[] getRawCosineSimilaritiesInParallel(final LongDoubleHashMap[] textVectors,
+			final int textLength, final int[] nGramSizes, final boolean addNgramWeight, final boolean[] candidates) {
+
+		final LocaleScores[] retVal = new LocaleScores[nGramSizes.length];
+		List<Callable<Void>> tasks = new ArrayList<>(nGramSizes.length);
+		for (int ind = 0; ind < nGramSizes.length; ind++) {
+			final int position = ind;
+			tasks.add(new Callable<Void>() {
+
+				public Void call() {
+					retVal[position] = getRawCosineSimilarities(position, textVectors, textLength, nGramSizes,
+							addNgramWeight, candidates, null);
+					return null;
+				}
+
+			});
+		}
+		ParallelNgramExtractor.invokeAll(tasks);
+
 		return retVal;
 	}
 
-	private Map<Pair<Locale, Integer>, NgramModel> populateLanguageModels() {
+	/**
+	 * @return text vector for each of the nGram sizes, extracted in a single
+	 *         pass over the text
+	 */
+	final LongDoubleHashMap[] extractTextVectors(String text, int[] nGramSizes) {
+		LongDoubleHashMap[] textVectors = new LongDoubleHashMap[nGramSizes.length];
+		for (int ind = 0; ind < nGramSizes.length; ind++) {
+			textVectors[ind] = new LongDoubleHashMap();
+		}
+		new NgramExtractor(nGramSizes, true).extract(text, textVectors);
+		return textVectors;
+	}
+
+	/**
+	 * @return automaton of model ngrams of all ngram sizes of the detector
+	 */
+	final NgramAutomaton getAutomaton() {
+		// initialize only once
+		if (automaton == null) {
+			AC.lock();
+			try {
+				if (automaton == null) {
+					NgramVocabulary vocabulary = loadVocabulary();
+					if (vocabulary == null) {
+						throw new RuntimeException("No ngram vocabulary to build automaton from, convert models");
+					}
+					NgramIndex[] indexes = new NgramIndex[ngramSizes.length];
+					for (int ind = 0; ind < ngramSizes.length; ind++) {
+						indexes[ind] = this.ngramIndexes.get(ngramSizes[ind]);
+					}
+					automaton = new NgramAutomaton(vocabulary, ngramSizes, indexes);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to read ngram vocabulary", e);
+			} finally {
+				AC.unlock();
+			}
+		}
+		return automaton;
+	}
+
+	/**
+	 * Vocabulary is mapped from model bundle when it has ngrams of loaded
+	 * indexes, otherwise it is built from text models and then read from
+	 * bundle on classpath
+	 *
+	 * @return vocabulary of loaded indexes, null if there is none
+	 */
+	private NgramVocabulary loadVocabulary() throws IOException {
+		String locationBase = this.basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator;
+		File bundleFile = new File(locationBase + NgramModelBundle.BUNDLE_FILE);
+		if (bundleFile.exists()) {
+			NgramVocabulary vocabulary = NgramModelBundle.mapVocabulary(bundleFile);
+			if (vocabulary != null && matches(vocabulary)) {
+				return vocabulary;
+			}
+		}
+		if (new File(locationBase + NGRAM_MODEL_DIR).exists()) {
+			return NgramVocabulary.build(this.ngramIndexes, readTextModelFiles());
+		}
+		URL resource = NgramLanguageDetector.class.getResource("/" + BASE_MODEL_DIR + "/"
+				+ NgramModelBundle.BUNDLE_FILE);
+		if (resource != null) {
+			NgramVocabulary vocabulary = NgramModelBundle.loadVocabulary(resource);
+			if (vocabulary != null && matches(vocabulary)) {
+				return vocabulary;
+			}
+		}
+		return null;
+	}
+
+	private boolean matches(NgramVocabulary vocabulary) {
+		for (NgramIndex index : this.ngramIndexes.values()) {
+			if (!vocabulary.matches(index)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if model data should be kept off heap in memory mapped
+	 *         files, see OFF_HEAP_PROPERTY
+	 */
+	public static boolean isOffHeap() {
+		return "on".equalsIgnoreCase(System.getProperty(OFF_HEAP_PROPERTY, "").trim());
+	}
+
+	/**
+	 * Models are loaded from binary bundle when it is available (see
+	 * NgramModelBundle), first from model directory and then from classpath
+	 * if there are no text models in model directory. Otherwise, or when
+	 * bundle of model directory has other locales than its text models, text
+	 * models are read and compiled.
+	 */
+	private Map<Integer, NgramIndex> populateLanguageModels() {
+
+		String locationBase = this.basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator;
+		File bundleFile = new File(locationBase + NgramModelBundle.BUNDLE_FILE);
+
+		try {
+			Map<Integer, NgramIndex> bundle = null;
+			if (bundleFile.exists()) {
+				bundle = NgramModelBundle.map(bundleFile);
+				if (!matchesTextModels(bundle, bundleFile)) {
+					return readTextModels();
+				}
+			} else if (!new File(locationBase + NGRAM_MODEL_DIR).exists()) {
+				URL resource = NgramLanguageDetector.class.getResource("/" + BASE_MODEL_DIR + "/"
+						+ NgramModelBundle.BUNDLE_FILE);
+				if (resource != null) {
+					bundle = NgramModelBundle.load(resource);
+				}
+			}
 
-		Map<Pair<Locale, Integer>, NgramModel> retVal = new HashMap<>(32);
+			if (bundle != null) {
+				if (bundle.keySet().containsAll(Arrays.asList(ngramSet))) {
+					return bundle;
+				}
+				log.warning("Model bundle doesn't have all ngram sizes, reading text models");
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read model bundle", e);
+		}
+
+		return readTextModels();
+	}
+
+	/**
+	 * Bundle is written from text models by -convertModels, text models are
+	 * read instead of bundle with other locales so languages added as text
+	 * models are not dropped. Text models changed after the bundle was
+	 * written are only reported, times of files are not kept by checkouts.
+	 *
+	 * @return false if model directory has text models of other locales than
+	 *         the bundle
+	 */
+	private boolean matchesTextModels(Map<Integer, NgramIndex> bundle, File bundleFile) {
+		File modelDir = new File(bundleFile.getParentFile(), NGRAM_MODEL_DIR);
+		File[] files = modelDir.listFiles();
+		if (files == null) {
+			return true;
+		}
+
+		Set<Locale> textLocales = new HashSet<>(Arrays.asList(getModelLocales()));
+		for (NgramIndex index : bundle.values()) {
+			Set<Locale> bundleLocales = new HashSet<>();
+			for (int col = 0; col < index.getNumLocales(); col++) {
+				bundleLocales.add(index.getLocale(col));
+			}
+			if (!bundleLocales.equals(textLocales)) {
+				log.warning("Model bundle has locales " + bundleLocales + " but text models have " + textLocales
+						+ ", reading text models, run -convertModels to update " + bundleFile);
+				return false;
+			}
+		}
+
+		for (File file : files) {
+			if (MODEL_FILE_PATTERN.matcher(file.getName()).matches()
+					&& file.lastModified() > bundleFile.lastModified()) {
+				log.warning("Text model " + file + " is newer than model bundle, run -convertModels to update "
+						+ bundleFile);
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * reads text models from model directory and compiles them into index
+	 * per ngram size
+	 */
+	protected final Map<Integer, NgramIndex> readTextModels() {
+
+		Map<Integer, NgramIndex> retVal = new HashMap<>();
+		Locale[] locales = getModelLocales();
+		for (Map.Entry<Integer, Map<Locale, NgramModel>> entry : readTextModelFiles().entrySet()) {
+			retVal.put(entry.getKey(), NgramIndex.build(entry.getKey(), locales, entry.getValue()));
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * @return locales that have text models in model directory, see
+	 *         findLocales
+	 */
+	protected final Locale[] getModelLocales() {
+		File modelDir = new File(this.basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator
+				+ NGRAM_MODEL_DIR);
+		return findLocales(modelDir, MODEL_FILE_PATTERN);
+	}
+
+	/**
+	 * Finds locales of files in the directory, so new languages are added by
+	 * adding their files. Bundled locales come first in the order of
+	 * getLocales, so their ids don't change, and other locales follow sorted
+	 * by name.
+	 *
+	 * @param fileName
+	 *            - pattern of file names, first group is the locale
+	 * @return locales of the files, empty if directory doesn't exist
+	 */
+	protected static Locale[] findLocales(File dir, Pattern fileName) {
+		Set<String> found = new TreeSet<>();
+		String[] names = dir.list();
+		if (names != null) {
+			for (String name : names) {
+				Matcher matcher = fileName.matcher(name);
+				if (matcher.matches()) {
+					found.add(matcher.group(1));
+				}
+			}
+		}
+
+		List<Locale> retVal = new ArrayList<>();
+		for (Locale locale : LOCALES) {
+			if (found.remove(locale.toString())) {
+				retVal.add(locale);
+			}
+		}
+		for (String locale : found) {
+			retVal.add(toLocale(locale));
+		}
+		return retVal.toArray(new Locale[retVal.size()]);
+	}
+
+	/**
+	 * @return locale with given name (see Locale.toString), bundled locales
+	 *         are returned as they are
+	 */
+	static Locale toLocale(String name) {
+		Locale known = LOCALE_MAP.get(name);
+		if (known != null) {
+			return known;
+		}
+		String[] parts = name.split("_", 3);
+		return new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : "");
+	}
+
+	/**
+	 * reads text models from model directory
+	 *
+	 * @return models of each locale by ngram size
+	 */
+	protected final Map<Integer, Map<Locale, NgramModel>> readTextModelFiles() {
+
+		Map<Integer, Map<Locale, NgramModel>> retVal = new HashMap<>();
 
 		String configDir = this.basePath.getAbsolutePath();
 
 		String locationBase = configDir + File.separator + BASE_MODEL_DIR + File.separator;
 
+		Locale[] locales = getModelLocales();
 		for (Integer nGramSize : ngramSet) {
 
-			// populate the models and cache them
-			for (Locale locale : LOCALES) {
+			// populate the models
+			Map<Locale, NgramModel> models = new HashMap<>();
+			for (Locale locale : locales) {
 				Pair<Locale, Integer> key = new Pair<>(locale, nGramSize);
 
 				String modelLocation = locationBase + NGRAM_MODEL_DIR + File.separator + locale.toString() + "_"
@@ -638,17 +1318,87 @@ public class NgramLanguageDetector implements LanguageDetector {
 					continue;
 				}
 				try {
-					retVal.put(key, readModel(modelFile, locale, nGramSize));
+					models.put(locale, readModel(modelFile, locale, nGramSize));
 				} catch (IOException e) {
 					throw new RuntimeException("Failed to read model with key: " + key, e);
 				}
 			}
 
+			retVal.put(nGramSize, models);
 		}
 
 		return retVal;
 	}
 
+	/**
+	 * Script profiles are read from model directory, built from unigram text
+	 * models if there is no profiles file, then built from vocabulary of
+	 * model bundle and then read from classpath. Without profiles all
+	 * locales are always candidates.
+	 */
+	private ScriptProfiles loadScriptProfiles() {
+		String locationBase = this.basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator;
+		File profilesFile = new File(locationBase + ScriptProfiles.PROFILES_FILE);
+		try {
+			if (profilesFile.exists()) {
+				try (InputStream input = new FileInputStream(profilesFile)) {
+					return ScriptProfiles.read(input, localeRegistry);
+				}
+			}
+			if (new File(locationBase + NGRAM_MODEL_DIR).exists()) {
+				return buildScriptProfiles();
+			}
+			File bundleFile = new File(locationBase + NgramModelBundle.BUNDLE_FILE);
+			NgramIndex unigramIndex = this.ngramIndexes.get(1);
+			if (bundleFile.exists() && unigramIndex != null) {
+				NgramVocabulary vocabulary = NgramModelBundle.mapVocabulary(bundleFile);
+				if (vocabulary != null) {
+					Map<Locale, NgramModel> models = unigramIndex.toModels(vocabulary.getNgrams(unigramIndex));
+					NgramModel[] unigramModels = new NgramModel[localeRegistry.size()];
+					for (int id = 0; id < localeRegistry.size(); id++) {
+						unigramModels[id] = models.get(localeRegistry.getLocale(id));
+					}
+					return ScriptProfiles.build(localeRegistry, unigramModels);
+				}
+			}
+			URL resource = NgramLanguageDetector.class.getResource("/" + BASE_MODEL_DIR + "/"
+					+ ScriptProfiles.PROFILES_FILE);
+			if (resource != null) {
+				try (InputStream input = resource.openStream()) {
+					return ScriptProfiles.read(input, localeRegistry);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read script profiles", e);
+		}
+		log.warning("No script profiles, all languages are scored for every text");
+		return ScriptProfiles.empty(localeRegistry);
+	}
+
+	/**
+	 * builds script profiles of all locales from their unigram text models
+	 */
+	protected final ScriptProfiles buildScriptProfiles() throws IOException {
+		return buildScriptProfiles(localeRegistry);
+	}
+
+	/**
+	 * builds script profiles of locales of the registry from their unigram
+	 * text models
+	 */
+	protected final ScriptProfiles buildScriptProfiles(LocaleRegistry localeRegistry) throws IOException {
+		String locationBase = this.basePath.getAbsolutePath() + File.separator + BASE_MODEL_DIR + File.separator;
+		NgramModel[] unigramModels = new NgramModel[localeRegistry.size()];
+		for (int id = 0; id < localeRegistry.size(); id++) {
+			Locale locale = localeRegistry.getLocale(id);
+			File modelFile = new File(locationBase + NGRAM_MODEL_DIR + File.separator + locale.toString() + "_1");
+			if (modelFile.exists()) {
+				unigramModels[id] = readModel(modelFile, locale, 1);
+			}
+		}
+		return ScriptProfiles.build(localeRegistry, unigramModels);
+	}
+
 	private NgramModel readModel(File modeFile, Locale locale, int nSize) throws IOException {
 
 		NgramModel languageModel = new NgramModel(locale, nSize);
@@ -666,6 +1416,10 @@ public class NgramLanguageDetector implements LanguageDetector {
 		return languageModel;
 	}
 
+	/**
+	 * @return locales of bundled models, locales of the detector are in its
+	 *         registry, see getLocaleRegistry
+	 */
 	public static Locale[] getLocales() {
 		return LOCALES;
 	}
@@ -3,6 +3,7 @@ package language.model;
 import java.text.DecimalFormat;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -21,7 +22,19 @@ public class NgramModel {
 	private static final int BASE_TOP_NGRAMS = 50;
 	private final int actualTopNGrams;
 
-	private static DecimalFormat decimalFormat;
+	// DecimalFormat is not thread safe and models are written by several
+	// threads, see NgramLanguageDetectorWithUtils.generateLanguageModels
+	private static final ThreadLocal<DecimalFormat> decimalFormat = new ThreadLocal<DecimalFormat>() {
+
+		@Override
+		protected DecimalFormat initialValue() {
+			DecimalFormat retVal = new DecimalFormat();
+			retVal.setMinimumFractionDigits(scale);
+			retVal.setMaximumFractionDigits(scale);
+			return retVal;
+		}
+
+	};
 	private static final int scale = 3;
 	private Double lengthNorm;
 
@@ -34,12 +47,6 @@ public class NgramModel {
 
 	private final int ngramSize;
 
-	static {
-		decimalFormat = new DecimalFormat();
-		decimalFormat.setMinimumFractionDigits(scale);
-		decimalFormat.setMaximumFractionDigits(scale);
-	}
-
 	public NgramModel(int ngramSize) {
 		this(null, ngramSize);
 	}
@@ -54,8 +61,20 @@ public class NgramModel {
 			lengthNorm = 1.0;
 		}
 		this.ngramSize = ngramSize;
+		this.actualTopNGrams = getTopNgramsCount(this.ngramSize);
+	}
+
+	/**
+	 * @return number of top ngrams that participate in cosine similarity for
+	 *         models of given ngram size
+	 */
+	static int getTopNgramsCount(int ngramSize) {
 		// the longer the ngram = the more top ngrams we collect
-		this.actualTopNGrams = Math.min(BASE_TOP_NGRAMS * this.ngramSize, 150);
+		return Math.min(BASE_TOP_NGRAMS * ngramSize, 150);
+	}
+
+	public int getNgramSize() {
+		return this.ngramSize;
 	}
 
 	public Set<String> getNgrams(String word) {
@@ -172,6 +191,23 @@ public class NgramModel {
 		return cosineSimilarity / (lengthNormThis * lengthNormAnother);
 	}
 
+	/**
+	 * returns ngrams of this language model that participate in cosine
+	 * similarity in descending order of frequency
+	 */
+	Map<String, Double> getTopNgrams() {
+		Map<String, Double> retVal = new LinkedHashMap<>();
+		int counter = 0;
+		for (NGram ngram : getNgramsSortedByFrequency().keySet()) {
+			retVal.put(ngram.nGramValue, ngram.frequency);
+			counter++;
+			if (counter > this.actualTopNGrams) {
+				break;
+			}
+		}
+		return retVal;
+	}
+
 	public static final String NGRAM_SEPARTOR = ":";
 
 	/**
@@ -181,6 +217,7 @@ public class NgramModel {
 	public String toString() {
 
 		StringBuilder sb = new StringBuilder(128);
+		DecimalFormat decimalFormat = NgramModel.decimalFormat.get();
 		double lengthNormThis = this.getLengthNorm(this.actualTopNGrams);
 		int counter = 0;
 		for (NGram ngram : getNgramsSortedByFrequency().keySet()) {
@@ -197,6 +234,13 @@ public class NgramModel {
 		return sb.toString();
 	}
 
+	/**
+	 * @return length norm of top ngrams, 1 for normalized language model
+	 */
+	double getLengthNorm() {
+		return getLengthNorm(this.actualTopNGrams);
+	}
+
 	private double getLengthNorm(int maxNgrams) {
 		if (this.lengthNorm != null) {
 			return this.lengthNorm;
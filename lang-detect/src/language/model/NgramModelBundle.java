@@ -0,0 +1,232 @@
+package language.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary bundle of all ngram models compiled into NgramIndex per ngram size.
+ * Bundle is memory mapped and indexes use the mapped pages directly, so
+ * loading is almost free and all JVMs on the host share model pages through
+ * OS page cache.
+ *
+ * Format (big endian), long and double tables are aligned to 8 bytes, weights
+ * are stored in precision of the indexes (see WeightPrecision), bundles of
+ * version 1 have only double weights and bundles before version 3 have no
+ * vocabulary:
+ *
+ * <pre>
+ * int magic, int version
+ * int numLocales, numLocales x (short length, UTF-8 bytes) locale
+ * int numIndexes, numIndexes x NgramIndex (see NgramIndex.write)
+ * int hasVocabulary, NgramVocabulary if it is 1 (see NgramVocabulary.write)
+ * </pre>
+ *
+ * Bundle is created from text models with convert, see
+ * NgramLanguageDetectorWithUtils.convertLanguageModels.
+ *
+ * @author Andrey Gusev
+ */
+public class NgramModelBundle {
+
+	public static final String BUNDLE_FILE = "ngramModel.bin";
+
+	private static final int MAGIC = 0x4C444E42;
+	private static final int VERSION = 3;
+	private static final Charset UTF8 = Charset.forName(NgramLanguageDetector.UTF8);
+
+	private NgramModelBundle() {
+	}
+
+	/**
+	 * Writes indexes into the bundle file without vocabulary
+	 */
+	public static void write(Map<Integer, NgramIndex> indexes, File bundleFile) throws IOException {
+		write(indexes, null, bundleFile);
+	}
+
+	/**
+	 * Writes indexes and vocabulary of their ngrams into the bundle file,
+	 * file is written next to the target and moved in place so JVMs that
+	 * mapped previous bundle are not affected
+	 *
+	 * @param vocabulary
+	 *            - ngrams of indexes, null if bundle has no vocabulary
+	 */
+	public static void write(Map<Integer, NgramIndex> indexes, NgramVocabulary vocabulary, File bundleFile)
+			throws IOException {
+		if (indexes.isEmpty()) {
+			throw new IllegalArgumentException("No ngram indexes to write");
+		}
+		NgramIndex first = indexes.values().iterator().next();
+		Locale[] locales = new Locale[first.getNumLocales()];
+		for (int col = 0; col < locales.length; col++) {
+			locales[col] = first.getLocale(col);
+		}
+
+		File tmpFile = new File(bundleFile.getAbsolutePath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(locales.length);
+			for (Locale locale : locales) {
+				byte[] bytes = locale.toString().getBytes(UTF8);
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+
+			// sorted by ngram size so that output is stable
+			Map<Integer, NgramIndex> sorted = new TreeMap<>(indexes);
+			out.writeInt(sorted.size());
+			for (NgramIndex index : sorted.values()) {
+				for (int col = 0; col < locales.length; col++) {
+					if (!locales[col].equals(index.getLocale(col))) {
+						throw new IllegalArgumentException("All indexes of the bundle need the same locales");
+					}
+				}
+				index.write(out);
+			}
+
+			out.writeInt(vocabulary != null ? 1 : 0);
+			if (vocabulary != null) {
+				vocabulary.write(out);
+			}
+		}
+		Files.move(tmpFile.toPath(), bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Memory maps bundle file
+	 *
+	 * @return indexes by ngram size
+	 */
+	public static Map<Integer, NgramIndex> map(File bundleFile) throws IOException {
+		return read(mapFile(bundleFile));
+	}
+
+	/**
+	 * Memory maps vocabulary of the bundle file
+	 *
+	 * @return vocabulary of the bundle, null if bundle has none
+	 */
+	public static NgramVocabulary mapVocabulary(File bundleFile) throws IOException {
+		return readVocabulary(mapFile(bundleFile));
+	}
+
+	private static ByteBuffer mapFile(File bundleFile) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(bundleFile, "r"); FileChannel channel = file.getChannel()) {
+			// mapping stays valid after channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Loads bundle from classpath resource, bundle is memory mapped when
+	 * resource is a plain file and copied into direct buffer otherwise (for
+	 * example from jar)
+	 *
+	 * @return indexes by ngram size
+	 */
+	public static Map<Integer, NgramIndex> load(URL resource) throws IOException {
+		return read(loadFile(resource));
+	}
+
+	/**
+	 * Loads vocabulary of the bundle from classpath resource the same way as
+	 * load
+	 *
+	 * @return vocabulary of the bundle, null if bundle has none
+	 */
+	public static NgramVocabulary loadVocabulary(URL resource) throws IOException {
+		return readVocabulary(loadFile(resource));
+	}
+
+	private static ByteBuffer loadFile(URL resource) throws IOException {
+		if ("file".equals(resource.getProtocol())) {
+			try {
+				return mapFile(new File(resource.toURI()));
+			} catch (URISyntaxException e) {
+				// fall back to reading the stream
+			}
+		}
+
+		try (InputStream in = resource.openStream()) {
+			byte[] bytes = new byte[64 * 1024];
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+			int read;
+			while ((read = in.read(bytes)) != -1) {
+				if (buffer.remaining() < read) {
+					ByteBuffer tmp = ByteBuffer.allocateDirect(buffer.capacity() * 2 + read);
+					buffer.flip();
+					tmp.put(buffer);
+					buffer = tmp;
+				}
+				buffer.put(bytes, 0, read);
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads vocabulary of the bundle from the buffer, vocabulary is view of
+	 * the buffer
+	 *
+	 * @return vocabulary of the bundle, null if bundle has none
+	 */
+	public static NgramVocabulary readVocabulary(ByteBuffer buffer) {
+		ByteBuffer bundle = buffer.duplicate();
+		int version = bundle.getInt(bundle.position() + 4);
+		read(bundle);
+		if (version < 3 || bundle.getInt() == 0) {
+			return null;
+		}
+		return NgramVocabulary.read(bundle);
+	}
+
+	/**
+	 * Reads bundle from the buffer, indexes are views of the buffer. Buffer
+	 * position is moved after the indexes.
+	 *
+	 * @return indexes by ngram size
+	 */
+	public static Map<Integer, NgramIndex> read(ByteBuffer buffer) {
+		if (buffer.getInt() != MAGIC) {
+			throw new RuntimeException("Not an ngram model bundle");
+		}
+		int version = buffer.getInt();
+		if (version < 1 || version > VERSION) {
+			throw new RuntimeException("Unsupported ngram model bundle version: " + version);
+		}
+
+		Locale[] locales = new Locale[buffer.getInt()];
+		for (int col = 0; col < locales.length; col++) {
+			byte[] bytes = new byte[buffer.getShort()];
+			buffer.get(bytes);
+			locales[col] = NgramLanguageDetector.toLocale(new String(bytes, UTF8));
+		}
+
+		Map<Integer, NgramIndex> retVal = new TreeMap<>();
+		int numIndexes = buffer.getInt();
+		for (int ind = 0; ind < numIndexes; ind++) {
+			NgramIndex index = NgramIndex.read(buffer, locales, version);
+			retVal.put(index.getNgramSize(), index);
+		}
+		return Collections.unmodifiableMap(retVal);
+	}
+}
@@ -0,0 +1,302 @@
+package language.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+import language.util.NgramHash;
+
+/**
+ * Ngrams of all locales and all ngram sizes stored once in a trie, so
+ * ngrams share their prefixes with each other and with ngrams of smaller
+ * sizes ($th, $the, $ther...). Node of the trie at depth n that ends an
+ * ngram holds row of the ngram in NgramIndex of size n, weights of all
+ * locales are in that row.
+ *
+ * Nodes are numbered in breadth first order and children of every node are
+ * consecutive and sorted by character, so the trie is three flat tables:
+ * first child of each node, character of each node and row of each node.
+ * Tables are buffers and trie read from model bundle uses memory mapped
+ * file directly, see NgramModelBundle.
+ *
+ * Indexes map ngrams to rows by hash and don't keep ngrams themselves,
+ * vocabulary is used to get them back, for example to rebuild language
+ * models from the bundle.
+ *
+ * Vocabulary is immutable once built and can be shared between threads.
+ *
+ * @author Andrey Gusev
+ */
+public final class NgramVocabulary {
+
+	private final int numNodes;
+	// children of node i are nodes firstChild[i] to firstChild[i + 1] - 1
+	private final IntBuffer firstChild;
+	private final CharBuffer labels;
+	// row in index of size equal to depth of the node, -1 if no ngram ends
+	// at the node
+	private final IntBuffer rows;
+
+	private NgramVocabulary(int numNodes, IntBuffer firstChild, CharBuffer labels, IntBuffer rows) {
+		this.numNodes = numNodes;
+		this.firstChild = firstChild;
+		this.labels = labels;
+		this.rows = rows;
+	}
+
+	/**
+	 * Builds vocabulary of ngrams of indexes
+	 *
+	 * @param indexes
+	 *            - indexes by ngram size
+	 * @param models
+	 *            - models that indexes were built from by ngram size, only
+	 *            ngrams are used
+	 */
+	public static NgramVocabulary build(Map<Integer, NgramIndex> indexes,
+			Map<Integer, Map<Locale, NgramModel>> models) {
+		TrieNode root = new TrieNode();
+		for (Map.Entry<Integer, Map<Locale, NgramModel>> entry : models.entrySet()) {
+			NgramIndex index = indexes.get(entry.getKey());
+			if (index == null) {
+				continue;
+			}
+			for (NgramModel model : entry.getValue().values()) {
+				for (String nGram : model.getTopNgrams().keySet()) {
+					if (nGram.length() != index.getNgramSize()) {
+						throw new IllegalArgumentException("Ngram " + nGram + " is not of size "
+								+ index.getNgramSize());
+					}
+					TrieNode node = root;
+					for (int ind = 0; ind < nGram.length(); ind++) {
+						node = node.getChild(nGram.charAt(ind));
+					}
+					node.row = index.getRow(NgramHash.hash(nGram));
+				}
+			}
+		}
+
+		// number nodes in breadth first order
+		int numNodes = root.count();
+		int[] firstChild = new int[numNodes + 1];
+		char[] labels = new char[numNodes];
+		int[] rows = new int[numNodes];
+		Queue<TrieNode> queue = new ArrayDeque<>();
+		queue.add(root);
+		int node = 0;
+		int nextChild = 1;
+		while (!queue.isEmpty()) {
+			TrieNode current = queue.remove();
+			labels[node] = current.label;
+			rows[node] = current.row;
+			firstChild[node] = nextChild;
+			for (TrieNode child : current.children.values()) {
+				queue.add(child);
+				nextChild++;
+			}
+			node++;
+		}
+		firstChild[numNodes] = nextChild;
+
+		return new NgramVocabulary(numNodes, IntBuffer.wrap(firstChild), CharBuffer.wrap(labels),
+				IntBuffer.wrap(rows));
+	}
+
+	/**
+	 * Reads vocabulary written by write from current position of the buffer,
+	 * tables are views of the buffer. Buffer position is moved after the
+	 * vocabulary.
+	 */
+	static NgramVocabulary read(ByteBuffer buffer) {
+		int numNodes = buffer.getInt();
+		NgramIndex.align(buffer);
+		IntBuffer firstChild = NgramIndex.slice(buffer, (numNodes + 1) * 4).asIntBuffer();
+		IntBuffer rows = NgramIndex.slice(buffer, numNodes * 4).asIntBuffer();
+		CharBuffer labels = NgramIndex.slice(buffer, numNodes * 2).asCharBuffer();
+		return new NgramVocabulary(numNodes, firstChild, labels, rows);
+	}
+
+	/**
+	 * Writes vocabulary in the format read by read
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(numNodes);
+		NgramIndex.align(out);
+		for (int node = 0; node <= numNodes; node++) {
+			out.writeInt(firstChild.get(node));
+		}
+		for (int node = 0; node < numNodes; node++) {
+			out.writeInt(rows.get(node));
+		}
+		for (int node = 0; node < numNodes; node++) {
+			out.writeChar(labels.get(node));
+		}
+	}
+
+	/**
+	 * @return row of the ngram in index of its size, -1 if there is no such
+	 *         ngram
+	 */
+	public int getRow(CharSequence nGram) {
+		int node = 0;
+		for (int ind = 0; ind < nGram.length() && node >= 0; ind++) {
+			node = getChild(node, nGram.charAt(ind));
+		}
+		return node > 0 ? rows.get(node) : -1;
+	}
+
+	/**
+	 * @return ngrams of given size indexed by their row, null for rows that
+	 *         are not in the vocabulary
+	 */
+	public String[] getNgrams(NgramIndex index) {
+		String[] retVal = new String[index.size()];
+		int nGramSize = index.getNgramSize();
+
+		// walk nodes level by level keeping parent of each node, children of
+		// nodes of one level are the next level
+		int[] parents = new int[numNodes];
+		int levelStart = 0;
+		int levelEnd = 1;
+		for (int depth = 0; depth < nGramSize; depth++) {
+			for (int node = levelStart; node < levelEnd; node++) {
+				for (int child = firstChild.get(node); child < firstChild.get(node + 1); child++) {
+					parents[child] = node;
+				}
+			}
+			int nextStart = firstChild.get(levelStart);
+			levelEnd = firstChild.get(levelEnd);
+			levelStart = nextStart;
+		}
+
+		char[] chars = new char[nGramSize];
+		for (int node = levelStart; node < levelEnd; node++) {
+			int row = rows.get(node);
+			if (row < 0) {
+				continue;
+			}
+			int current = node;
+			for (int ind = nGramSize - 1; ind >= 0; ind--) {
+				chars[ind] = labels.get(current);
+				current = parents[current];
+			}
+			retVal[row] = new String(chars);
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return whether vocabulary has every ngram of the index in its row
+	 */
+	public boolean matches(NgramIndex index) {
+		String[] ngrams = getNgrams(index);
+		for (int row = 0; row < ngrams.length; row++) {
+			if (ngrams[row] == null || index.getRow(NgramHash.hash(ngrams[row])) != row) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of ngrams in the vocabulary
+	 */
+	public int size() {
+		int retVal = 0;
+		for (int node = 0; node < numNodes; node++) {
+			if (rows.get(node) >= 0) {
+				retVal++;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return number of bytes taken by tables of the trie
+	 */
+	public long getSizeInBytes() {
+		return (numNodes + 1) * 4L + numNodes * 4L + numNodes * 2L;
+	}
+
+	/**
+	 * @return number of nodes of the trie, root is node 0
+	 */
+	int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * @return first child of the node, children of the node are nodes from
+	 *         first child of the node to first child of the next node
+	 */
+	int getFirstChild(int node) {
+		return firstChild.get(node);
+	}
+
+	/**
+	 * @return last character of ngram of the node
+	 */
+	char getLabel(int node) {
+		return labels.get(node);
+	}
+
+	/**
+	 * @return row of ngram of the node in index of its size, -1 if no ngram
+	 *         ends at the node
+	 */
+	int getNodeRow(int node) {
+		return rows.get(node);
+	}
+
+	/**
+	 * @return child of the node with given character, -1 if there is none
+	 */
+	int getChild(int node, char chr) {
+		int low = firstChild.get(node);
+		int high = firstChild.get(node + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char label = labels.get(mid);
+			if (label < chr) {
+				low = mid + 1;
+			} else if (label > chr) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static final class TrieNode {
+
+		private final TreeMap<Character, TrieNode> children = new TreeMap<>();
+		private char label;
+		private int row = -1;
+
+		private TrieNode getChild(char chr) {
+			TrieNode child = children.get(chr);
+			if (child == null) {
+				child = new TrieNode();
+				child.label = chr;
+				children.put(chr, child);
+			}
+			return child;
+		}
+
+		private int count() {
+			int retVal = 1;
+			for (TrieNode child : children.values()) {
+				retVal += child.count();
+			}
+			return retVal;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package language.model;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import language.util.LanguageUtil;
+import language.util.LongDoubleHashMap;
+import language.util.ScriptHistogram;
+
+/**
+ * Extracts text vectors and letter scripts of a long text with fork/join.
+ * Text is split in halves at word delimiters until parts are short enough,
+ * parts are extracted by NgramExtractor on threads of a shared pool and
+ * their vectors are merged back pairwise. Words are never cut, so merged
+ * vectors have the same ngrams as vectors extracted in one pass and values
+ * are the same up to rounding (values of an ngram are added in different
+ * order). Ngram sizes of the text are then scored on the same pool, see
+ * NgramLanguageDetector.getRawCosineSimilaritiesInParallel.
+ *
+ * Texts are extracted in parallel when they are at least as long as system
+ * property language.detector.parallelThreshold (characters, 0 disables),
+ * DEFAULT_THRESHOLD by default, shorter texts are not worth handing over to
+ * other threads.
+ *
+ * @author Andrey Gusev
+ */
+public final class ParallelNgramExtractor {
+
+	public static final String THRESHOLD_PROPERTY = "language.detector.parallelThreshold";
+	static final int DEFAULT_THRESHOLD = 32768;
+
+	// parts are not split further below this length
+	private static final int MIN_PART_LENGTH = 4096;
+	// parts per thread of the pool, so threads that finish early take over
+	// work of others
+	private static final int PARTS_PER_THREAD = 2;
+
+	private final static Lock FJ = new ReentrantLock();
+
+	@GuardedBy("FJ")
+	private static volatile ForkJoinPool POOL;
+
+	private final int[] ngramSizes;
+	private final LongDoubleHashMap[] textVectors;
+	private final ScriptHistogram histogram;
+
+	private ParallelNgramExtractor(int[] ngramSizes, LongDoubleHashMap[] textVectors, ScriptHistogram histogram) {
+		this.ngramSizes = ngramSizes;
+		this.textVectors = textVectors;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @return minimum length of text that is extracted in parallel, see
+	 *         THRESHOLD_PROPERTY, 0 if texts are never extracted in parallel
+	 */
+	public static int getThreshold() {
+		String threshold = System.getProperty(THRESHOLD_PROPERTY);
+		if (threshold == null || threshold.trim().isEmpty()) {
+			return DEFAULT_THRESHOLD;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(threshold.trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Unsupported parallel threshold: " + threshold, e);
+		}
+	}
+
+	/**
+	 * @return whether region of given length is extracted in parallel
+	 */
+	static boolean isParallel(int length) {
+		int threshold = getThreshold();
+		return threshold > 0 && length >= threshold && getPool().getParallelism() > 1;
+	}
+
+	/**
+	 * extracts ngrams of the region of the text in parallel
+	 *
+	 * @return extractor with text vectors in the order of ngram sizes and
+	 *         letters of the region
+	 */
+	static ParallelNgramExtractor extract(CharSequence text, int start, int end, int[] ngramSizes) {
+		int partLength = Math.max(MIN_PART_LENGTH, (end - start) / (getPool().getParallelism() * PARTS_PER_THREAD));
+		Part part = new Part(text, start, end, ngramSizes, partLength);
+		getPool().invoke(part);
+		return part.result;
+	}
+
+	LongDoubleHashMap[] getTextVectors() {
+		return textVectors;
+	}
+
+	ScriptHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return number of ngrams of all sizes
+	 */
+	private int size() {
+		int retVal = 0;
+		for (LongDoubleHashMap textVector : textVectors) {
+			retVal += textVector.size();
+		}
+		return retVal;
+	}
+
+	/**
+	 * adds vectors and letters of another part of the text
+	 */
+	private void addAll(ParallelNgramExtractor another) {
+		for (int ind = 0; ind < ngramSizes.length; ind++) {
+			textVectors[ind].addAll(another.textVectors[ind]);
+		}
+		histogram.addAll(another.histogram);
+	}
+
+	/**
+	 * runs the tasks on threads of the pool and waits for all of them
+	 */
+	static void invokeAll(List<Callable<Void>> tasks) {
+		for (Future<Void> future : getPool().invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * @return pool of daemon threads shared by all detectors
+	 */
+	private static ForkJoinPool getPool() {
+		// initialize only once
+		if (POOL == null) {
+			FJ.lock();
+			try {
+				if (POOL == null) {
+					POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+				}
+			} finally {
+				FJ.unlock();
+			}
+		}
+		return POOL;
+	}
+
+	/**
+	 * Region of the text, extracted directly when it is short enough and
+	 * split in halves at a word delimiter otherwise
+	 */
+	private static final class Part extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence text;
+		private final int start;
+		private final int end;
+		private final int[] ngramSizes;
+		private final int partLength;
+
+		private ParallelNgramExtractor result;
+
+		Part(CharSequence text, int start, int end, int[] ngramSizes, int partLength) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.ngramSizes = ngramSizes;
+			this.partLength = partLength;
+		}
+
+		@Override
+		protected void compute() {
+			int split = end - start > partLength ? findDelimiter(start + (end - start) / 2) : end;
+			if (split >= end) {
+				LongDoubleHashMap[] textVectors = new LongDoubleHashMap[ngramSizes.length];
+				for (int ind = 0; ind < ngramSizes.length; ind++) {
+					textVectors[ind] = new LongDoubleHashMap();
+				}
+				new NgramExtractor(ngramSizes, true).extract(text, start, end, textVectors);
+				ScriptHistogram histogram = new ScriptHistogram();
+				histogram.add(text, start, end);
+				result = new ParallelNgramExtractor(ngramSizes, textVectors, histogram);
+				return;
+			}
+
+			Part left = new Part(text, start, split, ngramSizes, partLength);
+			Part right = new Part(text, split, end, ngramSizes, partLength);
+			left.fork();
+			right.compute();
+			left.join();
+			// smaller part is added to larger one
+			if (left.result.size() >= right.result.size()) {
+				left.result.addAll(right.result);
+				result = left.result;
+			} else {
+				right.result.addAll(left.result);
+				result = right.result;
+			}
+		}
+
+		/**
+		 * @return first word delimiter at or after the position, end if
+		 *         there is none
+		 */
+		private int findDelimiter(int position) {
+			while (position < end && !LanguageUtil.isDelimiter(text.charAt(position))) {
+				position++;
+			}
+			return position;
+		}
+	}
+}
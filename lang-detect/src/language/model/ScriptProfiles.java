@@ -0,0 +1,192 @@
+package language.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.Character.UnicodeScript;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import language.util.ScriptHistogram;
+
+/**
+ * Unicode scripts that letters of each language are written in. Languages
+ * whose scripts do not appear in the text can not be the language of the
+ * text and are not scored, see NgramLanguageDetector.getCandidates.
+ *
+ * Profiles are built from unigram models and stored next to them in
+ * PROFILES_FILE, one line per locale: locale:SCRIPT SCRIPT...
+ *
+ * Immutable once built.
+ *
+ * @author Andrey Gusev
+ */
+public final class ScriptProfiles {
+
+	public static final String PROFILES_FILE = "scriptProfiles";
+
+	// script is in profile of the language if it has at least this share of
+	// weight of unigram model
+	private static final double MIN_PROFILE_SHARE = 0.01;
+	// script is in the text if it has at least this share of its letters, so
+	// few foreign words don't keep all languages of their script
+	private static final double MIN_TEXT_SHARE = 0.02;
+	private static final String SCRIPT_SEPARATOR = " ";
+
+	private final LocaleRegistry localeRegistry;
+	// indexed by locale id, null when profile of locale is not known
+	private final List<Set<UnicodeScript>> profiles;
+
+	private ScriptProfiles(LocaleRegistry localeRegistry, List<Set<UnicodeScript>> profiles) {
+		this.localeRegistry = localeRegistry;
+		this.profiles = profiles;
+	}
+
+	/**
+	 * @return profiles where no locale has known profile, all locales are
+	 *         always candidates
+	 */
+	static ScriptProfiles empty(LocaleRegistry localeRegistry) {
+		return new ScriptProfiles(localeRegistry, Collections.<Set<UnicodeScript>> nCopies(localeRegistry.size(),
+				null));
+	}
+
+	/**
+	 * @param unigramModels
+	 *            - unigram model for each locale id, null if there is none
+	 */
+	static ScriptProfiles build(LocaleRegistry localeRegistry, NgramModel[] unigramModels) {
+		List<Set<UnicodeScript>> profiles = new ArrayList<>(localeRegistry.size());
+		for (int id = 0; id < localeRegistry.size(); id++) {
+			NgramModel model = unigramModels[id];
+			if (model == null) {
+				profiles.add(null);
+				continue;
+			}
+
+			// weight of letters of each script
+			double[] weights = new double[UnicodeScript.values().length];
+			double total = 0;
+			ScriptHistogram histogram = new ScriptHistogram();
+			for (Map.Entry<String, Double> entry : model.getTopNgrams().entrySet()) {
+				histogram.clear();
+				histogram.add(entry.getKey());
+				for (UnicodeScript script : histogram.getScripts(0)) {
+					double weight = entry.getValue() * histogram.getCount(script);
+					weights[script.ordinal()] += weight;
+					total += weight;
+				}
+			}
+
+			Set<UnicodeScript> profile = EnumSet.noneOf(UnicodeScript.class);
+			for (UnicodeScript script : UnicodeScript.values()) {
+				if (total > 0 && weights[script.ordinal()] >= MIN_PROFILE_SHARE * total) {
+					profile.add(script);
+				}
+			}
+			profiles.add(profile.isEmpty() ? null : Collections.unmodifiableSet(profile));
+		}
+		return new ScriptProfiles(localeRegistry, profiles);
+	}
+
+	/**
+	 * reads profiles written by write, locales that are not in the registry
+	 * are ignored
+	 */
+	static ScriptProfiles read(InputStream input, LocaleRegistry localeRegistry) throws IOException {
+		List<Set<UnicodeScript>> profiles = new ArrayList<>(Collections.<Set<UnicodeScript>> nCopies(
+				localeRegistry.size(), null));
+		BufferedReader br = new BufferedReader(new InputStreamReader(input, NgramLanguageDetector.UTF8));
+		String s;
+		while ((s = br.readLine()) != null) {
+			String[] parts = s.split(NgramModel.NGRAM_SEPARTOR);
+			if (parts.length != 2) {
+				continue;
+			}
+			int id = localeRegistry.getId(NgramLanguageDetector.toLocale(parts[0]));
+			if (id < 0) {
+				continue;
+			}
+			Set<UnicodeScript> profile = EnumSet.noneOf(UnicodeScript.class);
+			for (String script : parts[1].trim().split(SCRIPT_SEPARATOR)) {
+				try {
+					profile.add(UnicodeScript.forName(script));
+				} catch (IllegalArgumentException e) {
+					// script of newer java, keep language as candidate
+					profile = null;
+					break;
+				}
+			}
+			profiles.set(id, profile == null || profile.isEmpty() ? null : Collections.unmodifiableSet(profile));
+		}
+		return new ScriptProfiles(localeRegistry, profiles);
+	}
+
+	/**
+	 * writes profiles of locales that have them into file
+	 */
+	public void write(File file) throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmpFile.toPath()),
+				NgramLanguageDetector.UTF8))) {
+			for (int id = 0; id < localeRegistry.size(); id++) {
+				Set<UnicodeScript> profile = profiles.get(id);
+				if (profile == null) {
+					continue;
+				}
+				StringBuilder sb = new StringBuilder();
+				for (UnicodeScript script : profile) {
+					sb.append(sb.length() > 0 ? SCRIPT_SEPARATOR : "").append(script.name());
+				}
+				out.write(localeRegistry.getLocale(id) + NgramModel.NGRAM_SEPARTOR + sb);
+				out.newLine();
+			}
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return scripts of locale, null if they are not known
+	 */
+	public Set<UnicodeScript> getProfile(Locale locale) {
+		int id = localeRegistry.getId(locale);
+		return id >= 0 ? profiles.get(id) : null;
+	}
+
+	/**
+	 * @return which locale ids can be language of text with given letters,
+	 *         null when all of them can
+	 */
+	boolean[] getCandidates(ScriptHistogram histogram) {
+		if (histogram.getTotal() == 0) {
+			return null;
+		}
+		Set<UnicodeScript> textScripts = histogram.getScripts(MIN_TEXT_SHARE);
+
+		boolean[] retVal = null;
+		for (int id = 0; id < localeRegistry.size(); id++) {
+			Set<UnicodeScript> profile = profiles.get(id);
+			if (profile == null || !Collections.disjoint(profile, textScripts)) {
+				continue;
+			}
+			if (retVal == null) {
+				retVal = new boolean[localeRegistry.size()];
+				Arrays.fill(retVal, true);
+			}
+			retVal[id] = false;
+		}
+		return retVal;
+	}
+}
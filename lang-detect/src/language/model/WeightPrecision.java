@@ -0,0 +1,68 @@
+package language.model;
+
+/**
+ * Precision of ngram weights held by NgramIndex. Quantized weights are
+ * unsigned integers of given number of bits with scale factor per language
+ * model, weight of the ngram is its quantized value times scale of its
+ * model, so largest weight of each model is represented exactly and the
+ * rest within half of the scale.
+ *
+ * Precision of loaded models is set with system property
+ * language.detector.weightBits (64, 16 or 8), models are used as they are
+ * stored otherwise.
+ *
+ * @author Andrey Gusev
+ */
+public enum WeightPrecision {
+
+	DOUBLE(64), SHORT(16), BYTE(8);
+
+	public static final String PRECISION_PROPERTY = "language.detector.weightBits";
+
+	private final int bits;
+
+	private WeightPrecision(int bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * @return number of bits of each weight
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return largest quantized value, 0 if weights are not quantized
+	 */
+	int getMaxValue() {
+		return this == DOUBLE ? 0 : (1 << bits) - 1;
+	}
+
+	/**
+	 * @return precision with given number of bits
+	 */
+	public static WeightPrecision forBits(int bits) {
+		for (WeightPrecision precision : values()) {
+			if (precision.bits == bits) {
+				return precision;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported weight precision: " + bits + " bits");
+	}
+
+	/**
+	 * @return precision set with system property, null if it is not set
+	 */
+	public static WeightPrecision getConfigured() {
+		String bits = System.getProperty(PRECISION_PROPERTY);
+		if (bits == null || bits.isEmpty()) {
+			return null;
+		}
+		try {
+			return forBits(Integer.parseInt(bits.trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Unsupported weight precision: " + bits, e);
+		}
+	}
+}
@@ -1,102 +1,202 @@
 package language.model.multiling;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import language.model.NgramLanguageDetector;
 import language.model.NgramLanguageDetector.ClassificationAlgorithm;
+import language.util.CorpusReader;
 import language.util.Pair;
+import language.util.StringCountTable;
 
 /**
  * Base bigram boundary detector which doesn't use language confidence levels to
  * determine the boundaries between languages
  * 
+ * Bigram counts of training sets are held in StringCountTable, one per model
+ * directory shared by all boundary detectors of the directory, with
+ * NgramLanguageDetector.OFF_HEAP_PROPERTY on the table is written into model
+ * directory and memory mapped so JVMs of the host share it
+ * 
  * @author Andrey Gusev
  * 
  */
 @ThreadSafe
 public class BigramBoundaryDetector extends BaseNWordBoundaryDetector {
 
+	private static final Logger log = Logger.getLogger(BigramBoundaryDetector.class.getName());
+
+	public static final String BIGRAM_COUNTS_FILE = "bigramCounts.bin";
 
 	private final static Lock BC = new ReentrantLock();
 
+	// bigram counts by canonical model directory
 	@GuardedBy("BC")
-	protected static volatile Map<String, Integer> BIGRAM_COUNTS;
+	private static final ConcurrentMap<File, StringCountTable> BIGRAM_COUNTS = new ConcurrentHashMap<>();
+
+	private final StringCountTable bigramCounts;
 
 	public BigramBoundaryDetector(ClassificationAlgorithm algorithmToUse, NgramLanguageDetector detector)
 			throws IOException {
 		super(algorithmToUse, detector);
-		lazyInitBigramCounts();
+		this.bigramCounts = lazyInitBigramCounts();
 
 	}
 
-	private void lazyInitBigramCounts() throws IOException {
-		// initialize only once
-		if (BIGRAM_COUNTS == null) {
+	private StringCountTable lazyInitBigramCounts() throws IOException {
+		File key = getKey(this.detector.getBasePath());
+		StringCountTable retVal = BIGRAM_COUNTS.get(key);
+		// initialize only once per model directory
+		if (retVal == null) {
 			BC.lock();
 			try {
-				if (BIGRAM_COUNTS == null) {
-					BIGRAM_COUNTS = Collections.unmodifiableMap(getBigramCounts());
+				retVal = BIGRAM_COUNTS.get(key);
+				if (retVal == null) {
+					retVal = loadBigramCounts();
+					BIGRAM_COUNTS.put(key, retVal);
 				}
 			} finally {
 				BC.unlock();
 			}
 		}
+		return retVal;
+	}
+
+	/**
+	 * drops bigram counts of model directory, boundary detectors that are
+	 * still in use keep theirs
+	 */
+	public static void releaseBigramCounts(File basePath) {
+		BC.lock();
+		try {
+			BIGRAM_COUNTS.remove(getKey(basePath));
+		} finally {
+			BC.unlock();
+		}
+	}
+
+	/**
+	 * drops bigram counts of all model directories
+	 */
+	public static void clearBigramCounts() {
+		BC.lock();
+		try {
+			BIGRAM_COUNTS.clear();
+		} finally {
+			BC.unlock();
+		}
+	}
+
+	private static File getKey(File basePath) {
+		try {
+			return basePath.getCanonicalFile();
+		} catch (IOException e) {
+			return basePath.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Off heap counts are mapped from model directory unless training sets
+	 * are newer, then they are counted and written there. Counts stay on heap
+	 * if they can't be written.
+	 */
+	private StringCountTable loadBigramCounts() throws IOException {
+		if (!NgramLanguageDetector.isOffHeap()) {
+			return StringCountTable.build(getBigramCounts());
+		}
+
+		File countsFile = new File(getLocationBase() + BIGRAM_COUNTS_FILE);
+		long trainingModified = 0;
+		for (Locale locale : this.detector.getLocaleRegistry().getLocales()) {
+			trainingModified = Math.max(trainingModified, getTrainingFile(locale).lastModified());
+		}
+		if (countsFile.exists() && countsFile.lastModified() >= trainingModified) {
+			return StringCountTable.map(countsFile);
+		}
+
+		Map<String, Integer> counts = getBigramCounts();
+		try {
+			return StringCountTable.write(counts, countsFile);
+		} catch (IOException e) {
+			log.warning("Failed to write bigram counts into " + countsFile + ", keeping them on heap: " + e);
+			return StringCountTable.build(counts);
+		}
 	}
 
+	private String getLocationBase() {
+		return this.detector.getBasePath().getAbsolutePath() + File.separator + NgramLanguageDetector.BASE_MODEL_DIR
+				+ File.separator;
+	}
+
+	private File getTrainingFile(Locale locale) {
+		// _training
+		return new File(getLocationBase() + NgramLanguageDetector.TRAINING_TEST_DIR + File.separator
+				+ locale.toString() + "_training");
+	}
+
+	/**
+	 * Training sets are read in segments on a pool of threads, bigrams of
+	 * each segment are counted on its own and added up, see CorpusReader
+	 */
 	private Map<String, Integer> getBigramCounts() throws IOException {
 
-		Map<String, Integer> retVal = new HashMap<>();
+		final Map<String, Integer> retVal = new HashMap<>();
+
+		try (CorpusReader reader = new CorpusReader(Runtime.getRuntime().availableProcessors())) {
+			for (Locale locale : this.detector.getLocaleRegistry().getLocales()) {
 
-		String locationBase = this.detector.getBasePath().getAbsolutePath() + File.separator
-				+ NgramLanguageDetector.BASE_MODEL_DIR + File.separator;
-		for (Locale locale : NgramLanguageDetector.getLocales()) {
+				// need to read in UTF-8
+				File file = getTrainingFile(locale);
+				if (!file.exists()) {
+					continue;
+				}
 
-			// _training
-			String testSetLocation = locationBase + NgramLanguageDetector.TRAINING_TEST_DIR + File.separator
-					+ locale.toString() + "_training";
+				reader.read(file, new CorpusReader.Handler<Map<String, Integer>>() {
 
-			// need to read in UTF-8
-			File file = new File(testSetLocation);
-			if (!file.exists()) {
-				continue;
-			}
+					public Map<String, Integer> process(CorpusReader.Segment segment) {
+						Map<String, Integer> counts = new HashMap<>();
+						String s;
+						while ((s = segment.readLine()) != null) {
+							StringTokenizer st = new StringTokenizer(s);
+							String prevToken = null;
+							StringBuilder bigram = new StringBuilder();
+							while (st.hasMoreTokens()) {
+								String currentToken = st.nextToken();
+								bigram.append(currentToken.trim()).append(" ");
+								if (prevToken == null) {
+									prevToken = currentToken;
+									continue;
+								}
 
-			String s;
-			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file),
-					NgramLanguageDetector.UTF8))) {
-				while ((s = br.readLine()) != null) {
-					StringTokenizer st = new StringTokenizer(s);
-					String prevToken = null;
-					StringBuilder bigram = new StringBuilder();
-					while (st.hasMoreTokens()) {
-						String currentToken = st.nextToken();
-						bigram.append(currentToken.trim()).append(" ");
-						if (prevToken == null) {
-							prevToken = currentToken;
-							continue;
+								incrementBigramCounts(counts, bigram.toString().trim(), 1);
+								bigram.delete(0, prevToken.length() + 1);
+								prevToken = currentToken;
+							}
 						}
+						return counts;
+					}
 
-						incrementBigramCounts(retVal, bigram.toString().trim());
-						bigram.delete(0, prevToken.length() + 1);
-						prevToken = currentToken;
+					public void collect(Map<String, Integer> counts) {
+						for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+							incrementBigramCounts(retVal, entry.getKey(), entry.getValue());
+						}
 					}
-				}
+
+				});
 			}
 		}
 
@@ -163,12 +263,7 @@ public class BigramBoundaryDetector extends BaseNWordBoundaryDetector {
 	}
 
 	protected int getBigramCount(String s) {
-		Integer count = BIGRAM_COUNTS.get(s);
-		if (count == null) {
-			return 0;
-		} else {
-			return count;
-		}
+		return bigramCounts.get(s);
 	}
 
 	protected Locale getLanguageWithDefault(String s) throws IOException {
@@ -180,12 +275,12 @@ public class BigramBoundaryDetector extends BaseNWordBoundaryDetector {
 		}
 	}
 
-	private void incrementBigramCounts(Map<String, Integer> map, String s) {
+	private void incrementBigramCounts(Map<String, Integer> map, String s, int count) {
 		Integer currentCount = map.get(s);
 		if (currentCount == null) {
-			map.put(s, 1);
+			map.put(s, count);
 		} else {
-			map.put(s, currentCount + 1);
+			map.put(s, currentCount + count);
 		}
 	}
 
@@ -0,0 +1,77 @@
+package language.util;
+
+/**
+ * Bloom filter of 64 bit keys (see NgramHash) where all bits of a key are in
+ * the same 64 bit word, so every lookup reads a single word. Filter is a few
+ * bits per key, small enough to stay in cache when the table it guards is
+ * not, and tells for sure that key was not added.
+ *
+ * Filter is not thread safe while keys are added, lookups can be done from
+ * any number of threads once it is built.
+ *
+ * @author Andrey Gusev
+ */
+public final class BlockedBloomFilter {
+
+	private static final int BITS_PER_KEY = 16;
+	// bits set for every key within its word
+	private static final int NUM_HASHES = 3;
+
+	private final long[] words;
+	private final int mask;
+
+	/**
+	 * @param expectedKeys
+	 *            - number of keys that will be added
+	 */
+	public BlockedBloomFilter(int expectedKeys) {
+		long numBits = Math.max(64L, (long) expectedKeys * BITS_PER_KEY);
+		int numWords = 1;
+		while ((long) numWords * 64 < numBits) {
+			numWords <<= 1;
+		}
+		this.words = new long[numWords];
+		this.mask = numWords - 1;
+	}
+
+	public void add(long key) {
+		long h = mix(key);
+		words[word(h)] |= bits(h);
+	}
+
+	/**
+	 * @return false if key was definitely not added
+	 */
+	public boolean mightContain(long key) {
+		long h = mix(key);
+		long bits = bits(h);
+		return (words[word(h)] & bits) == bits;
+	}
+
+	/**
+	 * @return size of the filter in bytes
+	 */
+	public int sizeInBytes() {
+		return words.length * 8;
+	}
+
+	private int word(long h) {
+		return (int) (h >>> 40) & mask;
+	}
+
+	private static long bits(long h) {
+		long retVal = 0;
+		for (int ind = 0; ind < NUM_HASHES; ind++) {
+			retVal |= 1L << (h & 63);
+			h >>>= 6;
+		}
+		return retVal;
+	}
+
+	// keys are already hashes but their low bits are also used for slots of
+	// hash tables, so they are mixed with a different constant
+	private static long mix(long key) {
+		long h = key * 0xC2B2AE3D27D4EB4FL;
+		return h ^ (h >>> 29);
+	}
+}
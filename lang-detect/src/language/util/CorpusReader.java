@@ -0,0 +1,240 @@
+package language.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads UTF-8 text file on a pool of threads. File is split into segments of
+ * about segment size bytes that end right after a line feed, each segment is
+ * memory mapped, decoded and handled on a thread of the pool, and results of
+ * segments are collected on the reading thread in the order of the file.
+ * Line feed byte is never part of a multibyte UTF-8 sequence, so segments
+ * decode independently, and lines of segments are the same as lines of
+ * BufferedReader over the whole file. Malformed input is replaced like
+ * InputStreamReader does.
+ *
+ * At most SEGMENTS_PER_THREAD segments per thread are read ahead of the one
+ * being collected, so memory does not grow with size of the file.
+ *
+ * Reader is thread safe, files read at the same time share its threads.
+ *
+ * @author Andrey Gusev
+ */
+public final class CorpusReader implements Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 22;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int SEGMENTS_PER_THREAD = 2;
+	// buffer for finding end of line after segment size
+	private static final int SCAN_BUFFER_SIZE = 8192;
+
+	private final ExecutorService executor;
+	private final int numThreads;
+	private final int segmentSize;
+
+	/**
+	 * @param numThreads
+	 *            - number of segments decoded and handled at once
+	 */
+	public CorpusReader(int numThreads) {
+		this(numThreads, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param numThreads
+	 *            - number of segments decoded and handled at once
+	 * @param segmentSize
+	 *            - minimum number of bytes of a segment, segment is longer
+	 *            up to the end of its last line
+	 */
+	public CorpusReader(int numThreads, int segmentSize) {
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("Segment size should be positive: " + segmentSize);
+		}
+		this.numThreads = Math.max(1, numThreads);
+		this.segmentSize = segmentSize;
+		this.executor = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory() {
+
+			private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+			public Thread newThread(Runnable runnable) {
+				// pool never keeps JVM running
+				Thread retVal = threadFactory.newThread(runnable);
+				retVal.setDaemon(true);
+				return retVal;
+			}
+
+		});
+	}
+
+	/**
+	 * Handles segments of a file
+	 *
+	 * @param <T>
+	 *            - type of result of a segment
+	 */
+	public interface Handler<T> {
+
+		/**
+		 * handles lines of the segment, called on a thread of the pool
+		 */
+		T process(Segment segment) throws IOException;
+
+		/**
+		 * called on the reading thread with results of segments in their
+		 * order in the file
+		 */
+		void collect(T result) throws IOException;
+	}
+
+	/**
+	 * reads the file, returns once results of all its segments are collected
+	 */
+	public <T> void read(File file, Handler<T> handler) throws IOException {
+		Deque<Future<T>> pending = new ArrayDeque<>();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			long size = channel.size();
+			long start = 0;
+			while (start < size) {
+				long end = findLineEnd(channel, start + segmentSize, size);
+				if (end - start > Integer.MAX_VALUE) {
+					throw new IOException("Line at " + start + " is too long in " + file);
+				}
+				pending.add(executor.submit(new SegmentTask<>(channel, start, (int) (end - start), handler)));
+				start = end;
+				if (pending.size() > numThreads * SEGMENTS_PER_THREAD) {
+					handler.collect(get(pending.poll()));
+				}
+			}
+			while (!pending.isEmpty()) {
+				handler.collect(get(pending.poll()));
+			}
+		} finally {
+			// segments of a failed read are not needed
+			for (Future<T> future : pending) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * stops threads of the pool
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return position right after first line feed at or after the position,
+	 *         size if there is none
+	 */
+	private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int ind = 0; ind < read; ind++) {
+				if (buffer.get(ind) == '\n') {
+					return position + ind + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Maps, decodes and handles one segment
+	 */
+	private static final class SegmentTask<T> implements Callable<T> {
+
+		private final FileChannel channel;
+		private final long start;
+		private final int length;
+		private final Handler<T> handler;
+
+		SegmentTask(FileChannel channel, long start, int length, Handler<T> handler) {
+			this.channel = channel;
+			this.start = start;
+			this.length = length;
+			this.handler = handler;
+		}
+
+		public T call() throws IOException {
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			CharBuffer chars = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(bytes);
+			return handler.process(new Segment(chars));
+		}
+	}
+
+	/**
+	 * Decoded lines of a segment
+	 */
+	public static final class Segment {
+
+		private final char[] chars;
+		private final int end;
+		private int position;
+
+		private Segment(CharBuffer chars) {
+			this.chars = chars.array();
+			this.position = chars.arrayOffset() + chars.position();
+			this.end = chars.arrayOffset() + chars.limit();
+		}
+
+		/**
+		 * @return next line without its terminator (line feed, carriage
+		 *         return or both), null at the end of the segment
+		 */
+		public String readLine() {
+			if (position >= end) {
+				return null;
+			}
+			int lineEnd = position;
+			while (lineEnd < end && chars[lineEnd] != '\n' && chars[lineEnd] != '\r') {
+				lineEnd++;
+			}
+			String retVal = new String(chars, position, lineEnd - position);
+			position = lineEnd;
+			if (position < end && chars[position++] == '\r' && position < end && chars[position] == '\n') {
+				position++;
+			}
+			return retVal;
+		}
+	}
+}
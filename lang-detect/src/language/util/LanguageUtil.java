@@ -1,13 +1,10 @@
 package language.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
 
 /**
  * Set of utils for language algorithms
@@ -20,12 +17,43 @@ public class LanguageUtil {
 	// note that there are two different spaces here
 	private final static String delimeters = " \t\n\r\f.()[]{}^+=|_*&%#\"',-:;/\\?!@~\u201c\u201d\u3000»«";
 
-	private static final int MAX_WORD_LENGTH = 200;
+	public static final int MAX_WORD_LENGTH = 200;
 
 	private static final String WORD_BOUNDARY_CHAR = "$";
 
-	// allows to cache computation of ngrams
-	public static final Map<Integer, Map<String, Set<String>>> nGramCache = new HashMap<>();
+	public static final char WORD_BOUNDARY_MARKER = '$';
+
+	// bound on total number of ngrams held in cache
+	private static final long MAX_CACHED_NGRAMS = 500000;
+
+	// allows to cache computation of ngrams, safe to use from all threads
+	public static final NgramCache nGramCache = new NgramCache(MAX_CACHED_NGRAMS);
+
+	// character classes are precomputed for all chars
+	private static final byte DELIMITER = 1;
+	private static final byte NGRAM_BREAK = 2;
+	private static final byte LETTER = 4;
+
+	private static final byte[] CHAR_CLASSES = new byte[Character.MAX_VALUE + 1];
+	private static final char[] LOWER_CASE = new char[Character.MAX_VALUE + 1];
+
+	static {
+		for (int ind = 0; ind <= Character.MAX_VALUE; ind++) {
+			char chr = (char) ind;
+			byte charClass = 0;
+			if (delimeters.indexOf(chr) >= 0) {
+				charClass |= DELIMITER;
+			}
+			if (computeNgramBreak(chr)) {
+				charClass |= NGRAM_BREAK;
+			}
+			if (Character.isLetter(chr)) {
+				charClass |= LETTER;
+			}
+			CHAR_CLASSES[ind] = charClass;
+			LOWER_CASE[ind] = Character.toLowerCase(chr);
+		}
+	}
 
 	/**
 	 * computes jaccard coefficient for two sets
@@ -41,33 +69,26 @@ public class LanguageUtil {
 	/**
 	 * 
 	 * tokenizes the string using delimeters =
-	 * " \t\n\r\f.()[]{}^+=|_*&%#\"',-:;/\\?!@~\u201c\u201d\u3000" and can check
-	 * against alphabetPatterns = Pattern.compile("[a-zA-Z]+"); and only returns
-	 * only tokens.length()>=minLength
+	 * " \t\n\r\f.()[]{}^+=|_*&%#\"',-:;/\\?!@~\u201c\u201d\u3000" and only
+	 * returns only tokens.length()>=minLength, tokens are lower cased
 	 * 
 	 * @param text
 	 *            - text
-	 * @param skipAlphabetCheck
-	 *            - skips Alphabet Check, if false will check tokens against
-	 *            Pattern.compile("[a-zA-Z]+")
 	 * @param minLength
 	 *            - min length, will not return tokens.length()< minLength, use
 	 *            0 for all tokens
 	 * 
 	 */
 	public static List<String> tokenize(String text, int minLength) {
-		List<String> retVal = new LinkedList<>();
-		StringTokenizer tokenizer = new StringTokenizer(text, delimeters);
-		while (tokenizer.hasMoreTokens()) {
-			String word = tokenizer.nextToken();
-			word = word.toLowerCase().trim();
-			if (word.length() >= minLength && word.length() < MAX_WORD_LENGTH) {
-				retVal.add(word);
-			}
+		List<String> retVal = new ArrayList<>();
+		WordScanner scanner = new WordScanner(minLength);
+		scanner.reset(text);
+		while (scanner.next()) {
+			retVal.add(scanner.getWordAsString());
 		}
 		return retVal;
 	}
-	
+
 	public static Set<String> getNgramsForWordCombination(String prevWord, String nextWord, int ngramSize) {
 		Set<String> initialNgrams = getNgrams(prevWord + WORD_BOUNDARY_CHAR + nextWord, ngramSize, false);
 		Set<String> retVal = new HashSet<>(initialNgrams.size());
@@ -83,6 +104,51 @@ public class LanguageUtil {
 		return retVal;
 	}
 
+	/**
+	 * @return whether character can not be part of ngram, these are
+	 *         punctuation, whitespace and digit characters that are removed
+	 *         from ngrams in getNgrams
+	 */
+	public static boolean isNgramBreak(char chr) {
+		return (CHAR_CLASSES[chr] & NGRAM_BREAK) != 0;
+	}
+
+	/**
+	 * @return whether character separates words, see tokenize
+	 */
+	public static boolean isDelimiter(char chr) {
+		return (CHAR_CLASSES[chr] & DELIMITER) != 0;
+	}
+
+	/**
+	 * same as Character.isLetter but looked up in precomputed table
+	 */
+	public static boolean isLetter(char chr) {
+		return (CHAR_CLASSES[chr] & LETTER) != 0;
+	}
+
+	/**
+	 * same as Character.toLowerCase but looked up in precomputed table
+	 */
+	public static char toLowerCase(char chr) {
+		return LOWER_CASE[chr];
+	}
+
+	private static boolean computeNgramBreak(char chr) {
+		switch (Character.getType(chr)) {
+		case Character.END_PUNCTUATION:
+		case Character.DASH_PUNCTUATION:
+		case Character.START_PUNCTUATION:
+		case Character.CONNECTOR_PUNCTUATION:
+		case Character.OTHER_PUNCTUATION:
+			return true;
+		default:
+		}
+		// same characters as matched by \\s and \\d
+		return (chr >= '0' && chr <= '9') || chr == ' ' || chr == '\t' || chr == '\n' || chr == '\u000B'
+				|| chr == '\f' || chr == '\r';
+	}
+
 	/**
 	 * computes kgrams for a given word
 	 */
@@ -94,11 +160,6 @@ public class LanguageUtil {
 	 * computes kgrams for a given word
 	 */
 	public static Set<String> getNgrams(String word, int ngramSize, boolean addWordBoundaryMarkers) {
-		Map<String, Set<String>> wordCache = nGramCache.get(ngramSize);
-		if (wordCache == null) {
-			wordCache = new HashMap<>();
-			nGramCache.put(ngramSize, wordCache);
-		}
 
 		// if the word is null or has fewer than k character
 		// return empty set
@@ -111,54 +172,42 @@ public class LanguageUtil {
 			word = WORD_BOUNDARY_CHAR + word + WORD_BOUNDARY_CHAR;
 		}
 
-		Set<String> existingKGramSet = wordCache.get(word);
+		Set<String> existingKGramSet = nGramCache.get(word, ngramSize);
 		if (existingKGramSet != null) {
 			return existingKGramSet;
 		}
 
-		Set<String> retSet = new HashSet<>(word.length() + 2 - ngramSize);
-		StringBuilder currentKgram = new StringBuilder();
-		int ind = 0;
-		while (ind < word.length()) {
-			Character chr = word.charAt(ind);
-
-			switch (Character.getType(chr)) {
-			case Character.END_PUNCTUATION:
-			case Character.DASH_PUNCTUATION:
-			case Character.START_PUNCTUATION:
-			case Character.CONNECTOR_PUNCTUATION:
-			case Character.OTHER_PUNCTUATION:
-				// just add whitespace instead of punctuation
-				chr = ' ';
-				break;
-			default:
-			}
+		// cache wraps into unmodifiable set
+		return nGramCache.putIfAbsent(word, ngramSize, computeNgrams(word, ngramSize));
+	}
+
+	/**
+	 * same as getNgrams but word already has boundary markers if they are
+	 * needed and ngrams are not cached, used when every word is seen once
+	 *
+	 * @return new set of ngrams of the word
+	 */
+	public static Set<String> computeNgrams(String word, int ngramSize) {
+		if (word.length() < ngramSize) {
+			return new HashSet<>();
+		}
 
-			currentKgram.append(chr);
-			if (currentKgram.length() == ngramSize) {
-				String kGram = currentKgram.toString();
-				// if after trimming ngram still has the length of
-				// 2 which means it didn't contain any whitespace to replace the
-				// punctuation
-				// we can add it
-				kGram = kGram.replaceAll("\\s", "");
-				kGram = kGram.replaceAll("\\d", "");
-				if (kGram.length() == ngramSize) {
-					kGram = kGram.toLowerCase();
-					if (ngramSize == 1 && Character.isLetter(kGram.charAt(0))) {
-						retSet.add(kGram);
-					} else if (ngramSize > 1) {
-						retSet.add(kGram);
-					}
+		Set<String> retSet = new HashSet<>(word.length() + 2 - ngramSize);
+		char[] kGram = new char[ngramSize];
+		int length = word.length();
+		nextNgram: for (int start = 0; start + ngramSize <= length; start++) {
+			for (int ind = 0; ind < ngramSize; ind++) {
+				char chr = word.charAt(start + ind);
+				// skip ngrams with punctuation, whitespace or digits
+				if (isNgramBreak(chr)) {
+					continue nextNgram;
 				}
-				currentKgram = new StringBuilder();
-				ind -= (ngramSize - 2);
-			} else {
-				ind++;
+				kGram[ind] = toLowerCase(chr);
+			}
+			if (ngramSize > 1 || isLetter(kGram[0])) {
+				retSet.add(new String(kGram));
 			}
 		}
-		// wrap into unmodifiable set
-		wordCache.put(word, Collections.unmodifiableSet(retSet));
-		return wordCache.get(word);
+		return retSet;
 	}
 }
@@ -0,0 +1,221 @@
+package language.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to primitive double
+ * values. Used to accumulate ngram frequencies without boxing keys or values,
+ * map can be cleared and reused to avoid reallocation.
+ *
+ * Not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+public class LongDoubleHashMap {
+
+	private static final int MIN_CAPACITY = 16;
+
+	// key 0 is used to mark empty slot so it is stored separately
+	private static final long EMPTY = 0L;
+
+	private long[] keys;
+	private double[] values;
+	private int size;
+	private int mask;
+
+	private boolean hasZeroKey;
+	private double zeroValue;
+
+	public LongDoubleHashMap() {
+		this(64);
+	}
+
+	public LongDoubleHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		this.keys = new long[capacity];
+		this.values = new double[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * creates copy of another map
+	 */
+	public LongDoubleHashMap(LongDoubleHashMap another) {
+		this.keys = another.keys.clone();
+		this.values = another.values.clone();
+		this.size = another.size;
+		this.mask = another.mask;
+		this.hasZeroKey = another.hasZeroKey;
+		this.zeroValue = another.zeroValue;
+	}
+
+	/**
+	 * adds value to current value of the key, missing keys start from zero
+	 */
+	public void add(long key, double value) {
+		if (key == EMPTY) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroValue += value;
+			return;
+		}
+
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				values[slot] += value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if (size * 2 > keys.length) {
+			rehash(keys.length << 1);
+		}
+	}
+
+	/**
+	 * adds values of all keys of another map to values of this map
+	 */
+	public void addAll(LongDoubleHashMap another) {
+		// grow once for all new keys instead of doubling on the way
+		int capacity = keys.length;
+		while ((size + another.size) * 2 > capacity) {
+			capacity <<= 1;
+		}
+		if (capacity > keys.length) {
+			rehash(capacity);
+		}
+		for (int slot = 0; slot < another.slots(); slot++) {
+			if (another.isSlotUsed(slot)) {
+				add(another.keyAt(slot), another.valueAt(slot));
+			}
+		}
+	}
+
+	/**
+	 * @return value for the key or 0 if key is not present
+	 */
+	public double get(long key) {
+		if (key == EMPTY) {
+			return zeroValue;
+		}
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	public boolean containsKey(long key) {
+		if (key == EMPTY) {
+			return hasZeroKey;
+		}
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * removes all entries but keeps allocated capacity
+	 */
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(values, 0);
+		hasZeroKey = false;
+		zeroValue = 0;
+		size = 0;
+	}
+
+	/**
+	 * Number of slots that can be iterated with isSlotUsed, keyAt and
+	 * valueAt. Slot after last table slot holds key 0 if present.
+	 */
+	public int slots() {
+		return keys.length + 1;
+	}
+
+	public boolean isSlotUsed(int slot) {
+		return slot == keys.length ? hasZeroKey : keys[slot] != EMPTY;
+	}
+
+	public long keyAt(int slot) {
+		return slot == keys.length ? EMPTY : keys[slot];
+	}
+
+	public double valueAt(int slot) {
+		return slot == keys.length ? zeroValue : values[slot];
+	}
+
+	/**
+	 * copies all values into array which is reallocated if it is too small
+	 *
+	 * @return array with values in first size() positions
+	 */
+	public double[] values(double[] dest) {
+		if (dest == null || dest.length < size) {
+			dest = new double[size];
+		}
+		int ind = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != EMPTY) {
+				dest[ind++] = values[slot];
+			}
+		}
+		if (hasZeroKey) {
+			dest[ind] = zeroValue;
+		}
+		return dest;
+	}
+
+	private int slot(long key) {
+		// spread bits of the key since ngram hashes are not uniform in low bits
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		double[] oldValues = values;
+		keys = new long[capacity];
+		values = new double[capacity];
+		mask = capacity - 1;
+		for (int ind = 0; ind < oldKeys.length; ind++) {
+			long key = oldKeys[ind];
+			if (key != EMPTY) {
+				int slot = slot(key);
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[ind];
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package language.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded concurrent cache of ngram sets of words. Size of the cache is
+ * bounded by total weight of all entries, weight of the entry is number of
+ * ngrams in it, so memory used by the cache stays flat no matter how much
+ * distinct text goes through it.
+ *
+ * Eviction is frequency aware (generalized clock): every hit increments
+ * frequency of the entry up to MAX_FREQUENCY, when cache is over its bound
+ * clock hand sweeps over entries decrementing their frequencies and evicts
+ * first entry with zero frequency. Frequently used vocabulary survives
+ * several sweeps while one-off words are evicted first.
+ *
+ * @author Andrey Gusev
+ */
+@ThreadSafe
+public class NgramCache {
+
+	private static final int MAX_FREQUENCY = 15;
+
+	private final ConcurrentMap<Pair<Integer, String>, Entry> cache;
+	private final long maxWeight;
+
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final Lock evictionLock = new ReentrantLock();
+
+	@GuardedBy("evictionLock")
+	private Iterator<Map.Entry<Pair<Integer, String>, Entry>> clockHand;
+
+	/**
+	 * @param maxWeight
+	 *            - maximum number of ngrams held in all cached sets
+	 */
+	public NgramCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+		this.cache = new ConcurrentHashMap<>(1024, 0.75f, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @return cached ngram set or null if word is not in cache
+	 */
+	public Set<String> get(String word, int ngramSize) {
+		Entry entry = cache.get(new Pair<>(ngramSize, word));
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		entry.touch();
+		return entry.ngrams;
+	}
+
+	/**
+	 * Adds ngram set of the word to the cache unless another thread already
+	 * did it
+	 *
+	 * @return unmodifiable ngram set that is in cache
+	 */
+	public Set<String> putIfAbsent(String word, int ngramSize, Set<String> ngrams) {
+		Entry entry = new Entry(Collections.unmodifiableSet(ngrams));
+		Entry existing = cache.putIfAbsent(new Pair<>(ngramSize, word), entry);
+		if (existing != null) {
+			return existing.ngrams;
+		}
+		if (weight.addAndGet(entry.weight) > maxWeight) {
+			evict();
+		}
+		return entry.ngrams;
+	}
+
+	/**
+	 * Sweeps clock hand until cache is within its bound, only one thread
+	 * evicts at a time others just continue
+	 */
+	private void evict() {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			while (weight.get() > maxWeight) {
+				if (clockHand == null || !clockHand.hasNext()) {
+					clockHand = cache.entrySet().iterator();
+					if (!clockHand.hasNext()) {
+						return;
+					}
+				}
+				Map.Entry<Pair<Integer, String>, Entry> candidate = clockHand.next();
+				Entry entry = candidate.getValue();
+				if (entry.frequency.get() > 0) {
+					// give entry another chance
+					entry.frequency.decrementAndGet();
+				} else if (cache.remove(candidate.getKey(), entry)) {
+					weight.addAndGet(-entry.weight);
+					evictions.incrementAndGet();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try {
+			cache.clear();
+			weight.set(0);
+			clockHand = null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return total number of ngrams in all cached sets
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "NgramCache size: " + size() + ", weight: " + getWeight() + "/" + maxWeight + ", hits: " + getHits()
+				+ ", misses: " + getMisses() + ", evictions: " + getEvictions();
+	}
+
+	private static class Entry {
+
+		private final Set<String> ngrams;
+		private final int weight;
+		// new entries get one chance to survive the sweep
+		private final AtomicInteger frequency = new AtomicInteger(1);
+
+		private Entry(Set<String> ngrams) {
+			this.ngrams = ngrams;
+			this.weight = Math.max(1, ngrams.size());
+		}
+
+		private void touch() {
+			int current = frequency.get();
+			if (current < MAX_FREQUENCY) {
+				frequency.compareAndSet(current, current + 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package language.util;
+
+/**
+ * 64 bit FNV-1a hash for ngrams. Hash can be extended one character at a time
+ * so that keys of all ngram sizes starting at the same position are computed
+ * in one pass over the characters.
+ *
+ * Ngram keys are only compared as hashes, collisions are possible in
+ * principle but with 64 bits and few thousands of model ngrams they are
+ * negligible.
+ *
+ * @author Andrey Gusev
+ */
+public final class NgramHash {
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private NgramHash() {
+	}
+
+	/**
+	 * @return initial hash value for empty ngram
+	 */
+	public static long start() {
+		return OFFSET_BASIS;
+	}
+
+	/**
+	 * @return hash value extended by one character
+	 */
+	public static long extend(long hash, char chr) {
+		return (hash ^ chr) * PRIME;
+	}
+
+	/**
+	 * computes hash of entire ngram
+	 */
+	public static long hash(CharSequence nGram) {
+		long hash = start();
+		for (int ind = 0; ind < nGram.length(); ind++) {
+			hash = extend(hash, nGram.charAt(ind));
+		}
+		return hash;
+	}
+}
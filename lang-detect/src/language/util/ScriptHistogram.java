@@ -0,0 +1,123 @@
+package language.util;
+
+import java.lang.Character.UnicodeScript;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Counts letters of text by unicode script. Scripts of characters of basic
+ * multilingual plane are looked up in precomputed table, so counting is a
+ * single cheap pass over the text. Common and inherited scripts (digits,
+ * punctuation, combining marks) are not counted.
+ *
+ * Not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+public class ScriptHistogram {
+
+	private static final UnicodeScript[] SCRIPTS = UnicodeScript.values();
+
+	// ordinal of script + 1 for letters of basic multilingual plane, 0 for
+	// characters that are not counted
+	private static final byte[] CHAR_SCRIPTS = new byte[Character.MAX_VALUE + 1];
+
+	static {
+		for (int ind = 0; ind <= Character.MAX_VALUE; ind++) {
+			if (Character.isLetter(ind)) {
+				CHAR_SCRIPTS[ind] = (byte) (getScriptIndex(ind) + 1);
+			}
+		}
+	}
+
+	private final int[] counts = new int[SCRIPTS.length];
+	private int total;
+
+	/**
+	 * counts letters of the text
+	 */
+	public void add(CharSequence text) {
+		add(text, 0, text.length());
+	}
+
+	/**
+	 * counts letters of the text between start (inclusive) and end
+	 * (exclusive)
+	 */
+	public void add(CharSequence text, int start, int end) {
+		for (int ind = start; ind < end; ind++) {
+			char chr = text.charAt(ind);
+			int script = CHAR_SCRIPTS[chr] & 0xFF;
+			if (script != 0) {
+				counts[script - 1]++;
+				total++;
+			} else if (Character.isHighSurrogate(chr) && ind + 1 < end
+					&& Character.isLowSurrogate(text.charAt(ind + 1))) {
+				// letters outside of basic multilingual plane are rare
+				int codePoint = Character.toCodePoint(chr, text.charAt(++ind));
+				if (Character.isLetter(codePoint)) {
+					int index = getScriptIndex(codePoint);
+					if (index >= 0) {
+						counts[index]++;
+						total++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * adds letters counted by another histogram
+	 */
+	public void addAll(ScriptHistogram another) {
+		for (int ind = 0; ind < counts.length; ind++) {
+			counts[ind] += another.counts[ind];
+		}
+		total += another.total;
+	}
+
+	/**
+	 * @return number of letters of the script
+	 */
+	public int getCount(UnicodeScript script) {
+		return counts[script.ordinal()];
+	}
+
+	/**
+	 * @return number of counted letters
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return scripts that have at least minShare of counted letters
+	 */
+	public Set<UnicodeScript> getScripts(double minShare) {
+		Set<UnicodeScript> retVal = EnumSet.noneOf(UnicodeScript.class);
+		for (int ind = 0; ind < counts.length; ind++) {
+			if (counts[ind] > 0 && counts[ind] >= minShare * total) {
+				retVal.add(SCRIPTS[ind]);
+			}
+		}
+		return retVal;
+	}
+
+	public void clear() {
+		for (int ind = 0; ind < counts.length; ind++) {
+			counts[ind] = 0;
+		}
+		total = 0;
+	}
+
+	/**
+	 * @return ordinal of script of code point, -1 if it is not counted
+	 */
+	private static int getScriptIndex(int codePoint) {
+		UnicodeScript script = UnicodeScript.of(codePoint);
+		if (script == UnicodeScript.COMMON || script == UnicodeScript.INHERITED || script == UnicodeScript.UNKNOWN) {
+			return -1;
+		}
+		return script.ordinal();
+	}
+}
@@ -0,0 +1,219 @@
+package language.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Read only table of string counts packed into a single buffer: open
+ * addressing hash table of slots followed by characters of the keys. Table
+ * has no objects per entry, so it is cheap for garbage collector even on
+ * heap, and can be written into a file and memory mapped so that all JVMs of
+ * the host share its pages through OS page cache.
+ *
+ * Format (big endian):
+ *
+ * <pre>
+ * int magic, int version, int size, int numSlots
+ * numSlots x (long hash, int key offset, int count), count is 0 for empty slot
+ * chars of keys, each key is its length followed by its characters
+ * </pre>
+ *
+ * Table is immutable and can be shared between threads.
+ *
+ * @author Andrey Gusev
+ */
+public final class StringCountTable {
+
+	private static final int MAGIC = 0x4C444354;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 16;
+
+	private final int size;
+	private final int mask;
+	private final ByteBuffer slots;
+	private final CharBuffer keys;
+	private final int sizeInBytes;
+
+	private StringCountTable(ByteBuffer buffer) {
+		if (buffer.getInt(0) != MAGIC) {
+			throw new RuntimeException("Not a string count table");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new RuntimeException("Unsupported string count table version: " + version);
+		}
+		this.size = buffer.getInt(8);
+		int numSlots = buffer.getInt(12);
+		this.mask = numSlots - 1;
+		this.slots = slice(buffer, HEADER_SIZE, numSlots * SLOT_SIZE);
+		int keysStart = HEADER_SIZE + numSlots * SLOT_SIZE;
+		this.keys = slice(buffer, keysStart, buffer.limit() - keysStart).asCharBuffer();
+		this.sizeInBytes = buffer.limit();
+	}
+
+	/**
+	 * Builds table on heap
+	 *
+	 * @param counts
+	 *            - counts by key, keys with zero count are skipped
+	 */
+	public static StringCountTable build(Map<String, Integer> counts) {
+		return new StringCountTable(pack(counts));
+	}
+
+	/**
+	 * Writes table into the file and memory maps it. File is written next to
+	 * the target and moved in place, so JVMs that mapped previous table are
+	 * not affected.
+	 *
+	 * @param counts
+	 *            - counts by key, keys with zero count are skipped
+	 */
+	public static StringCountTable write(Map<String, Integer> counts, File file) throws IOException {
+		ByteBuffer buffer = pack(counts);
+		// name of the temporary file is unique for JVMs writing the same table
+		Path tmpFile = new File(file.getAbsolutePath() + "." + Long.toHexString(System.nanoTime()) + ".tmp")
+				.toPath();
+		try {
+			Files.write(tmpFile, buffer.array());
+			Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+		return map(file);
+	}
+
+	/**
+	 * Memory maps table file
+	 */
+	public static StringCountTable map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			// mapping stays valid after channel is closed
+			return new StringCountTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @return count of the key, 0 if there is no such key
+	 */
+	public int get(CharSequence key) {
+		long hash = NgramHash.hash(key);
+		int slot = slot(hash, mask);
+		while (true) {
+			int pos = slot * SLOT_SIZE;
+			int count = slots.getInt(pos + 12);
+			if (count == 0) {
+				return 0;
+			}
+			if (slots.getLong(pos) == hash && keyEquals(slots.getInt(pos + 8), key)) {
+				return count;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return size of the table in bytes
+	 */
+	public int sizeInBytes() {
+		return sizeInBytes;
+	}
+
+	private boolean keyEquals(int offset, CharSequence key) {
+		int length = keys.get(offset);
+		if (length != key.length()) {
+			return false;
+		}
+		for (int ind = 0; ind < length; ind++) {
+			if (keys.get(offset + 1 + ind) != key.charAt(ind)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer pack(Map<String, Integer> counts) {
+		int size = 0;
+		long numChars = 0;
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() == 0) {
+				continue;
+			}
+			if (entry.getValue() < 0) {
+				throw new IllegalArgumentException("Negative count of " + entry.getKey());
+			}
+			if (entry.getKey().length() > Character.MAX_VALUE) {
+				throw new IllegalArgumentException("Key is too long: " + entry.getKey().length());
+			}
+			size++;
+			numChars += entry.getKey().length() + 1;
+		}
+		// at most half of the slots are used
+		int numSlots = 2;
+		while (numSlots < size * 2) {
+			numSlots <<= 1;
+		}
+		long numBytes = HEADER_SIZE + (long) numSlots * SLOT_SIZE + numChars * 2;
+		if (numBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many keys for string count table: " + size);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) numBytes);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, size);
+		buffer.putInt(12, numSlots);
+		int mask = numSlots - 1;
+		int keysStart = HEADER_SIZE + numSlots * SLOT_SIZE;
+		int offset = 0;
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() == 0) {
+				continue;
+			}
+			String key = entry.getKey();
+			long hash = NgramHash.hash(key);
+			int slot = slot(hash, mask);
+			while (buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + 12) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			int pos = HEADER_SIZE + slot * SLOT_SIZE;
+			buffer.putLong(pos, hash);
+			buffer.putInt(pos + 8, offset);
+			buffer.putInt(pos + 12, entry.getValue());
+
+			buffer.putChar(keysStart + offset * 2, (char) key.length());
+			for (int ind = 0; ind < key.length(); ind++) {
+				buffer.putChar(keysStart + (offset + 1 + ind) * 2, key.charAt(ind));
+			}
+			offset += key.length() + 1;
+		}
+		return buffer;
+	}
+
+	private static int slot(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+		ByteBuffer retVal = buffer.duplicate();
+		retVal.position(start);
+		retVal.limit(start + length);
+		return retVal.slice();
+	}
+}
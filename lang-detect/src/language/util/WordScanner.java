@@ -0,0 +1,133 @@
+package language.util;
+
+/**
+ * Scans words of the text in place without creating a String per word. Words
+ * are split on the same delimeters as LanguageUtil.tokenize, trimmed and
+ * lower cased into reusable buffer, so scanning a document allocates nothing
+ * once the buffer grew to the longest word.
+ *
+ * Usage:
+ *
+ * <pre>
+ * scanner.reset(text);
+ * while (scanner.next()) {
+ * 	char[] word = scanner.getWord();
+ * 	int length = scanner.getLength();
+ * 	...
+ * }
+ * </pre>
+ *
+ * Not thread safe.
+ *
+ * @author Andrey Gusev
+ */
+public class WordScanner {
+
+	private final int minLength;
+
+	private CharSequence text;
+	private int position;
+	private int end;
+
+	private char[] word = new char[32];
+	private int length;
+	private int wordStart;
+
+	/**
+	 * @param minLength
+	 *            - words shorter than minLength are skipped, use 0 for all
+	 *            words
+	 */
+	public WordScanner(int minLength) {
+		this.minLength = minLength;
+	}
+
+	public void reset(CharSequence text) {
+		reset(text, 0, text.length());
+	}
+
+	/**
+	 * starts scanning the region of the text, words crossing region
+	 * boundaries are cut at the boundaries
+	 */
+	public void reset(CharSequence text, int start, int end) {
+		this.text = text;
+		this.position = start;
+		this.end = end;
+		this.length = 0;
+	}
+
+	/**
+	 * moves to the next word
+	 *
+	 * @return false when there are no more words
+	 */
+	public boolean next() {
+		while (position < end) {
+			while (position < end && LanguageUtil.isDelimiter(text.charAt(position))) {
+				position++;
+			}
+			if (position == end) {
+				break;
+			}
+			int tokenStart = position;
+			while (position < end && !LanguageUtil.isDelimiter(text.charAt(position))) {
+				position++;
+			}
+			int tokenEnd = position;
+
+			// trim the same way as String.trim
+			while (tokenStart < tokenEnd && text.charAt(tokenStart) <= ' ') {
+				tokenStart++;
+			}
+			while (tokenEnd > tokenStart && text.charAt(tokenEnd - 1) <= ' ') {
+				tokenEnd--;
+			}
+
+			int tokenLength = tokenEnd - tokenStart;
+			if (tokenLength >= minLength && tokenLength < LanguageUtil.MAX_WORD_LENGTH) {
+				if (word.length < tokenLength) {
+					word = new char[tokenLength * 2];
+				}
+				for (int ind = 0; ind < tokenLength; ind++) {
+					word[ind] = LanguageUtil.toLowerCase(text.charAt(tokenStart + ind));
+				}
+				length = tokenLength;
+				wordStart = tokenStart;
+				return true;
+			}
+		}
+		length = 0;
+		return false;
+	}
+
+	/**
+	 * @return buffer with current lower cased word in first getLength()
+	 *         positions, buffer is reused by next call to next()
+	 */
+	public char[] getWord() {
+		return word;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return position of current word in the text
+	 */
+	public int getWordStart() {
+		return wordStart;
+	}
+
+	/**
+	 * @return position in the text where scanning continues
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	public String getWordAsString() {
+		return new String(word, 0, length);
+	}
+}
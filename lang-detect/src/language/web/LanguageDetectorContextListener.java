@@ -0,0 +1,70 @@
+package language.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import language.model.LanguageDetectorRegistry;
+import language.model.NgramLanguageDetector.BoundaryDetectionAlgorithm;
+import language.model.NgramLanguageDetector.ClassificationAlgorithm;
+
+/**
+ * Loads shared language detectors when web application starts and releases
+ * them when it stops, so requests never load models. Model directory is
+ * taken from languageDetectorBasePath context parameter and defaults to
+ * working directory.
+ * 
+ * @author Andrey Gusev
+ */
+public class LanguageDetectorContextListener implements ServletContextListener {
+
+	private static final Logger log = Logger.getLogger(LanguageDetectorContextListener.class.getName());
+
+	public static final String BASE_PATH_PARAM = "languageDetectorBasePath";
+	public static final String BASE_PATH_ATTRIBUTE = LanguageDetectorContextListener.class.getName() + ".basePath";
+
+	// boundary detector used by index.jsp
+	public static final BoundaryDetectionAlgorithm BOUNDARY_DETECTION_ALGORITHM = BoundaryDetectionAlgorithm.FOUR_WORD_BIGRAM;
+	public static final ClassificationAlgorithm CLASSIFICATION_ALGORITHM = ClassificationAlgorithm.LINEAR_WEIGHTS;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		String basePath = context.getInitParameter(BASE_PATH_PARAM);
+		File baseFilePath = new File(basePath != null ? basePath : "");
+		context.setAttribute(BASE_PATH_ATTRIBUTE, baseFilePath);
+
+		// load everything up front
+		LanguageDetectorRegistry.getDetector(baseFilePath);
+		try {
+			LanguageDetectorRegistry.getBoundaryDetector(baseFilePath, BOUNDARY_DETECTION_ALGORITHM,
+					CLASSIFICATION_ALGORITHM);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load boundary detector from: " + baseFilePath.getAbsolutePath(), e);
+		}
+		log.info("Language detectors are ready");
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		File baseFilePath = (File) context.getAttribute(BASE_PATH_ATTRIBUTE);
+		if (baseFilePath != null) {
+			LanguageDetectorRegistry.release(baseFilePath);
+		}
+		context.removeAttribute(BASE_PATH_ATTRIBUTE);
+	}
+
+	/**
+	 * @return model directory of the application, working directory if
+	 *         listener is not configured
+	 */
+	public static File getBasePath(ServletContext context) {
+		File baseFilePath = (File) context.getAttribute(BASE_PATH_ATTRIBUTE);
+		return baseFilePath != null ? baseFilePath : new File("");
+	}
+}
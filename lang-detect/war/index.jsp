@@ -4,6 +4,7 @@
 <%@ page import="language.model.NgramLanguageDetector.ClassificationAlgorithm" %>
 <%@ page import="java.util.*" %>
 <%@ page import="language.util.*" %>
+<%@ page import="language.web.LanguageDetectorContextListener" %>
 <%@ page import="java.io.File" %>
 
 <!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01//EN"            
@@ -20,14 +21,13 @@
 	
 		final int MIN_LENGTH = 25;
 		final int MAX_LENGTH = 100000;
-		// TODO: get base directory with properties
-		String basePath = "";
-		File baseFilePath = new File(basePath);
-		// allow both windows and linux compatibility
+		// detectors are shared by all requests, see LanguageDetectorContextListener
+		File baseFilePath = LanguageDetectorContextListener.getBasePath(application);
 				
-		NgramLanguageDetector detector = new NgramLanguageDetector(baseFilePath);
-		LanguageBoundaryDetector boundaryDetector = new SlidingWindowBigramBoundaryDetector(
-				ClassificationAlgorithm.LINEAR_WEIGHTS, detector, 4);
+		NgramLanguageDetector detector = LanguageDetectorRegistry.getDetector(baseFilePath);
+		LanguageBoundaryDetector boundaryDetector = LanguageDetectorRegistry.getBoundaryDetector(baseFilePath,
+				LanguageDetectorContextListener.BOUNDARY_DETECTION_ALGORITHM,
+				LanguageDetectorContextListener.CLASSIFICATION_ALGORITHM);
 		String q = request.getParameter("q");
 		boolean isMulti = request.getParameter("m") != null;
 		List<Pair<String, Locale>> multiStringTag = null;
@@ -37,7 +37,8 @@
 			if (isMulti){
 				multiStringTag = boundaryDetector.tagStringWithLanguages(q);
 			} else {
-				singleLanguage = detector.getMostLikelyLanguage(q);
+				// long texts are detected from sample of the text
+				singleLanguage = detector.detectLanguageWithSampling(q).getLanguage();
 			}
 			detector.logQuery(q);
 		} else if (q != null && q.length() > 0 && q.length() < MIN_LENGTH ){